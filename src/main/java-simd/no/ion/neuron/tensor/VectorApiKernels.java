@@ -0,0 +1,128 @@
+package no.ion.neuron.tensor;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels using the incubating JDK Vector API with the preferred species of the CPU, e.g. 8 floats with AVX2
+ * and 16 floats with AVX-512. The remainder of each range is handled by a scalar loop.
+ *
+ * <p>Only compiled with the {@code simd} Maven profile, see {@link Kernels}.</p>
+ */
+class VectorApiKernels implements Kernels {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        var sum = FloatVector.zero(SPECIES);
+        for (; i < bound; i += SPECIES.length()) {
+            var va = FloatVector.fromArray(SPECIES, a, aOffset + i);
+            var vb = FloatVector.fromArray(SPECIES, b, bOffset + i);
+            sum = va.fma(vb, sum);
+        }
+
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i) {
+            result += a[aOffset + i] * b[bOffset + i];
+        }
+        return result;
+    }
+
+    @Override
+    public float sumOfSquares(float[] a, int aOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        var sum = FloatVector.zero(SPECIES);
+        for (; i < bound; i += SPECIES.length()) {
+            var va = FloatVector.fromArray(SPECIES, a, aOffset + i);
+            sum = va.fma(va, sum);
+        }
+
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i) {
+            float value = a[aOffset + i];
+            result += value * value;
+        }
+        return result;
+    }
+
+    @Override
+    public void add(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            var va = FloatVector.fromArray(SPECIES, a, aOffset + i);
+            var vb = FloatVector.fromArray(SPECIES, b, bOffset + i);
+            va.add(vb).intoArray(a, aOffset + i);
+        }
+
+        for (; i < length; ++i) {
+            a[aOffset + i] += b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void subtract(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            var va = FloatVector.fromArray(SPECIES, a, aOffset + i);
+            var vb = FloatVector.fromArray(SPECIES, b, bOffset + i);
+            va.sub(vb).intoArray(a, aOffset + i);
+        }
+
+        for (; i < length; ++i) {
+            a[aOffset + i] -= b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void multiply(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            var va = FloatVector.fromArray(SPECIES, a, aOffset + i);
+            var vb = FloatVector.fromArray(SPECIES, b, bOffset + i);
+            va.mul(vb).intoArray(a, aOffset + i);
+        }
+
+        for (; i < length; ++i) {
+            a[aOffset + i] *= b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void multiplyScalar(float[] a, int aOffset, int length, float factor) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, a, aOffset + i).mul(factor).intoArray(a, aOffset + i);
+        }
+
+        for (; i < length; ++i) {
+            a[aOffset + i] *= factor;
+        }
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        var valpha = FloatVector.broadcast(SPECIES, alpha);
+        for (; i < bound; i += SPECIES.length()) {
+            var vx = FloatVector.fromArray(SPECIES, x, xOffset + i);
+            var vy = FloatVector.fromArray(SPECIES, y, yOffset + i);
+            vx.fma(valpha, vy).intoArray(y, yOffset + i);
+        }
+
+        for (; i < length; ++i) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public String name() { return "vector-api(" + SPECIES + ")"; }
+}
@@ -0,0 +1,85 @@
+package no.ion.neuron;
+
+import no.ion.neuron.tensor.Matrix;
+
+import java.util.Objects;
+
+/**
+ * The ComputeContext of a batch of samples, with one row per sample: Either the ideal output of each sample,
+ * or for classification the class label of each sample, see {@link ComputeContext}.
+ */
+public class BatchComputeContext {
+    private final Matrix idealOutputs;
+    private final int[] classLabels;
+    private final int offset;
+    private final int batchSize;
+
+    public BatchComputeContext(Matrix idealOutputs) {
+        this.idealOutputs = Objects.requireNonNull(idealOutputs);
+        this.classLabels = null;
+        this.offset = 0;
+        this.batchSize = idealOutputs.rows();
+    }
+
+    /** A batch of the samples with the class labels {@code classLabels[0]}, ..., which are not copied. */
+    public BatchComputeContext(int[] classLabels) {
+        this(classLabels, 0, classLabels.length);
+    }
+
+    /** A batch of the samples with the class labels {@code classLabels[offset]}, ..., which are not copied. */
+    public BatchComputeContext(int[] classLabels, int offset, int batchSize) {
+        if (offset < 0 || batchSize < 0 || offset + batchSize > classLabels.length) {
+            throw new IndexOutOfBoundsException("Class labels [" + offset + ", " + (offset + batchSize) +
+                    ") are out of bounds for " + classLabels.length + " class labels");
+        }
+
+        this.idealOutputs = null;
+        this.classLabels = classLabels;
+        this.offset = offset;
+        this.batchSize = batchSize;
+    }
+
+    public int batchSize() { return batchSize; }
+
+    public boolean hasClassLabels() { return classLabels != null; }
+
+    /** The ideal output of each sample, one row per sample, see {@link #classLabel(int)} if there are none. */
+    public Matrix idealOutputs() {
+        if (idealOutputs == null) {
+            throw new IllegalStateException("The context has class labels instead of ideal outputs");
+        }
+        return idealOutputs;
+    }
+
+    /** The class label of the sample at the given row. */
+    public int classLabel(int sample) {
+        if (classLabels == null) {
+            throw new IllegalStateException("The context has ideal outputs instead of class labels");
+        } else if (sample < 0 || sample >= batchSize) {
+            throw new IndexOutOfBoundsException("Sample " + sample + " is out of bounds for a batch of " + batchSize);
+        }
+        return classLabels[offset + sample];
+    }
+
+    /** The context of {@code count} consecutive samples from row {@code from}, sharing the ideal outputs or labels. */
+    public BatchComputeContext rows(int from, int count) {
+        if (classLabels == null) {
+            return new BatchComputeContext(idealOutputs.rowsView(from, count));
+        } else {
+            if (from < 0 || count < 0 || from + count > batchSize) {
+                throw new IndexOutOfBoundsException("Rows [" + from + ", " + (from + count) +
+                        ") are out of bounds for a batch of " + batchSize);
+            }
+            return new BatchComputeContext(classLabels, offset + from, count);
+        }
+    }
+
+    /** The ComputeContext of the sample at the given row. */
+    public ComputeContext sampleContext(int sample) {
+        if (classLabels == null) {
+            return new ComputeContext(idealOutputs.row(sample));
+        } else {
+            return new ComputeContext(classLabel(sample));
+        }
+    }
+}
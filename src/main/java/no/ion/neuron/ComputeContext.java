@@ -4,12 +4,53 @@ import no.ion.neuron.tensor.Vector;
 
 import java.util.Objects;
 
+/**
+ * The ideal output of the sample being computed, either as a vector, or for classification as the index of the
+ * class, which stands for the one-hot vector with a 1 at that index without requiring such a vector.
+ */
 public class ComputeContext {
-    private final Vector idealOutput;
+    private Vector idealOutput;
+    private int classLabel;
 
     public ComputeContext(Vector idealOutput) {
+        reset(idealOutput);
+    }
+
+    public ComputeContext(int classLabel) {
+        reset(classLabel);
+    }
+
+    /** Reuse this context for another sample, to avoid allocating a context per sample. */
+    public void reset(Vector idealOutput) {
         this.idealOutput = Objects.requireNonNull(idealOutput);
+        this.classLabel = -1;
     }
 
-    public Vector idealOutput() { return idealOutput; }
+    /** Reuse this context for another sample with a class label, see {@link #classLabel()}. */
+    public void reset(int classLabel) {
+        if (classLabel < 0) {
+            throw new IllegalArgumentException("A class label cannot be negative: " + classLabel);
+        }
+
+        this.idealOutput = null;
+        this.classLabel = classLabel;
+    }
+
+    public boolean hasClassLabel() { return classLabel >= 0; }
+
+    /** The index of the class of the sample. */
+    public int classLabel() {
+        if (classLabel < 0) {
+            throw new IllegalStateException("The context has an ideal output vector instead of a class label");
+        }
+        return classLabel;
+    }
+
+    /** The ideal output of the sample, see {@link #classLabel()} if there is none. */
+    public Vector idealOutput() {
+        if (idealOutput == null) {
+            throw new IllegalStateException("The context has the class label " + classLabel + " instead of an ideal output vector");
+        }
+        return idealOutput;
+    }
 }
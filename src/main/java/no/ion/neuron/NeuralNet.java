@@ -1,31 +1,50 @@
 package no.ion.neuron;
 
+import no.ion.neuron.gradientdescent.ExecutionPlan;
 import no.ion.neuron.gradientdescent.GradientDescentLayer;
+import no.ion.neuron.gradientdescent.Replica;
+import no.ion.neuron.inference.InferenceModel;
 import no.ion.neuron.layer.ParametrizedLayer;
 import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.OffHeapArena;
 import no.ion.neuron.tensor.Vector;
-import no.ion.neuron.transform.ActivationTransform;
-import no.ion.neuron.transform.BiasTransform;
+import no.ion.neuron.transform.DenseTransform;
 import no.ion.neuron.transform.Transform;
-import no.ion.neuron.transform.WeightTransform;
 import no.ion.neuron.transform.activation.ActivationFunction;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * A feed-forward neural network with back-propagation of gradients.
+ *
+ * <p>The parameters of all layers live in one contiguous buffer, and likewise the cumulative gradient of the
+ * parameters, with each layer (and its transform) working on a view of its part of the buffers. The buffers are
+ * laid out on the heap when first needed after adding layers, unless the net is moved to other storage first,
+ * see {@link #moveTo(Vector, Vector)}.</p>
  */
 public class NeuralNet {
     private final List<GradientDescentLayer> layers = new ArrayList<>();
     private final int inputSize;
 
+    private Vector parameters = new Vector(0);
+    private Vector cumulativeGradientOfParameters = new Vector(0);
+
+    /** Whether layers with parameters have been added since the buffers were laid out. */
+    private boolean buffersStale = false;
+
+    /** The layers compiled for processing samples, built on first use after adding a layer. */
+    private ExecutionPlan plan = null;
+
     public NeuralNet(int inputSize) {
         this.inputSize = inputSize;
     }
 
+    /**
+     * Add a fully connected layer f(weight · x + bias) as one {@link DenseTransform}. The same layer can be
+     * built from a WeightTransform, a BiasTransform, and an ActivationTransform with {@link #addTransform(Transform)}.
+     */
     public void addLayers(Matrix weight, Vector bias, ActivationFunction activationFunction) {
         if (weight.columns() != outputSize()) {
             throw new IllegalArgumentException("Last layer has size " + outputSize() +
@@ -35,78 +54,235 @@ public class NeuralNet {
                     " does not match bias size " + bias.size());
         }
 
-        addTransform(new WeightTransform(weight));
-        addTransform(new BiasTransform(bias));
-        addTransform(new ActivationTransform(bias.size(), activationFunction));
+        addTransform(new DenseTransform(weight, bias, activationFunction));
     }
 
     public GradientDescentLayer addTransform(Transform transform) {
         GradientDescentLayer layer = new GradientDescentLayer(transform);
-
-        if (layers.size() > 0) {
-            GradientDescentLayer lastLayer = layers.get(layers.size() - 1);
-            lastLayer.setDownstreamLayer(layer);
-            layer.setUpstreamLayer(lastLayer);
-        }
         layers.add(layer);
+        if (transform.parameterSize() == 0) {
+            // The existing buffers fit the layer as is
+            layer.moveTo(parameters.view(parameters.size(), 0), cumulativeGradientOfParameters.view(parameters.size(), 0));
+        } else {
+            buffersStale = true;
+        }
+        plan = null;
         return layer;
     }
 
+    /**
+     * Move the parameters and cumulative gradients of all layers into the given buffers, e.g. off-heap or mapped
+     * from a file, which then become the buffers of the net. The parameters are copied into the buffer. Adding a
+     * layer with parameters afterwards moves the parameters back to buffers on the heap.
+     */
+    public void moveTo(Vector parameterStorage, Vector gradientStorage) {
+        requireParameterSize(parameterStorage, gradientStorage);
+        int offset = 0;
+        for (var layer : layers) {
+            int layerSize = layer.parameterSize();
+            layer.moveTo(parameterStorage.view(offset, layerSize), gradientStorage.view(offset, layerSize));
+            offset += layerSize;
+        }
+
+        parameters = parameterStorage;
+        cumulativeGradientOfParameters = gradientStorage;
+        buffersStale = false;
+        plan = null;
+    }
+
+    /**
+     * Like {@link #moveTo(Vector, Vector)}, except that the current contents of {@code parameterStorage} become
+     * the parameters of the net, e.g. to resume from parameters saved in a file. The layers are moved one at a
+     * time, so only the parameters of one layer are copied to the heap on the way.
+     */
+    public void adopt(Vector parameterStorage, Vector gradientStorage) {
+        requireParameterSize(parameterStorage, gradientStorage);
+        int offset = 0;
+        for (var layer : layers) {
+            int layerSize = layer.parameterSize();
+            Vector layerStorage = parameterStorage.view(offset, layerSize);
+            Vector saved = layerStorage.copy();
+            layer.moveTo(layerStorage, gradientStorage.view(offset, layerSize));
+            layerStorage.assign(saved);
+            offset += layerSize;
+        }
+
+        parameters = parameterStorage;
+        cumulativeGradientOfParameters = gradientStorage;
+        buffersStale = false;
+        plan = null;
+    }
+
+    /** The total number of parameters of all layers. */
+    public int parameterSize() {
+        int parameterSize = 0;
+        for (var layer : layers) {
+            parameterSize += layer.parameterSize();
+        }
+        return parameterSize;
+    }
+
+    private void requireParameterSize(Vector parameterStorage, Vector gradientStorage) {
+        int parameterSize = parameterSize();
+        if (parameterStorage.size() != parameterSize || gradientStorage.size() != parameterSize) {
+            throw new IllegalArgumentException("The net has " + parameterSize + " parameters, but the storage has " +
+                    parameterStorage.size() + " and " + gradientStorage.size());
+        }
+    }
+
+    /** Lay out the parameters and gradients of all layers in new buffers, if layers have been added since. */
+    private void ensureBuffers() {
+        if (buffersStale) {
+            int parameterSize = parameterSize();
+            moveTo(new Vector(parameterSize), new Vector(parameterSize));
+        }
+    }
+
+    private ExecutionPlan plan() {
+        ensureBuffers();
+        if (plan == null) {
+            plan = ExecutionPlan.of(layers);
+        }
+        return plan;
+    }
+
     public int inputSize() { return inputSize; }
     public int outputSize() { return layers.isEmpty() ? inputSize : layers.get(layers.size() - 1).outputSize(); }
-    public List<? extends ParametrizedLayer> layers() { return List.copyOf(layers); }
+    public List<? extends ParametrizedLayer> layers() {
+        ensureBuffers();
+        return List.copyOf(layers);
+    }
+
+    /** The transforms of the layers, in order. */
+    public List<Transform> transforms() {
+        return layers.stream().map(GradientDescentLayer::transform).collect(Collectors.toList());
+    }
 
+    /** See {@link #compute(ComputeContext, Vector)}. */
     public Vector compute(Vector input, Vector idealOutput) {
         ComputeContext context = new ComputeContext(idealOutput);
         return compute(context, input);
     }
 
+    /**
+     * Compute the output for the input, and back-propagate to accumulate the error gradient of the parameters.
+     * The returned vector is a buffer owned by the net, and is only valid until the next call.
+     */
     public Vector compute(ComputeContext context, Vector input) {
         if (layers.isEmpty()) {
             return input;
         } else {
-            return layers.get(0).process(context, input).netOutput();
+            return plan().process(context, input);
         }
     }
 
-    /** The cumulative gradient w.r.t the parameters. */
-    public Vector cumulativeGradientOfParameters() {
-        return parameterVector(ParametrizedLayer::cumulativeErrorGradientOfParameters);
+    /** Compute a batch of samples, with one sample per row of {@code inputs} and {@code idealOutputs}. */
+    public Matrix computeBatch(Matrix inputs, Matrix idealOutputs) {
+        return computeBatch(new BatchComputeContext(idealOutputs), inputs);
     }
 
-    public Vector parameters() {
-        return parameterVector(ParametrizedLayer::parameters);
+    /** Compute a batch of samples of a classification, with the class label of each row of {@code inputs}. */
+    public Matrix computeBatch(Matrix inputs, int[] classLabels) {
+        return computeBatch(new BatchComputeContext(classLabels), inputs);
     }
 
-    private Vector parameterVector(Function<ParametrizedLayer, Vector> layerMethod) {
-        int parameterSize = layers.stream().map(layer -> layer.parameterSize()).reduce(Integer::sum).orElse(0);
-        Vector combinedVector = new Vector(parameterSize);
+    public Matrix computeBatch(BatchComputeContext context, Matrix inputs) {
+        if (inputs.columns() != inputSize) {
+            throw new IllegalArgumentException("Inputs have " + inputs.columns() + " columns but the net has input size " + inputSize);
+        } else if (inputs.rows() != context.batchSize()) {
+            throw new IllegalArgumentException("There are " + inputs.rows() + " inputs but " +
+                    context.batchSize() + " ideal outputs");
+        }
 
-        int i = 0;
-        for (var layer : layers) {
-            Vector layerVector = layerMethod.apply(layer);
-            for (int j = 0; j < layerVector.size(); ++j) {
-                combinedVector.setElement(i++, layerVector.get(j));
+        if (layers.isEmpty()) {
+            return inputs;
+        } else {
+            return plan().processBatch(context, inputs);
+        }
+    }
+
+    /**
+     * Compute the output of the neural net for the given input, without back-propagation and without
+     * modifying the state of the net. The error transform appended by a Trainer is not part of inference.
+     */
+    public Vector infer(Vector input) {
+        if (input.size() != inputSize) {
+            throw new IllegalArgumentException("Input has size " + input.size() + " but the net has input size " + inputSize);
+        }
+
+        Vector output = input;
+        for (int i = 0; i < layers.size(); ++i) {
+            GradientDescentLayer layer = layers.get(i);
+            if (!layer.transform().isInferable()) {
+                break;
             }
+            output = layer.infer(output);
         }
 
-        return combinedVector;
+        return output;
     }
 
-    public void adjustParameters(Vector delta) {
-        int i = 0;
+    /**
+     * Returns an immutable snapshot of the net for concurrent inference, excluding the error transform
+     * appended by a Trainer. See {@link InferenceModel}.
+     */
+    public InferenceModel inferenceModel() {
+        return new InferenceModel(inputSize, inferenceTransforms());
+    }
+
+    /** Returns an {@link #inferenceModel() inference model} with its parameters off-heap in the arena. */
+    public InferenceModel inferenceModel(OffHeapArena arena) {
+        return new InferenceModel(inputSize, inferenceTransforms(), arena);
+    }
+
+    private List<Transform> inferenceTransforms() {
+        var transforms = new ArrayList<Transform>();
         for (var layer : layers) {
-            Vector adjustment = new Vector(layer.parameterSize());
-            for (int j = 0; j < adjustment.size(); ++j) {
-                float nextValue = delta.get(i++);
-                adjustment.setElement(j, nextValue);
+            if (!layer.transform().isInferable()) {
+                break;
             }
-            layer.adjustParameters(adjustment);
+            transforms.add(layer.transform());
         }
+        return transforms;
+    }
+
+    /**
+     * Returns a new replica of the per-sample state of the net, sharing the parameters, for processing samples
+     * on another thread. See {@link Replica}.
+     */
+    public Replica createReplica() {
+        ensureBuffers();
+        return new Replica(layers);
+    }
+
+    /**
+     * The cumulative gradient w.r.t the parameters: The live buffer, not a copy. The returned vector is a view
+     * shared with the layers, so it reflects later backpropagation and learning, and writing to it changes the
+     * gradient the next learning step applies. Use {@link Vector#copy()} to keep a snapshot. Adding layers or
+     * moving the net to other storage makes the returned vector stale.
+     */
+    public Vector cumulativeGradientOfParameters() {
+        ensureBuffers();
+        return cumulativeGradientOfParameters;
+    }
+
+    /**
+     * The parameters of all layers: The live buffer, not a copy. The returned vector is a view shared with the
+     * layers, so it reflects later learning, and writing to it (e.g. {@link Vector#set(float...)}) changes the
+     * parameters of the net. Use {@link Vector#copy()} to keep a snapshot. Adding layers or moving the net to other
+     * storage, see {@link #moveTo(Vector, Vector)}, makes the returned vector stale.
+     */
+    public Vector parameters() {
+        ensureBuffers();
+        return parameters;
+    }
+
+    public void adjustParameters(Vector delta) {
+        parameters().add(delta);
     }
 
     public void clearCumulativeErrorGradientOfParameters() {
-        layers.forEach(ParametrizedLayer::clearCumulativeErrorGradientOfParameters);
+        cumulativeGradientOfParameters().clear();
     }
 
     public String toString(boolean withLastOutput) {
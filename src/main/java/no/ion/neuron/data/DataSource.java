@@ -0,0 +1,26 @@
+package no.ion.neuron.data;
+
+import no.ion.neuron.tensor.Matrix;
+
+/**
+ * A training set of samples, each an input and an ideal output of fixed sizes, that can be streamed through any
+ * number of times, e.g. once per epoch.
+ */
+public interface DataSource {
+    int inputSize();
+    int idealOutputSize();
+
+    /** The number of samples. */
+    long size();
+
+    /** Returns a new stream over the samples, in order. */
+    SampleStream stream();
+
+    /**
+     * Returns a data source of the samples in the matrices, with one sample per row, which are used as is:
+     * Changes to the matrices are visible to the data source.
+     */
+    static RandomAccessDataSource of(Matrix inputs, Matrix idealOutputs) {
+        return new MatrixDataSource(inputs, idealOutputs);
+    }
+}
@@ -0,0 +1,300 @@
+package no.ion.neuron.data;
+
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.OffHeapArena;
+import no.ion.neuron.tensor.Vector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A data source memory-mapped from a binary file, for training sets larger than the heap. The samples are
+ * streamed as views of the mapped file, without copying or parsing, so the heap usage is constant regardless
+ * of the size of the file. All numbers are little-endian.
+ *
+ * <pre>
+ *   header          64 bytes: "NEURONDS", int version, int inputSize, int idealOutputSize, int 0, long size,
+ *                   zero padding
+ *   inputs          size rows of inputSize floats, at offset 64
+ *   ideal outputs   size rows of idealOutputSize floats, at the first multiple of 64 after the inputs
+ * </pre>
+ *
+ * <p>A mapping is limited to 2 GB, so the file is mapped in regions of whole rows, and a batch of the stream
+ * never spans two regions.</p>
+ */
+public final class MappedDataSet implements RandomAccessDataSource, AutoCloseable {
+    private static final byte[] MAGIC = "NEURONDS".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int ALIGNMENT = 64;
+
+    private final int inputSize;
+    private final int idealOutputSize;
+    private final long size;
+    private final int rowsPerRegion;
+    private final FileChannel channel;
+    private final OffHeapArena arena;
+
+    /** The inputs and ideal outputs of each region, in order. */
+    private final List<Matrix> regionInputs;
+    private final List<Matrix> regionIdealOutputs;
+
+    private MappedDataSet(int inputSize, int idealOutputSize, long size, FileChannel channel, OffHeapArena arena,
+                          List<Matrix> regionInputs, List<Matrix> regionIdealOutputs) {
+        this.inputSize = inputSize;
+        this.idealOutputSize = idealOutputSize;
+        this.size = size;
+        this.rowsPerRegion = rowsPerRegion(inputSize, idealOutputSize);
+        this.channel = channel;
+        this.arena = arena;
+        this.regionInputs = regionInputs;
+        this.regionIdealOutputs = regionIdealOutputs;
+    }
+
+    /** Returns a writer of a new data set file of {@code size} samples. */
+    public static Writer create(Path path, int inputSize, int idealOutputSize, long size) throws IOException {
+        return new Writer(path, inputSize, idealOutputSize, size);
+    }
+
+    /** Writes the samples of the data source to a new data set file. */
+    public static void write(DataSource source, Path path) throws IOException {
+        try (Writer writer = create(path, source.inputSize(), source.idealOutputSize(), source.size())) {
+            SampleStream stream = source.stream();
+            for (int batchSize; (batchSize = stream.next(1024)) > 0; ) {
+                for (int sample = 0; sample < batchSize; ++sample) {
+                    writer.add(stream.inputs().rowView(sample), stream.idealOutputs().rowView(sample));
+                }
+            }
+        }
+    }
+
+    /** Maps the data set file into memory, read-only. The data set must be closed to release the mapping. */
+    public static MappedDataSet open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        var arena = new OffHeapArena();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException(path + " is not a data set");
+                }
+            }
+            header.flip();
+
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || header.getInt() != VERSION) {
+                throw new IOException(path + " is not a data set of version " + VERSION);
+            }
+
+            int inputSize = header.getInt();
+            int idealOutputSize = header.getInt();
+            header.getInt();
+            long size = header.getLong();
+            if (inputSize < 0 || idealOutputSize < 0 || size < 0) {
+                throw new IOException(path + " has a corrupt header");
+            }
+
+            long idealOutputsOffset = idealOutputsOffset(inputSize, size);
+            if (channel.size() < idealOutputsOffset + size * idealOutputSize * Float.BYTES) {
+                throw new IOException(path + " is truncated");
+            }
+
+            int rowsPerRegion = rowsPerRegion(inputSize, idealOutputSize);
+            var regionInputs = new ArrayList<Matrix>();
+            var regionIdealOutputs = new ArrayList<Matrix>();
+            for (long row = 0; row < size; row += rowsPerRegion) {
+                int rows = (int) Math.min(rowsPerRegion, size - row);
+                regionInputs.add(map(arena, channel, HEADER_SIZE + row * inputSize * Float.BYTES, rows, inputSize));
+                regionIdealOutputs.add(map(arena, channel, idealOutputsOffset + row * idealOutputSize * Float.BYTES,
+                        rows, idealOutputSize));
+            }
+
+            return new MappedDataSet(inputSize, idealOutputSize, size, channel, arena, regionInputs, regionIdealOutputs);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static Matrix map(OffHeapArena arena, FileChannel channel, long position, int rows, int columns) throws IOException {
+        if (columns == 0) {
+            return new Matrix(rows, 0);
+        }
+
+        Vector values = arena.map(channel, position, rows * columns, false);
+        return values.toMatrix(rows);
+    }
+
+    /** The most rows of both the inputs and the ideal outputs that fit in a mapping. */
+    private static int rowsPerRegion(int inputSize, int idealOutputSize) {
+        int rowSize = Math.max(1, Math.max(inputSize, idealOutputSize));
+        return OffHeapArena.MAX_ALLOCATION_SIZE / rowSize;
+    }
+
+    private static long idealOutputsOffset(int inputSize, long size) {
+        long inputsEnd = HEADER_SIZE + size * inputSize * Float.BYTES;
+        return (inputsEnd + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    @Override public int inputSize() { return inputSize; }
+    @Override public int idealOutputSize() { return idealOutputSize; }
+    @Override public long size() { return size; }
+
+    @Override
+    public Vector input(long index) {
+        checkIndex(index);
+        return regionInputs.get((int) (index / rowsPerRegion)).rowView((int) (index % rowsPerRegion));
+    }
+
+    @Override
+    public Vector idealOutput(long index) {
+        checkIndex(index);
+        return regionIdealOutputs.get((int) (index / rowsPerRegion)).rowView((int) (index % rowsPerRegion));
+    }
+
+    private void checkIndex(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Sample " + index + " is out of bounds for a data set of " + size + " samples");
+        }
+    }
+
+    /** Returns a stream of views of the mapped samples, which must not be used after the data set is closed. */
+    @Override
+    public SampleStream stream() {
+        return new SampleStream() {
+            private int region = -1;
+            private MatrixDataSource.Stream regionStream = null;
+
+            @Override
+            public int next(int maxSize) {
+                while (regionStream == null || regionStream.atEnd()) {
+                    if (region + 1 >= regionInputs.size()) {
+                        return regionStream == null ? 0 : regionStream.next(maxSize);
+                    }
+                    ++region;
+                    regionStream = new MatrixDataSource.Stream(regionInputs.get(region), regionIdealOutputs.get(region));
+                }
+                return regionStream.next(maxSize);
+            }
+
+            @Override
+            public Matrix inputs() {
+                if (regionStream == null) {
+                    throw new IllegalStateException("There is no current batch");
+                }
+                return regionStream.inputs();
+            }
+
+            @Override
+            public Matrix idealOutputs() {
+                if (regionStream == null) {
+                    throw new IllegalStateException("There is no current batch");
+                }
+                return regionStream.idealOutputs();
+            }
+        };
+    }
+
+    /** Unmaps the file. */
+    @Override
+    public void close() throws IOException {
+        arena.close();
+        channel.close();
+    }
+
+    /** Writes the samples of a new data set file, in order. */
+    public static final class Writer implements AutoCloseable {
+        private final Path path;
+        private final int inputSize;
+        private final int idealOutputSize;
+        private final long size;
+        private final FileChannel channel;
+        private final ByteBuffer inputBuffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer idealOutputBuffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        private long inputPosition = HEADER_SIZE;
+        private long idealOutputPosition;
+        private long added = 0;
+
+        private Writer(Path path, int inputSize, int idealOutputSize, long size) throws IOException {
+            if (inputSize < 0 || idealOutputSize < 0 || size < 0) {
+                throw new IllegalArgumentException("Invalid data set dimensions: " + size + " samples of input size " +
+                        inputSize + " and ideal output size " + idealOutputSize);
+            }
+
+            this.path = path;
+            this.inputSize = inputSize;
+            this.idealOutputSize = idealOutputSize;
+            this.size = size;
+            this.idealOutputPosition = idealOutputsOffset(inputSize, size);
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC).putInt(VERSION).putInt(inputSize).putInt(idealOutputSize).putInt(0).putLong(size);
+            header.clear();
+            writeFully(header, 0);
+        }
+
+        public void add(Vector input, Vector idealOutput) throws IOException {
+            if (input.size() != inputSize || idealOutput.size() != idealOutputSize) {
+                throw new IllegalArgumentException("The sample has input size " + input.size() + " and ideal output size " +
+                        idealOutput.size() + ", but the data set has " + inputSize + " and " + idealOutputSize);
+            } else if (added >= size) {
+                throw new IllegalStateException("The data set already has " + size + " samples");
+            }
+
+            inputPosition = put(input, inputBuffer, inputPosition);
+            idealOutputPosition = put(idealOutput, idealOutputBuffer, idealOutputPosition);
+            ++added;
+        }
+
+        /** Appends the vector to the buffer, writing the buffer at {@code position} when full, returning the new position. */
+        private long put(Vector vector, ByteBuffer buffer, long position) throws IOException {
+            for (int i = 0; i < vector.size(); ++i) {
+                if (!buffer.hasRemaining()) {
+                    position = flush(buffer, position);
+                }
+                buffer.putFloat(vector.get(i));
+            }
+            return position;
+        }
+
+        private long flush(ByteBuffer buffer, long position) throws IOException {
+            buffer.flip();
+            int length = buffer.remaining();
+            writeFully(buffer, position);
+            buffer.clear();
+            return position + length;
+        }
+
+        private void writeFully(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+        }
+
+        /** @throws IllegalStateException if fewer samples than the size of the data set were added */
+        @Override
+        public void close() throws IOException {
+            try {
+                flush(inputBuffer, inputPosition);
+                flush(idealOutputBuffer, idealOutputPosition);
+                if (added != size) {
+                    throw new IllegalStateException("Only " + added + " of the " + size + " samples were added to " + path);
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package no.ion.neuron.data;
+
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+
+/** The samples of one sample per row of two matrices. See {@link DataSource#of(Matrix, Matrix)}. */
+class MatrixDataSource implements RandomAccessDataSource {
+    private final Matrix inputs;
+    private final Matrix idealOutputs;
+
+    MatrixDataSource(Matrix inputs, Matrix idealOutputs) {
+        if (inputs.rows() != idealOutputs.rows()) {
+            throw new IllegalArgumentException("There are " + inputs.rows() + " inputs but " +
+                    idealOutputs.rows() + " ideal outputs");
+        }
+
+        this.inputs = inputs;
+        this.idealOutputs = idealOutputs;
+    }
+
+    @Override public int inputSize() { return inputs.columns(); }
+    @Override public int idealOutputSize() { return idealOutputs.columns(); }
+    @Override public long size() { return inputs.rows(); }
+
+    @Override
+    public Vector input(long index) {
+        return inputs.rowView(Math.toIntExact(index));
+    }
+
+    @Override
+    public Vector idealOutput(long index) {
+        return idealOutputs.rowView(Math.toIntExact(index));
+    }
+
+    @Override
+    public SampleStream stream() {
+        return new Stream(inputs, idealOutputs);
+    }
+
+    /** Streams the rows of a pair of matrices, which are returned as is by a batch that spans all of them. */
+    static class Stream implements SampleStream {
+        private final Matrix inputs;
+        private final Matrix idealOutputs;
+        private int position = 0;
+        private Matrix batchInputs = null;
+        private Matrix batchIdealOutputs = null;
+
+        Stream(Matrix inputs, Matrix idealOutputs) {
+            this.inputs = inputs;
+            this.idealOutputs = idealOutputs;
+        }
+
+        /** Whether all the rows have been streamed. */
+        boolean atEnd() { return position >= inputs.rows(); }
+
+        @Override
+        public int next(int maxSize) {
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("The batch size must be positive: " + maxSize);
+            }
+
+            int size = Math.min(maxSize, inputs.rows() - position);
+            if (size <= 0) {
+                batchInputs = null;
+                batchIdealOutputs = null;
+                return 0;
+            }
+
+            if (size == inputs.rows()) {
+                batchInputs = inputs;
+                batchIdealOutputs = idealOutputs;
+            } else {
+                batchInputs = inputs.rowsView(position, size);
+                batchIdealOutputs = idealOutputs.rowsView(position, size);
+            }
+            position += size;
+            return size;
+        }
+
+        @Override
+        public Matrix inputs() { return batch(batchInputs); }
+
+        @Override
+        public Matrix idealOutputs() { return batch(batchIdealOutputs); }
+
+        private static Matrix batch(Matrix matrix) {
+            if (matrix == null) {
+                throw new IllegalStateException("There is no current batch");
+            }
+            return matrix;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package no.ion.neuron.data;
+
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A pipeline stage that prepares the batches of a data source on a background thread while the previous batch is
+ * being trained on: Each batch is read from the source, packed into a batch matrix on the heap, and preprocessed,
+ * e.g. normalized. The batches are prepared into a fixed set of reusable buffers, so the stage allocates nothing
+ * per batch, and prepares at most that many batches ahead.
+ *
+ * <p>A stream of this data source waits for the background thread only when the next batch is not ready, which
+ * means the source (or the preprocessing) cannot keep up with the training. The time spent waiting is exposed as
+ * {@link #stallNanos()}. Only one stream can be used at a time: Starting a new stream, e.g. for the next epoch,
+ * ends the previous one.</p>
+ */
+public final class PrefetchingDataSource implements DataSource, AutoCloseable {
+    /** Prepares a batch in place, on the background thread. */
+    public interface Preprocessor {
+        void apply(Matrix inputs, Matrix idealOutputs);
+    }
+
+    private final DataSource source;
+    private final int batchSize;
+    private final Preprocessor preprocessor;
+    private final Buffer[] buffers;
+
+    /** The buffers that are free to prepare batches into. */
+    private final BlockingQueue<Buffer> free = new LinkedBlockingQueue<>();
+
+    /** The prepared batches, in order, followed by END or a failure. */
+    private final BlockingQueue<Buffer> ready = new LinkedBlockingQueue<>();
+
+    private Thread producer = null;
+    private Stream activeStream = null;
+
+    // Metrics, updated by the thread using the stream
+    private long batches = 0;
+    private long stalls = 0;
+    private long stallNanos = 0;
+
+    /** Updated by the background thread. */
+    private volatile long producerWaitNanos = 0;
+
+    /** Prefetches with two buffers, i.e. double buffering, and no preprocessing. */
+    public PrefetchingDataSource(DataSource source, int batchSize) {
+        this(source, batchSize, 2, (inputs, idealOutputs) -> {});
+    }
+
+    /**
+     * @param batchSize the number of samples of each prepared batch, except possibly the last
+     * @param buffers   the number of batches that can be prepared ahead, including the batch being trained on
+     */
+    public PrefetchingDataSource(DataSource source, int batchSize, int buffers, Preprocessor preprocessor) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive: " + batchSize);
+        } else if (buffers < 2) {
+            throw new IllegalArgumentException("There must be at least 2 buffers: " + buffers);
+        }
+
+        this.source = source;
+        this.batchSize = batchSize;
+        this.preprocessor = preprocessor;
+        this.buffers = new Buffer[buffers];
+        for (int i = 0; i < buffers; ++i) {
+            this.buffers[i] = new Buffer(new Matrix(batchSize, source.inputSize()),
+                    new Matrix(batchSize, source.idealOutputSize()), null);
+        }
+    }
+
+    /** Returns a preprocessor that normalizes each input x to (x - offset) * scale, element-wise. */
+    public static Preprocessor normalizeInputs(Vector offset, Vector scale) {
+        if (offset.size() != scale.size()) {
+            throw new IllegalArgumentException("The offset has size " + offset.size() + " but the scale has size " + scale.size());
+        }
+
+        return (inputs, idealOutputs) -> {
+            for (int sample = 0; sample < inputs.rows(); ++sample) {
+                for (int i = 0; i < inputs.columns(); ++i) {
+                    inputs.setElement(sample, i, (inputs.getElement(sample, i) - offset.get(i)) * scale.get(i));
+                }
+            }
+        };
+    }
+
+    @Override public int inputSize() { return source.inputSize(); }
+    @Override public int idealOutputSize() { return source.idealOutputSize(); }
+    @Override public long size() { return source.size(); }
+
+    /** The number of batches taken by streams. */
+    public long batches() { return batches; }
+
+    /** The number of times a stream had to wait for the next batch to be prepared. */
+    public long stalls() { return stalls; }
+
+    /** The total time streams have waited for the next batch to be prepared, in nanoseconds. */
+    public long stallNanos() { return stallNanos; }
+
+    /**
+     * The total time the background thread has waited for a free buffer, in nanoseconds, i.e. the time the
+     * source was ahead of the training.
+     */
+    public long producerWaitNanos() { return producerWaitNanos; }
+
+    /**
+     * Returns a new stream over the samples of the source, in order, and starts preparing its batches. The
+     * batches of the stream are the prepared batches, or parts of them if {@link SampleStream#next(int)} is called
+     * with a smaller size.
+     */
+    @Override
+    public SampleStream stream() {
+        stopProducer();
+
+        free.clear();
+        ready.clear();
+        for (Buffer buffer : buffers) {
+            free.add(buffer);
+        }
+
+        activeStream = new Stream();
+        producer = new Thread(this::produce, "prefetcher");
+        producer.setDaemon(true);
+        producer.start();
+        return activeStream;
+    }
+
+    /** Stops preparing batches. The source is not closed. */
+    @Override
+    public void close() {
+        stopProducer();
+        activeStream = null;
+    }
+
+    private void stopProducer() {
+        if (producer == null) {
+            return;
+        }
+
+        producer.interrupt();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                producer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        producer = null;
+    }
+
+    /** Prepares the batches of a stream of the source, run by the background thread. */
+    private void produce() {
+        try {
+            SampleStream stream = source.stream();
+            while (true) {
+                long start = System.nanoTime();
+                Buffer buffer = free.take();
+                producerWaitNanos += System.nanoTime() - start;
+
+                int rows = 0;
+                for (int size; rows < batchSize && (size = stream.next(batchSize - rows)) > 0; rows += size) {
+                    buffer.inputs.rowsView(rows, size).toVector().assign(stream.inputs().toVector());
+                    buffer.idealOutputs.rowsView(rows, size).toVector().assign(stream.idealOutputs().toVector());
+                }
+
+                if (rows == 0) {
+                    ready.add(Buffer.END);
+                    return;
+                }
+
+                buffer.rows = rows;
+                preprocessor.apply(buffer.inputs.rowsView(0, rows), buffer.idealOutputs.rowsView(0, rows));
+                ready.add(buffer);
+
+                // The source ran out before the batch was full
+                if (rows < batchSize) {
+                    ready.add(Buffer.END);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // The stream was ended
+        } catch (RuntimeException | Error e) {
+            ready.add(new Buffer(null, null, e));
+        }
+    }
+
+    private static class Buffer {
+        private static final Buffer END = new Buffer(null, null, null);
+
+        private final Matrix inputs;
+        private final Matrix idealOutputs;
+        private final Throwable failure;
+        private int rows = 0;
+
+        private Buffer(Matrix inputs, Matrix idealOutputs, Throwable failure) {
+            this.inputs = inputs;
+            this.idealOutputs = idealOutputs;
+            this.failure = failure;
+        }
+    }
+
+    private class Stream implements SampleStream {
+        private Buffer current = null;
+        private int position = 0;
+        private boolean ended = false;
+        private Matrix batchInputs = null;
+        private Matrix batchIdealOutputs = null;
+
+        @Override
+        public int next(int maxSize) {
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("The batch size must be positive: " + maxSize);
+            } else if (this != activeStream) {
+                throw new IllegalStateException("The stream has been ended by a new stream, or by closing the data source");
+            }
+
+            batchInputs = null;
+            batchIdealOutputs = null;
+            if (ended) {
+                return 0;
+            }
+
+            if (current != null && position == current.rows) {
+                free.add(current);
+                current = null;
+            }
+
+            if (current == null) {
+                Buffer buffer = ready.poll();
+                if (buffer == null) {
+                    long start = System.nanoTime();
+                    buffer = take();
+                    stallNanos += System.nanoTime() - start;
+                    ++stalls;
+                }
+
+                if (buffer == Buffer.END) {
+                    ended = true;
+                    return 0;
+                } else if (buffer.failure != null) {
+                    ended = true;
+                    throw new IllegalStateException("Failed to prepare a batch", buffer.failure);
+                }
+
+                current = buffer;
+                position = 0;
+                ++batches;
+            }
+
+            int size = Math.min(maxSize, current.rows - position);
+            batchInputs = current.inputs.rowsView(position, size);
+            batchIdealOutputs = current.idealOutputs.rowsView(position, size);
+            position += size;
+            return size;
+        }
+
+        private Buffer take() {
+            try {
+                return ready.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the next batch", e);
+            }
+        }
+
+        @Override
+        public Matrix inputs() { return batch(batchInputs); }
+
+        @Override
+        public Matrix idealOutputs() { return batch(batchIdealOutputs); }
+
+        private Matrix batch(Matrix matrix) {
+            if (matrix == null) {
+                throw new IllegalStateException("There is no current batch");
+            }
+            return matrix;
+        }
+    }
+}
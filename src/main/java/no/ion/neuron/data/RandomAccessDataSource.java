@@ -0,0 +1,12 @@
+package no.ion.neuron.data;
+
+import no.ion.neuron.tensor.Vector;
+
+/** A data source whose samples can be read in any order, e.g. to visit them in a random order each epoch. */
+public interface RandomAccessDataSource extends DataSource {
+    /** The input of the sample with the given index, as a view where possible, which must not be modified. */
+    Vector input(long index);
+
+    /** The ideal output of the sample with the given index, as a view where possible, which must not be modified. */
+    Vector idealOutput(long index);
+}
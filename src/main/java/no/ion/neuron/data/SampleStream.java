@@ -0,0 +1,23 @@
+package no.ion.neuron.data;
+
+import no.ion.neuron.tensor.Matrix;
+
+/**
+ * A pass over the samples of a {@link DataSource}, in batches of consecutive samples. The matrices of a batch
+ * are views of the data source where possible, and are only valid until the next batch.
+ */
+public interface SampleStream {
+    /**
+     * Advance to the next batch of at most {@code maxSize} samples. The batch may have fewer samples, e.g. at
+     * the end of a memory-mapped region of the data source.
+     *
+     * @return the number of samples in the batch, or 0 at the end of the stream
+     */
+    int next(int maxSize);
+
+    /** The inputs of the batch, with one sample per row. */
+    Matrix inputs();
+
+    /** The ideal outputs of the batch, with one sample per row. */
+    Matrix idealOutputs();
+}
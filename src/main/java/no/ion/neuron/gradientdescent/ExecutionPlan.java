@@ -0,0 +1,108 @@
+package no.ion.neuron.gradientdescent;
+
+import no.ion.neuron.BatchComputeContext;
+import no.ion.neuron.ComputeContext;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.Transform;
+
+import java.util.List;
+
+/**
+ * A chain of layers compiled into flat arrays. A sample is processed by running the transforms forward in one loop,
+ * saving the output of each transform in its {@link Workspace}, and then back-propagating in a reverse loop over
+ * those saved outputs. Neither loop recurses, so the stack depth does not grow with the number of layers.
+ */
+public class ExecutionPlan {
+    private final Transform[] transforms;
+    private final Workspace[] workspaces;
+    private final Vector[] errorGradientOfParameters;
+
+    /** dE/dE = 1, the error gradient of the output of the last transform. */
+    private final Vector lastLayerErrorGradient;
+
+    /** The computation results of the transforms from the forward pass of the current batch. */
+    private final Transform.BatchComputationResult[] batchTape;
+
+    /** Returns the plan of the layers, using their workspaces and accumulating into their cumulative gradients. */
+    public static ExecutionPlan of(List<GradientDescentLayer> layers) {
+        int size = layers.size();
+        var transforms = new Transform[size];
+        var workspaces = new Workspace[size];
+        var errorGradientOfParameters = new Vector[size];
+        for (int i = 0; i < size; ++i) {
+            GradientDescentLayer layer = layers.get(i);
+            transforms[i] = layer.transform();
+            workspaces[i] = layer.workspace();
+            errorGradientOfParameters[i] = layer.cumulativeErrorGradientOfParameters();
+        }
+
+        return new ExecutionPlan(transforms, workspaces, errorGradientOfParameters);
+    }
+
+    ExecutionPlan(Transform[] transforms, Workspace[] workspaces, Vector[] errorGradientOfParameters) {
+        if (transforms.length == 0) {
+            throw new IllegalArgumentException("Cannot make an execution plan without transforms");
+        }
+
+        this.transforms = transforms;
+        this.workspaces = workspaces;
+        this.errorGradientOfParameters = errorGradientOfParameters;
+        this.lastLayerErrorGradient = new Vector(transforms[transforms.length - 1].outputSize(), 1f);
+        this.batchTape = new Transform.BatchComputationResult[transforms.length];
+    }
+
+    /**
+     * Compute the input through all transforms, and back-propagate the error gradient, accumulating the
+     * error gradient of the parameters of each transform.
+     *
+     * @return the output of the last transform, a buffer that is only valid until the next call.
+     */
+    public Vector process(ComputeContext context, Vector input) {
+        Vector layerInput = input;
+        for (int i = 0; i < transforms.length; ++i) {
+            transforms[i].forward(context, layerInput, workspaces[i].output(), workspaces[i].scratch());
+            layerInput = workspaces[i].output();
+        }
+
+        Vector errorGradientOfOutput = lastLayerErrorGradient;
+        for (int i = transforms.length - 1; i >= 0; --i) {
+            Vector inputOfTransform = i == 0 ? input : workspaces[i - 1].output();
+            transforms[i].backward(context, inputOfTransform, workspaces[i].output(), workspaces[i].scratch(),
+                    errorGradientOfOutput, workspaces[i].errorGradientOfInput(), errorGradientOfParameters[i]);
+            errorGradientOfOutput = workspaces[i].errorGradientOfInput();
+        }
+
+        return workspaces[transforms.length - 1].output();
+    }
+
+    /** The batch equivalent of {@link #process(ComputeContext, Vector)}, with one sample per row of {@code inputs}. */
+    public Matrix processBatch(BatchComputeContext context, Matrix inputs) {
+        Matrix layerInputs = inputs;
+        for (int i = 0; i < transforms.length; ++i) {
+            Transform transform = transforms[i];
+            batchTape[i] = transform.computeBatch(context, layerInputs);
+
+            Matrix outputs = batchTape[i].outputs();
+            if (outputs.columns() != transform.outputSize() || outputs.rows() != inputs.rows()) {
+                throw new IllegalStateException("Outputs from transform " + transform + " has dimension " +
+                        outputs.rows() + "x" + outputs.columns() + " but expected " + inputs.rows() + "x" + transform.outputSize());
+            }
+            layerInputs = outputs;
+        }
+        Matrix netOutputs = layerInputs;
+
+        Matrix errorGradients = new Matrix(inputs.rows(), transforms[transforms.length - 1].outputSize(), 1f);
+        for (int i = transforms.length - 1; i >= 0; --i) {
+            Transform transform = transforms[i];
+            errorGradients = batchTape[i].backPropagate(errorGradients, errorGradientOfParameters[i]);
+            batchTape[i] = null;
+            if (errorGradients.columns() != transform.inputSize() || errorGradients.rows() != inputs.rows()) {
+                throw new IllegalStateException(String.format("Back-propagation matrix dimension %dx%d does not match the inputs %dx%d",
+                        errorGradients.rows(), errorGradients.columns(), inputs.rows(), transform.inputSize()));
+            }
+        }
+
+        return netOutputs;
+    }
+}
@@ -1,6 +1,5 @@
 package no.ion.neuron.gradientdescent;
 
-import no.ion.neuron.ComputeContext;
 import no.ion.neuron.tensor.Vector;
 import no.ion.neuron.layer.LayerId;
 import no.ion.neuron.layer.ParametrizedLayer;
@@ -9,75 +8,55 @@ import no.ion.neuron.transform.Transform;
 public class GradientDescentLayer implements ParametrizedLayer {
     private final LayerId layerId;
     private final Transform transform;
-    private final Vector cumulativeErrorGradientOfParameters;
+    private final Workspace workspace;
 
-    private GradientDescentLayer upstream = null;
-    private GradientDescentLayer downstream = null;
+    /** Allocated when first needed, normally by being moved into the gradient buffer of the net. */
+    private Vector cumulativeErrorGradientOfParameters = null;
 
     public GradientDescentLayer(Transform transform) {
         this.layerId = LayerId.createNext();
         this.transform = transform;
-        this.cumulativeErrorGradientOfParameters = new Vector(transform.parameterSize());
+        this.workspace = new Workspace(transform);
     }
 
     @Override
     public LayerId layerId() { return layerId; }
 
-    public void setUpstreamLayer(GradientDescentLayer upstream) { this.upstream = upstream; }
-    public void setDownstreamLayer(GradientDescentLayer downstream) { this.downstream = downstream; }
     public int inputSize() { return transform.inputSize(); }
     public int outputSize() { return transform.outputSize(); }
     public Vector parameters() { return transform.parameters(); }
+    public Transform transform() { return transform; }
+    public Workspace workspace() { return workspace; }
 
-    public static class ProcessResult {
-        private final Vector netOutput;
-        private Vector errorGradient;
-
-        public ProcessResult(Vector netOutput) { this.netOutput = netOutput; }
-
-        public Vector netOutput() { return netOutput; }
-        public Vector errorGradient() { return errorGradient; }
-
-        public ProcessResult setErrorGradient(Vector errorGradient) {
-            this.errorGradient = errorGradient;
-            return this;
-        }
+    /** Compute the output of this layer only, leaving the layer and its transform untouched. */
+    public Vector infer(Vector input) {
+        return transform.infer(input);
     }
 
-    public ProcessResult process(ComputeContext context, Vector input) {
-        Transform.ComputationResult result = transform.compute(context, input);
-
-        Vector output = result.output();
-        if (output.size() != transform.outputSize()) {
-            throw new IllegalStateException("Output size from transform " + transform +
-                    " does not match the declared output size: " + outputSize());
-        }
-
-        ProcessResult downstreamResult;
-        if (this.downstream == null) {
-            Vector errorGradient = new Vector(transform.outputSize(), 1f);
-            downstreamResult = new ProcessResult(output).setErrorGradient(errorGradient);
+    /**
+     * Move the parameters of the transform and the cumulative gradient into the given storage,
+     * each of size {@link #parameterSize()}. See {@link Transform#moveParametersTo(Vector)}.
+     */
+    public void moveTo(Vector parameterStorage, Vector gradientStorage) {
+        transform.moveParametersTo(parameterStorage);
+        if (cumulativeErrorGradientOfParameters == null) {
+            gradientStorage.clear();
+            cumulativeErrorGradientOfParameters = gradientStorage;
         } else {
-            downstreamResult = downstream.process(context, output);
+            cumulativeErrorGradientOfParameters.moveTo(gradientStorage);
         }
+    }
 
-        Transform.BackPropagation backPropagation = result.backPropagate(downstreamResult.errorGradient);
+    @Override public int parameterSize() { return transform.parameterSize(); }
+    @Override public void clearCumulativeErrorGradientOfParameters() { cumulativeErrorGradientOfParameters().clear(); }
 
-        if (backPropagation.errorGradientOfInputs().size() != transform.inputSize()) {
-            throw new IllegalStateException(String.format("Back-propagation vector size %d does not match transform's input size %d",
-                    backPropagation.errorGradientOfInputs().size(), transform.inputSize()));
+    @Override
+    public Vector cumulativeErrorGradientOfParameters() {
+        if (cumulativeErrorGradientOfParameters == null) {
+            cumulativeErrorGradientOfParameters = new Vector(transform.parameterSize());
         }
-
-        Vector errorGradientOfParameters = backPropagation.errorGradientOfParameters();
-        cumulativeErrorGradientOfParameters.add(errorGradientOfParameters);
-
-        // Only error gradient different from downstream result.
-        return downstreamResult.setErrorGradient(backPropagation.errorGradientOfInputs());
+        return cumulativeErrorGradientOfParameters;
     }
-
-    @Override public int parameterSize() { return transform.parameterSize(); }
-    @Override public Vector cumulativeErrorGradientOfParameters() { return cumulativeErrorGradientOfParameters; }
-    @Override public void clearCumulativeErrorGradientOfParameters() { cumulativeErrorGradientOfParameters.clear(); }
     @Override public void adjustParameters(Vector parameterAdjustments) { transform.adjustParameters(parameterAdjustments); }
 
     public String toString(boolean withLastOutput) {
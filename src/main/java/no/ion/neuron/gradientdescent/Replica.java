@@ -0,0 +1,68 @@
+package no.ion.neuron.gradientdescent;
+
+import no.ion.neuron.BatchComputeContext;
+import no.ion.neuron.ComputeContext;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.Transform;
+
+import java.util.List;
+
+/**
+ * The per-sample state of a chain of layers for one worker thread: a {@link Workspace} per layer, and a
+ * private cumulative gradient of the parameters laid out like the parameters of the net.
+ *
+ * <p>The transforms, and hence the parameters, are shared with the layers and only read, so several replicas of
+ * the same layers can process samples concurrently as long as the parameters are not adjusted meanwhile.</p>
+ */
+public class Replica {
+    private final ExecutionPlan plan;
+    private final Vector cumulativeErrorGradientOfParameters;
+
+    public Replica(List<GradientDescentLayer> layers) {
+        int size = layers.size();
+        var transforms = new Transform[size];
+        var workspaces = new Workspace[size];
+        var errorGradientOfParameters = new Vector[size];
+
+        int parameterSize = 0;
+        for (int i = 0; i < size; ++i) {
+            transforms[i] = layers.get(i).transform();
+            workspaces[i] = new Workspace(transforms[i]);
+            parameterSize += transforms[i].parameterSize();
+        }
+
+        this.cumulativeErrorGradientOfParameters = new Vector(parameterSize);
+        int offset = 0;
+        for (int i = 0; i < size; ++i) {
+            int layerSize = transforms[i].parameterSize();
+            errorGradientOfParameters[i] = cumulativeErrorGradientOfParameters.view(offset, layerSize);
+            offset += layerSize;
+        }
+
+        this.plan = new ExecutionPlan(transforms, workspaces, errorGradientOfParameters);
+    }
+
+    /**
+     * Compute the input through all layers, and back-propagate the error gradient, accumulating the
+     * error gradient of the parameters into this replica. See {@link ExecutionPlan#process(ComputeContext, Vector)}.
+     *
+     * @return the output of the last layer, a buffer that is only valid until the next call.
+     */
+    public Vector process(ComputeContext context, Vector input) {
+        return plan.process(context, input);
+    }
+
+    /**
+     * Compute a batch of samples, with one sample per row, accumulating the error gradient of the parameters
+     * into this replica. See {@link ExecutionPlan#processBatch(BatchComputeContext, Matrix)}.
+     */
+    public Matrix processBatch(BatchComputeContext context, Matrix inputs) {
+        return plan.processBatch(context, inputs);
+    }
+
+    /** The cumulative error gradient of the parameters of all layers: The live buffer, not a copy. */
+    public Vector cumulativeErrorGradientOfParameters() { return cumulativeErrorGradientOfParameters; }
+
+    public void clearCumulativeErrorGradientOfParameters() { cumulativeErrorGradientOfParameters.clear(); }
+}
@@ -0,0 +1,31 @@
+package no.ion.neuron.gradientdescent;
+
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.Transform;
+
+/**
+ * The per-sample buffers of a layer: the output of its transform, the error gradient of its input, and
+ * any intermediate values the transform needs between the forward and backward pass.
+ * They are allocated once for the shape of the transform and reused for every sample, so that
+ * a steady-state training step does not allocate.
+ */
+public class Workspace {
+    private final Vector output;
+    private final Vector errorGradientOfInput;
+    private final Vector scratch;
+
+    public Workspace(Transform transform) {
+        this.output = new Vector(transform.outputSize());
+        this.errorGradientOfInput = new Vector(transform.inputSize());
+        this.scratch = new Vector(transform.scratchSize());
+    }
+
+    /** The output of the layer's transform from the last forward pass. */
+    public Vector output() { return output; }
+
+    /** dE/dXj of the last backward pass, where Xj is the j'th input of the layer's transform. */
+    public Vector errorGradientOfInput() { return errorGradientOfInput; }
+
+    /** The intermediate values of the last forward pass, see {@link Transform#scratchSize()}. */
+    public Vector scratch() { return scratch; }
+}
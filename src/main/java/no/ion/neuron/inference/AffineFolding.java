@@ -0,0 +1,287 @@
+package no.ion.neuron.inference;
+
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.ActivationTransform;
+import no.ion.neuron.transform.BiasTransform;
+import no.ion.neuron.transform.DenseTransform;
+import no.ion.neuron.transform.IdentityTransform;
+import no.ion.neuron.transform.ScalingTransform;
+import no.ion.neuron.transform.Transform;
+import no.ion.neuron.transform.WeightTransform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An optimization pass that makes a smaller net for serving, equivalent to a trained net: Consecutive affine
+ * transforms (ScalingTransform, WeightTransform, BiasTransform) are folded into one affine map x &rarr; A x + c,
+ * IdentityTransforms are removed, and an affine map followed by an ActivationTransform or a DenseTransform
+ * becomes a single DenseTransform. A map that only scales and translates is kept as a ScalingTransform and a
+ * BiasTransform, or folded into the columns of the weight of a following DenseTransform.
+ *
+ * <p>Folding may cost more than it saves, e.g. the product of the weights of a bottleneck is a much larger matrix.
+ * A folded run of transforms therefore replaces the original run only if it needs fewer floating point operations
+ * per inference, see {@link #flops(Transform)}.</p>
+ *
+ * <p>The error transform appended by a Trainer is not part of the folded net. The folded net is verified to
+ * produce the same outputs as the original within a tolerance, since folding changes the rounding.</p>
+ */
+public class AffineFolding {
+    private AffineFolding() {}
+
+    public static class Result {
+        private final NeuralNet net;
+        private final long flopsBefore;
+        private final long flopsAfter;
+        private final float maxDifference;
+
+        Result(NeuralNet net, long flopsBefore, long flopsAfter, float maxDifference) {
+            this.net = net;
+            this.flopsBefore = flopsBefore;
+            this.flopsAfter = flopsAfter;
+            this.maxDifference = maxDifference;
+        }
+
+        /** The folded net, which shares no parameters with the original net. */
+        public NeuralNet net() { return net; }
+
+        /** The estimated floating point operations per inference of the original net. */
+        public long flopsBefore() { return flopsBefore; }
+
+        /** The estimated floating point operations per inference of the folded net. */
+        public long flopsAfter() { return flopsAfter; }
+
+        public long flopsSaved() { return flopsBefore - flopsAfter; }
+
+        /** The maximum absolute difference between the outputs of the nets over the validation inputs. */
+        public float maxDifference() { return maxDifference; }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "flopsBefore=" + flopsBefore +
+                    ", flopsAfter=" + flopsAfter +
+                    ", flopsSaved=" + flopsSaved() +
+                    ", maxDifference=" + maxDifference +
+                    '}';
+        }
+    }
+
+    /** Fold the net, verifying it against 32 random inputs in [-1, 1) with a tolerance of 1e-4 per unit of output. */
+    public static Result fold(NeuralNet net) {
+        var random = new Random(0);
+        var validationInputs = new ArrayList<Vector>();
+        for (int i = 0; i < 32; ++i) {
+            validationInputs.add(new Vector(net.inputSize(), () -> random.nextFloat() * 2 - 1));
+        }
+
+        return fold(net, validationInputs, 1e-4f);
+    }
+
+    /**
+     * Fold the net, and verify that the outputs of the folded net for each validation input differ from those of
+     * the original by at most {@code tolerance * (1 + |y|)}, with y being the original output.
+     *
+     * @throws IllegalStateException if the outputs differ by more than the tolerance
+     */
+    public static Result fold(NeuralNet net, List<Vector> validationInputs, float tolerance) {
+        var folded = new NeuralNet(net.inputSize());
+        long flopsBefore = 0;
+
+        // The transforms folded into the pending map, in order
+        var run = new ArrayList<Transform>();
+        AffineMap pending = null;
+
+        for (Transform transform : net.transforms()) {
+            if (!transform.isInferable()) {
+                break;
+            }
+            flopsBefore += flops(transform);
+
+            if (transform instanceof IdentityTransform) {
+                continue;
+            } else if (transform instanceof ScalingTransform || transform instanceof WeightTransform ||
+                    transform instanceof BiasTransform) {
+                if (pending == null) {
+                    pending = new AffineMap(transform.inputSize());
+                }
+                pending.apply(transform);
+                run.add(transform);
+            } else if ((transform instanceof ActivationTransform || transform instanceof DenseTransform) && pending != null) {
+                run.add(transform);
+                addCheapest(folded, run, pending.foldInto(transform));
+                run.clear();
+                pending = null;
+            } else {
+                if (pending != null) {
+                    addCheapest(folded, run, pending.transforms());
+                    run.clear();
+                    pending = null;
+                }
+                folded.addTransform(transform.copy());
+            }
+        }
+
+        if (pending != null) {
+            addCheapest(folded, run, pending.transforms());
+        }
+
+        long flopsAfter = flops(folded.transforms());
+
+        float maxDifference = 0;
+        for (Vector input : validationInputs) {
+            Vector expected = net.infer(input);
+            Vector actual = folded.infer(input);
+            for (int i = 0; i < expected.size(); ++i) {
+                float difference = Math.abs(expected.get(i) - actual.get(i));
+                maxDifference = Math.max(maxDifference, difference);
+                if (!(difference <= tolerance * (1 + Math.abs(expected.get(i))))) {
+                    throw new IllegalStateException("The folded net differs from the original net by " + difference +
+                            " for output " + i + " of input " + input + ": " + actual + " vs " + expected);
+                }
+            }
+        }
+
+        return new Result(folded, flopsBefore, flopsAfter, maxDifference);
+    }
+
+    /**
+     * Add the folded transforms of a run to the net if they need fewer floating point operations than the original
+     * transforms of the run, and otherwise copies of the original transforms.
+     */
+    private static void addCheapest(NeuralNet net, List<Transform> original, List<Transform> folded) {
+        if (flops(folded) < flops(original)) {
+            folded.forEach(net::addTransform);
+        } else {
+            original.forEach(transform -> net.addTransform(transform.copy()));
+        }
+    }
+
+    private static long flops(List<Transform> transforms) {
+        long flops = 0;
+        for (Transform transform : transforms) {
+            flops += flops(transform);
+        }
+        return flops;
+    }
+
+    /** An estimate of the floating point operations per inference, counting one per multiply, add, and activation. */
+    static long flops(Transform transform) {
+        long inputSize = transform.inputSize();
+        long outputSize = transform.outputSize();
+        if (transform instanceof IdentityTransform) {
+            return 0;
+        } else if (transform instanceof WeightTransform) {
+            return 2 * inputSize * outputSize;
+        } else if (transform instanceof DenseTransform) {
+            return 2 * inputSize * outputSize + 2 * outputSize;
+        } else if (transform instanceof ScalingTransform || transform instanceof BiasTransform ||
+                transform instanceof ActivationTransform) {
+            return outputSize;
+        } else {
+            // Assume a general transform is like a WeightTransform
+            return 2 * inputSize * outputSize;
+        }
+    }
+
+    /**
+     * x -> A x + c, where A is either a general matrix, or a diagonal matrix kept as the vector of its diagonal
+     * until a WeightTransform is applied, and where A, the diagonal, and c are owned by this.
+     */
+    private static class AffineMap {
+        /** The general matrix A, or null if A is diagonal. */
+        private Matrix a = null;
+
+        /** The diagonal of A if A is diagonal, or null if A is the identity or a general matrix. */
+        private Vector diagonal = null;
+
+        private Vector c;
+        private boolean hasBias = false;
+
+        /** The identity map. */
+        AffineMap(int size) {
+            this.c = new Vector(size);
+        }
+
+        /** Make this map transform x -> T(A x + c). */
+        void apply(Transform transform) {
+            if (transform instanceof ScalingTransform) {
+                Vector scales = transform.parameters();
+                if (a != null) {
+                    for (int i = 0; i < a.rows(); ++i) {
+                        for (int j = 0; j < a.columns(); ++j) {
+                            a.setElement(i, j, a.getElement(i, j) * scales.get(i));
+                        }
+                    }
+                } else if (diagonal != null) {
+                    diagonal.scale(scales);
+                } else {
+                    diagonal = scales.copy();
+                }
+                c.scale(scales);
+            } else if (transform instanceof WeightTransform) {
+                Matrix weight = ((WeightTransform) transform).weight();
+                a = product(weight);
+                diagonal = null;
+                c = hasBias ? weight.dot(c) : new Vector(weight.rows());
+            } else if (transform instanceof BiasTransform) {
+                c.add(((BiasTransform) transform).bias());
+                hasBias = true;
+            } else {
+                throw new IllegalArgumentException("Not an affine transform: " + transform);
+            }
+        }
+
+        /** Returns W A, a new matrix, scaling the columns of W if A is diagonal. */
+        private Matrix product(Matrix weight) {
+            if (a != null) {
+                return weight.multiply(a);
+            }
+
+            Matrix product = weight.copy();
+            if (diagonal != null) {
+                for (int i = 0; i < product.rows(); ++i) {
+                    for (int j = 0; j < product.columns(); ++j) {
+                        product.setElement(i, j, product.getElement(i, j) * diagonal.get(j));
+                    }
+                }
+            }
+            return product;
+        }
+
+        /** Returns the fewest transforms that compute this map. */
+        List<Transform> transforms() {
+            var transforms = new ArrayList<Transform>();
+            if (a != null) {
+                transforms.add(new WeightTransform(a));
+            } else if (diagonal != null) {
+                transforms.add(new ScalingTransform(diagonal));
+            }
+            if (hasBias) {
+                transforms.add(new BiasTransform(c));
+            }
+            return transforms;
+        }
+
+        /** Returns the fewest transforms that compute this map followed by an ActivationTransform or a DenseTransform. */
+        List<Transform> foldInto(Transform transform) {
+            if (transform instanceof DenseTransform) {
+                // f(W (A x + c) + b) = f(W A x + (W c + b))
+                var dense = (DenseTransform) transform;
+                Vector bias = dense.weight().dot(c);
+                bias.add(dense.bias());
+                return List.of(new DenseTransform(product(dense.weight()), bias, dense.activationFunction()));
+            } else if (a != null) {
+                var activationTransform = (ActivationTransform) transform;
+                return List.of(new DenseTransform(a, c, activationTransform.activationFunction()));
+            } else {
+                List<Transform> transforms = transforms();
+                transforms.add(transform.copy());
+                return transforms;
+            }
+        }
+    }
+}
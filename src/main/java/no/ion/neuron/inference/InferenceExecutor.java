@@ -0,0 +1,267 @@
+package no.ion.neuron.inference;
+
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Coalesces single-sample inference requests from many threads into batches, to replace many mat-vec products
+ * with one matrix-matrix product per batch.
+ *
+ * <p>A dispatcher thread takes the first pending request, and waits until either {@code maxBatchSize} requests
+ * have been collected or {@code maxWait} has passed since the first request arrived. The batch is then run through
+ * {@link InferenceModel#inferBatch(Matrix)} and the future of each request is completed with its output, or with
+ * the failure of the batch, after which the dispatcher goes on with the next batch.</p>
+ *
+ * <p>The futures are completed by tasks of a completion executor, which hence also runs the non-async dependent
+ * stages of the futures, so that a slow stage of one caller does not hold up the batching of the others.</p>
+ *
+ * <p>Submitting never blocks and enters no monitor, so the callers may well be virtual threads that block
+ * on {@link CompletableFuture#join()}.</p>
+ */
+public class InferenceExecutor implements AutoCloseable {
+    /** The number of most recent request latencies kept for the latency percentiles. */
+    static final int LATENCY_WINDOW = 4096;
+
+    private final InferenceModel model;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final Executor completionExecutor;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+
+    /** Element n is the number of batches of size n. */
+    private final AtomicLongArray batchSizeHistogram;
+
+    /** A ring buffer of the latency of the most recent requests, guarded by itself. */
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private long completedRequests = 0;
+
+    private volatile boolean closed = false;
+
+    private static class Request {
+        private final Vector input;
+        private final long submittedNanos;
+        private final CompletableFuture<Vector> future = new CompletableFuture<>();
+
+        private Request(Vector input, long submittedNanos) {
+            this.input = input;
+            this.submittedNanos = submittedNanos;
+        }
+    }
+
+    /** An executor completing the futures in the {@link ForkJoinPool#commonPool() common pool}. */
+    public InferenceExecutor(InferenceModel model, int maxBatchSize, Duration maxWait) {
+        this(model, maxBatchSize, maxWait, ForkJoinPool.commonPool());
+    }
+
+    /** @param completionExecutor runs the completion of the futures, see the class documentation */
+    public InferenceExecutor(InferenceModel model, int maxBatchSize, Duration maxWait, Executor completionExecutor) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("The maximum batch size must be positive: " + maxBatchSize);
+        } else if (maxWait.isNegative()) {
+            throw new IllegalArgumentException("The maximum wait cannot be negative: " + maxWait);
+        }
+
+        this.model = model;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.completionExecutor = completionExecutor;
+        this.batchSizeHistogram = new AtomicLongArray(maxBatchSize + 1);
+        this.dispatcher = new Thread(this::dispatch, "inference-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /** Submit an input for inference. The input must not be modified until the returned future completes. */
+    public CompletableFuture<Vector> submit(Vector input) {
+        if (input.size() != model.inputSize()) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                    "Input has size " + input.size() + " but the model has input size " + model.inputSize()));
+        } else if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("The executor is closed"));
+        }
+
+        var request = new Request(input, System.nanoTime());
+        queue.add(request);
+
+        // The dispatcher may have drained the queue for the last time after the closed check above.
+        if (closed && queue.remove(request)) {
+            request.future.completeExceptionally(new IllegalStateException("The executor is closed"));
+        }
+
+        return request.future;
+    }
+
+    /** A snapshot of the metrics of the executor. */
+    public static class Metrics {
+        private final int queueDepth;
+        private final long[] batchSizeHistogram;
+        private final long completedRequests;
+        private final long[] sortedLatencies;
+
+        Metrics(int queueDepth, long[] batchSizeHistogram, long completedRequests, long[] sortedLatencies) {
+            this.queueDepth = queueDepth;
+            this.batchSizeHistogram = batchSizeHistogram;
+            this.completedRequests = completedRequests;
+            this.sortedLatencies = sortedLatencies;
+        }
+
+        /** The number of submitted requests not yet taken by the dispatcher. */
+        public int queueDepth() { return queueDepth; }
+
+        /** The number of batches of the given size that have been run. */
+        public long batches(int batchSize) {
+            return batchSize < batchSizeHistogram.length ? batchSizeHistogram[batchSize] : 0;
+        }
+
+        /** A copy of the batch size histogram: Element n is the number of batches of size n. */
+        public long[] batchSizeHistogram() { return batchSizeHistogram.clone(); }
+
+        public long completedRequests() { return completedRequests; }
+
+        /**
+         * The latency from submission to completion at the given percentile in [0, 100], over the most
+         * recent requests, or 0 if no request has completed.
+         */
+        public Duration latency(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile must be in [0, 100]: " + percentile);
+            } else if (sortedLatencies.length == 0) {
+                return Duration.ZERO;
+            }
+
+            int index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+            return Duration.ofNanos(sortedLatencies[Math.max(0, index)]);
+        }
+
+        @Override
+        public String toString() {
+            return "Metrics{" +
+                    "queueDepth=" + queueDepth +
+                    ", completedRequests=" + completedRequests +
+                    ", p50=" + latency(50) +
+                    ", p99=" + latency(99) +
+                    ", batchSizeHistogram=" + Arrays.toString(batchSizeHistogram) +
+                    '}';
+        }
+    }
+
+    public Metrics metrics() {
+        long[] histogram = new long[batchSizeHistogram.length()];
+        for (int i = 0; i < histogram.length; ++i) {
+            histogram[i] = batchSizeHistogram.get(i);
+        }
+
+        long completed;
+        long[] recentLatencies;
+        synchronized (latencies) {
+            completed = completedRequests;
+            recentLatencies = Arrays.copyOf(latencies, (int) Math.min(completed, LATENCY_WINDOW));
+        }
+        Arrays.sort(recentLatencies);
+
+        return new Metrics(queue.size(), histogram, completed, recentLatencies);
+    }
+
+    /** Stops the dispatcher after the current batch. Requests not yet taken by the dispatcher fail. */
+    @Override
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Request request; (request = queue.poll()) != null; ) {
+            request.future.completeExceptionally(new IllegalStateException("The executor is closed"));
+        }
+    }
+
+    private void dispatch() {
+        var batch = new ArrayList<Request>(maxBatchSize);
+        while (!closed) {
+            try {
+                Request first = queue.take();
+                batch.add(first);
+
+                long deadline = first.submittedNanos + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+
+                    Request next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Closing: Run what has been collected, and leave the rest to close().
+            }
+
+            if (!batch.isEmpty()) {
+                runBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void runBatch(List<Request> batch) {
+        Matrix outputs;
+        try {
+            var inputs = new Matrix(batch.size(), model.inputSize());
+            for (int sample = 0; sample < batch.size(); ++sample) {
+                inputs.setRow(sample, batch.get(sample).input);
+            }
+            outputs = model.inferBatch(inputs);
+        } catch (Throwable t) {
+            // Also an Error, e.g. an OutOfMemoryError, fails only this batch and not the dispatcher.
+            batch.forEach(request -> complete(() -> request.future.completeExceptionally(t)));
+            return;
+        }
+
+        batchSizeHistogram.incrementAndGet(batch.size());
+
+        long now = System.nanoTime();
+        synchronized (latencies) {
+            for (Request request : batch) {
+                latencies[(int) (completedRequests++ % LATENCY_WINDOW)] = now - request.submittedNanos;
+            }
+        }
+
+        for (int sample = 0; sample < batch.size(); ++sample) {
+            CompletableFuture<Vector> future = batch.get(sample).future;
+            Vector output = outputs.row(sample);
+            complete(() -> future.complete(output));
+        }
+    }
+
+    /** Complete a future in the completion executor, or on this thread if the executor rejects it. */
+    private void complete(Runnable completion) {
+        try {
+            completionExecutor.execute(completion);
+        } catch (RuntimeException e) {
+            completion.run();
+        }
+    }
+}
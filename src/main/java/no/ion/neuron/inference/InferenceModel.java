@@ -0,0 +1,150 @@
+package no.ion.neuron.inference;
+
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.OffHeapArena;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.Transform;
+
+import java.util.List;
+
+/**
+ * An immutable snapshot of a chain of transforms for inference, e.g. from {@link no.ion.neuron.NeuralNet#inferenceModel()}.
+ *
+ * <p>The model owns copies of the transforms, with their parameters in one buffer that is never exposed,
+ * so training the net the model was made from does not affect the model. Each thread gets its own
+ * scratch buffers for the intermediate outputs, so the model can be used concurrently by any number of
+ * threads without synchronization, while sharing one copy of the parameters.</p>
+ *
+ * <p>A model made with an {@link OffHeapArena} instead keeps the parameters of each transform off-heap in an
+ * allocation of the arena, so the heap usage of the model is small regardless of the number of parameters. The
+ * model must not be used after the arena is closed.</p>
+ */
+public final class InferenceModel {
+    private final int inputSize;
+    private final Transform[] transforms;
+    private final int parameterSize;
+
+    /** The output buffer of each transform, for the current thread. */
+    private final ThreadLocal<Vector[]> scratch;
+
+    /** Makes a snapshot of the transforms, which are copied and left untouched. */
+    public InferenceModel(int inputSize, List<? extends Transform> transforms) {
+        this(inputSize, transforms, null);
+    }
+
+    /**
+     * Makes a snapshot of the transforms, with the parameters of each transform in its own off-heap allocation
+     * of the arena. Each transform is copied and moved off-heap in turn, so at most the parameters of one
+     * transform are copied to the heap on the way.
+     */
+    public InferenceModel(int inputSize, List<? extends Transform> transforms, OffHeapArena arena) {
+        this(inputSize, copy(inputSize, transforms, arena));
+    }
+
+    /** Makes a model of the transforms as is, taking ownership of them. */
+    InferenceModel(int inputSize, Transform[] transforms) {
+        this.inputSize = inputSize;
+        this.transforms = transforms;
+
+        int parameterSize = 0;
+        for (Transform transform : transforms) {
+            parameterSize += transform.parameterSize();
+        }
+        this.parameterSize = parameterSize;
+
+        this.scratch = ThreadLocal.withInitial(() -> {
+            var outputs = new Vector[this.transforms.length];
+            for (int i = 0; i < outputs.length; ++i) {
+                outputs[i] = new Vector(this.transforms[i].outputSize());
+            }
+            return outputs;
+        });
+    }
+
+    private static Transform[] copy(int inputSize, List<? extends Transform> transforms, OffHeapArena arena) {
+        int parameterSize = 0;
+        int expectedInputSize = inputSize;
+        for (int i = 0; i < transforms.size(); ++i) {
+            Transform transform = transforms.get(i);
+            if (!transform.isInferable()) {
+                throw new IllegalArgumentException("Transform " + i + " is not inferable: " + transform);
+            } else if (transform.inputSize() != expectedInputSize) {
+                throw new IllegalArgumentException("Transform " + i + " has input size " + transform.inputSize() +
+                        " but the previous output has size " + expectedInputSize);
+            }
+
+            parameterSize += transform.parameterSize();
+            expectedInputSize = transform.outputSize();
+        }
+
+        var copies = new Transform[transforms.size()];
+        Vector parameters = arena == null ? new Vector(parameterSize) : null;
+        int offset = 0;
+        for (int i = 0; i < copies.length; ++i) {
+            copies[i] = transforms.get(i).copy();
+            int size = copies[i].parameterSize();
+            if (arena == null) {
+                copies[i].moveParametersTo(parameters.view(offset, size));
+                offset += size;
+            } else if (size > 0) {
+                copies[i].moveParametersTo(arena.allocateVector(size));
+            }
+        }
+        return copies;
+    }
+
+    public int inputSize() { return inputSize; }
+    public int outputSize() { return transforms.length == 0 ? inputSize : transforms[transforms.length - 1].outputSize(); }
+    public int parameterSize() { return parameterSize; }
+
+    /** Compute the output for the input into {@code output}. Does not allocate, once the thread has been warmed up. */
+    public void infer(Vector input, Vector output) {
+        if (input.size() != inputSize) {
+            throw new IllegalArgumentException("Input has size " + input.size() + " but the model has input size " + inputSize);
+        } else if (output.size() != outputSize()) {
+            throw new IllegalArgumentException("Output has size " + output.size() + " but the model has output size " + outputSize());
+        }
+
+        if (transforms.length == 0) {
+            output.assign(input);
+            return;
+        }
+
+        Vector[] outputs = scratch.get();
+        Vector layerInput = input;
+        for (int i = 0; i < transforms.length - 1; ++i) {
+            transforms[i].infer(layerInput, outputs[i]);
+            layerInput = outputs[i];
+        }
+        transforms[transforms.length - 1].infer(layerInput, output);
+    }
+
+    /** Returns the output for the input, in a new vector. */
+    public Vector infer(Vector input) {
+        Vector output = new Vector(outputSize());
+        infer(input, output);
+        return output;
+    }
+
+    /** Returns the outputs for a batch of inputs, one sample per row, computed with batched transforms. */
+    public Matrix inferBatch(Matrix inputs) {
+        if (inputs.columns() != inputSize) {
+            throw new IllegalArgumentException("Inputs have " + inputs.columns() + " columns but the model has input size " + inputSize);
+        }
+
+        Matrix outputs = inputs;
+        for (Transform transform : transforms) {
+            outputs = transform.inferBatch(outputs);
+        }
+        return transforms.length == 0 ? inputs.copy() : outputs;
+    }
+
+    @Override
+    public String toString() {
+        return "InferenceModel{" +
+                "inputSize=" + inputSize +
+                ", outputSize=" + outputSize() +
+                ", parameterSize=" + parameterSize() +
+                '}';
+    }
+}
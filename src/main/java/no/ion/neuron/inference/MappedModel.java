@@ -0,0 +1,90 @@
+package no.ion.neuron.inference;
+
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.tensor.OffHeapArena;
+import no.ion.neuron.transform.ErrorTransform;
+import no.ion.neuron.transform.Transform;
+import no.ion.neuron.transform.loss.ErrorFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A model file mapped into memory, see {@link ModelFile#map(java.nio.file.Path)}. The parameters of the transforms are read-only
+ * views of the file, and writing to them throws a {@link java.nio.ReadOnlyBufferException}.
+ *
+ * <p>The transforms, and any inference model made from them, must not be used after the model is closed. Closing
+ * releases the mapping of the file, which is unmapped once inferences in progress are done with it, see
+ * {@link OffHeapArena}. A net made by {@link #toNeuralNet()} is a copy, and is not affected.</p>
+ */
+public final class MappedModel implements AutoCloseable {
+    private final int inputSize;
+    private final List<Transform> transforms;
+    private final OffHeapArena arena;
+
+    MappedModel(int inputSize, List<Transform> transforms, OffHeapArena arena) {
+        this.inputSize = inputSize;
+        this.transforms = List.copyOf(transforms);
+        this.arena = arena;
+    }
+
+    public int inputSize() { return inputSize; }
+
+    /** All transforms of the file, including any error transform. */
+    public List<Transform> transforms() { return transforms; }
+
+    /** The error function of the error transform of the file, or null if there is none. */
+    public ErrorFunction errorFunction() {
+        for (Transform transform : transforms) {
+            if (transform instanceof ErrorTransform) {
+                return ((ErrorTransform) transform).errorFunction();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a model for inference with the transforms before any error transform, using the mapped parameters
+     * directly without copying them.
+     */
+    public InferenceModel inferenceModel() {
+        return new InferenceModel(inputSize, inferenceTransforms().toArray(new Transform[0]));
+    }
+
+    /**
+     * Returns a new net with copies of the transforms before any error transform, with the parameters on the
+     * heap, e.g. to continue training with a Trainer and {@link #errorFunction()}.
+     */
+    public NeuralNet toNeuralNet() {
+        var net = new NeuralNet(inputSize);
+        for (Transform transform : inferenceTransforms()) {
+            net.addTransform(transform.copy());
+        }
+        return net;
+    }
+
+    private List<Transform> inferenceTransforms() {
+        var inferenceTransforms = new ArrayList<Transform>();
+        for (Transform transform : transforms) {
+            if (!transform.isInferable()) {
+                break;
+            }
+            inferenceTransforms.add(transform);
+        }
+        return inferenceTransforms;
+    }
+
+    /** Unmaps the file. */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    @Override
+    public String toString() {
+        return "MappedModel{" +
+                "inputSize=" + inputSize +
+                ", transforms=" + transforms.size() +
+                '}';
+    }
+}
@@ -0,0 +1,332 @@
+package no.ion.neuron.inference;
+
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.tensor.OffHeapArena;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.ActivationTransform;
+import no.ion.neuron.transform.BiasTransform;
+import no.ion.neuron.transform.DenseTransform;
+import no.ion.neuron.transform.ErrorTransform;
+import no.ion.neuron.transform.IdentityTransform;
+import no.ion.neuron.transform.ScalingTransform;
+import no.ion.neuron.transform.Transform;
+import no.ion.neuron.transform.WeightTransform;
+import no.ion.neuron.transform.activation.ActivationFunction;
+import no.ion.neuron.transform.activation.Asinh;
+import no.ion.neuron.transform.activation.FastAsinh;
+import no.ion.neuron.transform.activation.FastSigmoid;
+import no.ion.neuron.transform.activation.FastTanh;
+import no.ion.neuron.transform.activation.ReLU;
+import no.ion.neuron.transform.activation.Sigmoid;
+import no.ion.neuron.transform.activation.Tanh;
+import no.ion.neuron.transform.loss.ErrorFunction;
+import no.ion.neuron.transform.loss.HalfErrorSquared;
+import no.ion.neuron.transform.loss.SoftmaxCrossEntropy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A binary file format for a neural net: the topology of the transforms, including the types of their activation
+ * and error functions, and the parameters of each transform as a block of raw floats. All numbers are
+ * little-endian.
+ *
+ * <pre>
+ *   header              64 bytes: "NEURONMF", int version, int inputSize, int transformCount, zero padding
+ *   transform records   64 bytes per transform: int type, int size0, int size1, int function,
+ *                       float functionParameter, int parameterSize, long parameterOffset, zero padding
+ *   parameter blocks    parameterSize floats per transform at parameterOffset, a multiple of 64
+ * </pre>
+ *
+ * <p>The size0 and size1 of a record are the rows and columns of a weight matrix, or the size of any other
+ * transform. The parameters of a transform have the layout of {@link Transform#parameters()}.</p>
+ *
+ * <p>{@link #map(Path)} reads only the header and records, and maps each parameter block into memory as the
+ * parameters of its transform, without copying or parsing them. Loading a model then costs little more than the
+ * page faults of its first use. As a mapping is limited to 2 GB, so are the parameters of one transform.</p>
+ */
+public final class ModelFile {
+    /** The alignment of the parameter blocks in the file, enough for any SIMD width. */
+    static final int ALIGNMENT = 64;
+
+    private static final byte[] MAGIC = "NEURONMF".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 64;
+
+    private static final int IDENTITY = 1;
+    private static final int WEIGHT = 2;
+    private static final int BIAS = 3;
+    private static final int SCALING = 4;
+    private static final int ACTIVATION = 5;
+    private static final int DENSE = 6;
+    private static final int ERROR = 7;
+
+    private static final int NO_FUNCTION = 0;
+    private static final int TANH = 1;
+    private static final int SIGMOID = 2;
+    private static final int RELU = 3;
+    private static final int ASINH = 4;
+    private static final int FAST_TANH = 5;
+    private static final int FAST_SIGMOID = 6;
+    private static final int FAST_ASINH = 7;
+    private static final int HALF_ERROR_SQUARED = 1;
+    private static final int SOFTMAX_CROSS_ENTROPY = 2;
+
+    private ModelFile() {}
+
+    /**
+     * Write the transforms of the net and their parameters to the file, replacing any existing file.
+     *
+     * @throws IllegalArgumentException if the net has a transform, or an activation or error function, that
+     *                                  the format does not support
+     */
+    public static void write(NeuralNet net, Path path) throws IOException {
+        List<Transform> transforms = net.transforms();
+        int recordsEnd = HEADER_SIZE + RECORD_SIZE * transforms.size();
+        ByteBuffer header = ByteBuffer.allocate(recordsEnd).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(VERSION).putInt(net.inputSize()).putInt(transforms.size());
+
+        long[] parameterOffsets = new long[transforms.size()];
+        long offset = align(recordsEnd);
+        for (int i = 0; i < transforms.size(); ++i) {
+            Transform transform = transforms.get(i);
+            header.position(HEADER_SIZE + RECORD_SIZE * i);
+            putRecord(header, transform);
+            header.putInt(transform.parameterSize()).putLong(offset);
+            parameterOffsets[i] = offset;
+            offset = align(offset + (long) transform.parameterSize() * Float.BYTES);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            header.clear();
+            writeFully(channel, header, 0);
+
+            // The parameters of the transforms are laid out in order in the parameters of the net
+            Vector parameters = net.parameters();
+            int parameterIndex = 0;
+            ByteBuffer block = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < transforms.size(); ++i) {
+                int size = transforms.get(i).parameterSize();
+                writeFloats(channel, parameters.view(parameterIndex, size), parameterOffsets[i], block);
+                parameterIndex += size;
+            }
+        }
+    }
+
+    /**
+     * Map the model file into memory. The parameters are read-only views of the file, valid until the
+     * returned model is closed.
+     *
+     * @throws IOException if the file cannot be read, or is not a valid model file
+     */
+    public static MappedModel map(Path path) throws IOException {
+        var arena = new OffHeapArena();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0, path);
+
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(path + " is not a model file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(path + " has unsupported version " + version);
+            }
+            int inputSize = header.getInt();
+            int transformCount = header.getInt();
+            if (inputSize < 0 || transformCount < 0 || HEADER_SIZE + (long) RECORD_SIZE * transformCount > fileSize) {
+                throw new IOException(path + " has a corrupt header");
+            }
+
+            ByteBuffer records = ByteBuffer.allocate(RECORD_SIZE * transformCount).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, records, HEADER_SIZE, path);
+
+            var transforms = new ArrayList<Transform>(transformCount);
+            int expectedInputSize = inputSize;
+            for (int i = 0; i < transformCount; ++i) {
+                records.position(RECORD_SIZE * i);
+                Transform transform = readTransform(channel, fileSize, records, arena, path, i);
+                if (transform.inputSize() != expectedInputSize) {
+                    throw new IOException(path + " has transform " + i + " with input size " + transform.inputSize() +
+                            " but the previous output has size " + expectedInputSize);
+                }
+                transforms.add(transform);
+                expectedInputSize = transform.outputSize();
+            }
+
+            return new MappedModel(inputSize, transforms, arena);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    private static void putRecord(ByteBuffer record, Transform transform) {
+        Class<?> type = transform.getClass();
+        if (type == IdentityTransform.class) {
+            putRecord(record, IDENTITY, transform.inputSize(), 0, NO_FUNCTION, 0);
+        } else if (type == WeightTransform.class) {
+            putRecord(record, WEIGHT, transform.outputSize(), transform.inputSize(), NO_FUNCTION, 0);
+        } else if (type == BiasTransform.class) {
+            putRecord(record, BIAS, transform.inputSize(), 0, NO_FUNCTION, 0);
+        } else if (type == ScalingTransform.class) {
+            putRecord(record, SCALING, transform.inputSize(), 0, NO_FUNCTION, 0);
+        } else if (type == ActivationTransform.class) {
+            ActivationFunction function = ((ActivationTransform) transform).activationFunction();
+            putRecord(record, ACTIVATION, transform.inputSize(), 0, activationFunctionType(function), functionParameter(function));
+        } else if (type == DenseTransform.class) {
+            ActivationFunction function = ((DenseTransform) transform).activationFunction();
+            putRecord(record, DENSE, transform.outputSize(), transform.inputSize(), activationFunctionType(function),
+                    functionParameter(function));
+        } else if (type == ErrorTransform.class) {
+            ErrorFunction function = ((ErrorTransform) transform).errorFunction();
+            putRecord(record, ERROR, transform.inputSize(), 0, errorFunctionType(function), 0);
+        } else {
+            throw new IllegalArgumentException("Model files do not support " + transform);
+        }
+    }
+
+    private static void putRecord(ByteBuffer record, int type, int size0, int size1, int function, float functionParameter) {
+        record.putInt(type).putInt(size0).putInt(size1).putInt(function).putFloat(functionParameter);
+    }
+
+    private static int activationFunctionType(ActivationFunction function) {
+        Class<?> type = function.getClass();
+        if (type == Tanh.class) return TANH;
+        if (type == Sigmoid.class) return SIGMOID;
+        if (type == ReLU.class) return RELU;
+        if (type == Asinh.class) return ASINH;
+        if (type == FastTanh.class) return FAST_TANH;
+        if (type == FastSigmoid.class) return FAST_SIGMOID;
+        if (type == FastAsinh.class) return FAST_ASINH;
+        throw new IllegalArgumentException("Model files do not support the activation function " + function);
+    }
+
+    private static float functionParameter(ActivationFunction function) {
+        return function instanceof ReLU ? ((ReLU) function).epsilon() : 0;
+    }
+
+    private static int errorFunctionType(ErrorFunction function) {
+        Class<?> type = function.getClass();
+        if (type == HalfErrorSquared.class) return HALF_ERROR_SQUARED;
+        if (type == SoftmaxCrossEntropy.class) return SOFTMAX_CROSS_ENTROPY;
+        throw new IllegalArgumentException("Model files do not support the error function " + function);
+    }
+
+    private static Transform readTransform(FileChannel channel, long fileSize, ByteBuffer record, OffHeapArena arena,
+                                           Path path, int index) throws IOException {
+        int type = record.getInt();
+        int size0 = record.getInt();
+        int size1 = record.getInt();
+        int function = record.getInt();
+        float functionParameter = record.getFloat();
+        int parameterSize = record.getInt();
+        long parameterOffset = record.getLong();
+
+        long expectedParameterSize;
+        switch (type) {
+            case WEIGHT: expectedParameterSize = (long) size0 * size1; break;
+            case DENSE: expectedParameterSize = (long) size0 * size1 + size0; break;
+            case BIAS: case SCALING: expectedParameterSize = size0; break;
+            default: expectedParameterSize = 0;
+        }
+        if (size0 < 0 || size1 < 0 || (parameterSize == 0 && (type == WEIGHT || type == DENSE)) ||
+                parameterSize != expectedParameterSize || parameterOffset % ALIGNMENT != 0 ||
+                parameterOffset < 0 || (parameterSize > 0 && parameterOffset + (long) parameterSize * Float.BYTES > fileSize)) {
+            throw new IOException(path + " has a corrupt record for transform " + index);
+        }
+
+        Vector parameters = parameterSize == 0 ? null : arena.map(channel, parameterOffset, parameterSize, false);
+        switch (type) {
+            case IDENTITY:
+                return new IdentityTransform(size0);
+            case WEIGHT:
+                return new WeightTransform(parameters.toMatrix(size0));
+            case BIAS:
+                return new BiasTransform(parameters);
+            case SCALING:
+                return new ScalingTransform(parameters);
+            case ACTIVATION:
+                return new ActivationTransform(size0, activationFunction(function, functionParameter, path));
+            case DENSE:
+                return new DenseTransform(parameters, size0, activationFunction(function, functionParameter, path));
+            case ERROR:
+                return new ErrorTransform(size0, errorFunction(function, path));
+            default:
+                throw new IOException(path + " has transform " + index + " of unknown type " + type);
+        }
+    }
+
+    private static ActivationFunction activationFunction(int type, float parameter, Path path) throws IOException {
+        switch (type) {
+            case TANH: return new Tanh();
+            case SIGMOID: return new Sigmoid();
+            case RELU: return new ReLU(parameter);
+            case ASINH: return new Asinh();
+            case FAST_TANH: return new FastTanh();
+            case FAST_SIGMOID: return new FastSigmoid();
+            case FAST_ASINH: return new FastAsinh();
+            default: throw new IOException(path + " has unknown activation function " + type);
+        }
+    }
+
+    private static ErrorFunction errorFunction(int type, Path path) throws IOException {
+        switch (type) {
+            case HALF_ERROR_SQUARED: return new HalfErrorSquared();
+            case SOFTMAX_CROSS_ENTROPY: return new SoftmaxCrossEntropy();
+            default: throw new IOException(path + " has unknown error function " + type);
+        }
+    }
+
+    private static void writeFloats(FileChannel channel, Vector floats, long position, ByteBuffer block) throws IOException {
+        block.clear();
+        for (int i = 0; i < floats.size(); ++i) {
+            if (!block.hasRemaining()) {
+                block.flip();
+                position += writeFully(channel, block, position);
+                block.clear();
+            }
+            block.putFloat(floats.get(i));
+        }
+        block.flip();
+        writeFully(channel, block, position);
+    }
+
+    /** @return the number of bytes written */
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, Path path) throws IOException {
+        long read = 0;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + read);
+            if (n < 0) {
+                throw new IOException(path + " is truncated");
+            }
+            read += n;
+        }
+        buffer.flip();
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
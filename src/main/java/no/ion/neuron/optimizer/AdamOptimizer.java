@@ -0,0 +1,121 @@
+package no.ion.neuron.optimizer;
+
+import no.ion.neuron.tensor.Vector;
+
+import java.util.Arrays;
+
+/**
+ * Adam: Moving averages of the average gradient g of the epoch, m = beta1 * m + (1 - beta1) * g, and of its
+ * square, v = beta2 * v + (1 - beta2) * g<sup>2</sup>, are corrected for their bias towards the initial zero,
+ * and each parameter is moved by -learningRate * m&#770; / (sqrt(v&#770;) + epsilon).
+ *
+ * <p>With a non-zero weight decay this is AdamW: each parameter p is in addition decayed by
+ * -learningRate * weightDecay * p, decoupled from the gradient.</p>
+ */
+public class AdamOptimizer implements Optimizer {
+    private final float learningRate;
+    private final float beta1;
+    private final float beta2;
+    private final float epsilon;
+    private final float weightDecay;
+
+    private int steps = 0;
+    private float[] firstMoment = null;
+    private float[] secondMoment = null;
+
+    public AdamOptimizer(float learningRate, float beta1, float beta2, float epsilon, float weightDecay) {
+        if (learningRate <= 0) {
+            throw new IllegalArgumentException("The learning rate must be positive: " + learningRate);
+        } else if (beta1 < 0 || beta1 >= 1 || beta2 < 0 || beta2 >= 1) {
+            throw new IllegalArgumentException("beta1 and beta2 must be in [0, 1): " + beta1 + " and " + beta2);
+        } else if (epsilon <= 0) {
+            throw new IllegalArgumentException("Epsilon must be positive: " + epsilon);
+        } else if (weightDecay < 0) {
+            throw new IllegalArgumentException("The weight decay cannot be negative: " + weightDecay);
+        }
+
+        this.learningRate = learningRate;
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+        this.weightDecay = weightDecay;
+    }
+
+    /** Adam with the usual defaults beta1 = 0.9, beta2 = 0.999, epsilon = 1e-8, and no weight decay. */
+    public AdamOptimizer(float learningRate) {
+        this(learningRate, 0.9f, 0.999f, 1e-8f, 0f);
+    }
+
+    /** AdamW with the usual defaults beta1 = 0.9, beta2 = 0.999, and epsilon = 1e-8. */
+    public static AdamOptimizer adamW(float learningRate, float weightDecay) {
+        return new AdamOptimizer(learningRate, 0.9f, 0.999f, 1e-8f, weightDecay);
+    }
+
+    @Override
+    public void updateParameters(EpochSummary epochSummary, Vector parameters) {
+        firstMoment = OptimizerState.ensureSize(firstMoment, epochSummary.parameterSize());
+        secondMoment = OptimizerState.ensureSize(secondMoment, epochSummary.parameterSize());
+        Vector gradientSum = epochSummary.gradientSum();
+        float gradientScale = 1f / epochSummary.batchSize();
+
+        ++steps;
+        // The bias corrections of both moments folded into the step size.
+        float stepSize = (float) (learningRate * Math.sqrt(1 - Math.pow(beta2, steps)) / (1 - Math.pow(beta1, steps)));
+        float decayFactor = 1 - learningRate * weightDecay;
+
+        for (int k = 0; k < firstMoment.length; ++k) {
+            float gradient = gradientSum.get(k) * gradientScale;
+            float m = beta1 * firstMoment[k] + (1 - beta1) * gradient;
+            float v = beta2 * secondMoment[k] + (1 - beta2) * gradient * gradient;
+            firstMoment[k] = m;
+            secondMoment[k] = v;
+
+            float parameter = parameters.get(k) * decayFactor;
+            parameters.setElement(k, parameter - stepSize * m / ((float) Math.sqrt(v) + epsilon));
+        }
+    }
+
+    /** The number of steps (as the bits of a float), followed by the first and then the second moments. */
+    @Override
+    public float[] state() {
+        if (firstMoment == null) {
+            return new float[0];
+        }
+
+        int parameterSize = firstMoment.length;
+        float[] state = new float[1 + 2 * parameterSize];
+        state[0] = Float.intBitsToFloat(steps);
+        System.arraycopy(firstMoment, 0, state, 1, parameterSize);
+        System.arraycopy(secondMoment, 0, state, 1 + parameterSize, parameterSize);
+        return state;
+    }
+
+    @Override
+    public void restoreState(float[] state) {
+        if (state.length == 0) {
+            steps = 0;
+            firstMoment = null;
+            secondMoment = null;
+            return;
+        } else if (state.length % 2 != 1) {
+            throw new IllegalArgumentException("Not the state of an AdamOptimizer: " + state.length + " values");
+        }
+
+        int parameterSize = state.length / 2;
+        steps = Float.floatToRawIntBits(state[0]);
+        firstMoment = Arrays.copyOfRange(state, 1, 1 + parameterSize);
+        secondMoment = Arrays.copyOfRange(state, 1 + parameterSize, state.length);
+    }
+
+    @Override
+    public String toString() {
+        return "AdamOptimizer{" +
+                "learningRate=" + learningRate +
+                ", beta1=" + beta1 +
+                ", beta2=" + beta2 +
+                ", epsilon=" + epsilon +
+                ", weightDecay=" + weightDecay +
+                ", steps=" + steps +
+                '}';
+    }
+}
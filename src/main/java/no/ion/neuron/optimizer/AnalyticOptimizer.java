@@ -20,9 +20,17 @@ public class AnalyticOptimizer implements Optimizer {
         this.wrappedOptimizer = Objects.requireNonNull(wrappedOptimizer);
     }
 
+    /** Updates the parameters with the wrapped optimizer, recording the adjustments as the change of the parameters. */
     @Override
-    public Vector calculateParameterAdjustments(EpochSummary epochSummary) {
-        Vector adjustments = wrappedOptimizer.calculateParameterAdjustments(epochSummary);
+    public void updateParameters(EpochSummary epochSummary, Vector parameters) {
+        Vector previousParameters = parameters.copy();
+        wrappedOptimizer.updateParameters(epochSummary, parameters);
+        Vector adjustments = parameters.copy();
+        adjustments.subtract(previousParameters);
+        record(epochSummary, adjustments);
+    }
+
+    private void record(EpochSummary epochSummary, Vector adjustments) {
         var previousEpoch = epochs.size() == 0 ? null : epochs.get(epochs.size() - 1);
         Epoch epoch = new Epoch(epochs.size(), epochSummary.deepCopy(), adjustments.copy(), previousEpoch);
 
@@ -31,8 +39,17 @@ public class AnalyticOptimizer implements Optimizer {
         }
 
         epochs.add(epoch);
+    }
 
-        return adjustments;
+    /** The state of the wrapped optimizer: The analytics are not part of the state. */
+    @Override
+    public float[] state() {
+        return wrappedOptimizer.state();
+    }
+
+    @Override
+    public void restoreState(float[] state) {
+        wrappedOptimizer.restoreState(state);
     }
 
     public void setPrintEachEpoch(boolean value) { this.printEachEpoch = value; }
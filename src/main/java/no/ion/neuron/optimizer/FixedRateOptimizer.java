@@ -14,9 +14,10 @@ public class FixedRateOptimizer implements Optimizer {
     }
 
     @Override
-    public Vector calculateParameterAdjustments(EpochSummary epochSummary) {
-        Vector adjustments = epochSummary.gradientSum().copy();
-        adjustments.multiplyScalar(-learningRate);
-        return adjustments;
+    public void updateParameters(EpochSummary epochSummary, Vector parameters) {
+        Vector gradientSum = epochSummary.gradientSum();
+        for (int k = 0; k < gradientSum.size(); ++k) {
+            parameters.addToElement(k, gradientSum.get(k) * -learningRate);
+        }
     }
 }
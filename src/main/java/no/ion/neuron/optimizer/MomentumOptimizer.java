@@ -0,0 +1,72 @@
+package no.ion.neuron.optimizer;
+
+import no.ion.neuron.tensor.Vector;
+
+/**
+ * Gradient descent with momentum: The velocity v = momentum * v - learningRate * g is accumulated over the epochs,
+ * and the parameters are moved by v, where g is the average gradient of the epoch.
+ *
+ * <p>With Nesterov momentum, the gradient is in effect evaluated at the look-ahead position p + momentum * v,
+ * which with the usual change of variables amounts to moving the parameters by
+ * -momentum * v<sub>previous</sub> + (1 + momentum) * v.</p>
+ */
+public class MomentumOptimizer implements Optimizer {
+    private final float learningRate;
+    private final float momentum;
+    private final boolean nesterov;
+
+    private float[] velocity = null;
+
+    public MomentumOptimizer(float learningRate, float momentum, boolean nesterov) {
+        if (learningRate <= 0) {
+            throw new IllegalArgumentException("The learning rate must be positive: " + learningRate);
+        } else if (momentum < 0 || momentum >= 1) {
+            throw new IllegalArgumentException("The momentum must be in [0, 1): " + momentum);
+        }
+
+        this.learningRate = learningRate;
+        this.momentum = momentum;
+        this.nesterov = nesterov;
+    }
+
+    public MomentumOptimizer(float learningRate, float momentum) {
+        this(learningRate, momentum, false);
+    }
+
+    @Override
+    public void updateParameters(EpochSummary epochSummary, Vector parameters) {
+        velocity = OptimizerState.ensureSize(velocity, epochSummary.parameterSize());
+        Vector gradientSum = epochSummary.gradientSum();
+        float gradientScale = 1f / epochSummary.batchSize();
+
+        for (int k = 0; k < velocity.length; ++k) {
+            float gradient = gradientSum.get(k) * gradientScale;
+            float previousVelocity = velocity[k];
+            float nextVelocity = momentum * previousVelocity - learningRate * gradient;
+            velocity[k] = nextVelocity;
+
+            float delta = nesterov ? (1 + momentum) * nextVelocity - momentum * previousVelocity : nextVelocity;
+            parameters.addToElement(k, delta);
+        }
+    }
+
+    /** The velocity of each parameter. */
+    @Override
+    public float[] state() {
+        return OptimizerState.copyOf(velocity);
+    }
+
+    @Override
+    public void restoreState(float[] state) {
+        velocity = OptimizerState.restore(state);
+    }
+
+    @Override
+    public String toString() {
+        return "MomentumOptimizer{" +
+                "learningRate=" + learningRate +
+                ", momentum=" + momentum +
+                ", nesterov=" + nesterov +
+                '}';
+    }
+}
@@ -4,6 +4,37 @@ import no.ion.neuron.tensor.Vector;
 
 public interface Optimizer {
 
-    /** Calculate the adjustment to each parameter given information on a training set. */
-    Vector calculateParameterAdjustments(EpochSummary epochSummary);
+    /**
+     * Update the parameters in place given information on a training set.
+     *
+     * @param parameters the parameters of the neural net, matching 1-1 with {@link EpochSummary#gradientSum()}.
+     */
+    void updateParameters(EpochSummary epochSummary, Vector parameters);
+
+    /**
+     * Calculate the adjustment to each parameter given information on a training set, i.e. the change
+     * {@link #updateParameters(EpochSummary, Vector)} would make to the parameters, which are left unchanged.
+     * The state of the optimizer advances as if the parameters were updated.
+     */
+    default Vector calculateParameterAdjustments(EpochSummary epochSummary, Vector parameters) {
+        Vector adjustments = parameters.copy();
+        updateParameters(epochSummary, adjustments);
+        adjustments.subtract(parameters);
+        return adjustments;
+    }
+
+    /**
+     * Returns a copy of the state the optimizer has accumulated over the epochs, e.g. moving averages of the
+     * gradient, to checkpoint the training. The default implementation is for optimizers without such state.
+     */
+    default float[] state() {
+        return new float[0];
+    }
+
+    /** Restore the state returned by {@link #state()} of an optimizer with the same configuration. */
+    default void restoreState(float[] state) {
+        if (state.length != 0) {
+            throw new IllegalArgumentException(getClass().getSimpleName() + " has no state, but got " + state.length + " values");
+        }
+    }
 }
@@ -0,0 +1,28 @@
+package no.ion.neuron.optimizer;
+
+/** Helpers for the per-parameter state arrays of optimizers. */
+class OptimizerState {
+    private OptimizerState() {}
+
+    /** Returns {@code state}, or a new zero-filled array if it is null. */
+    static float[] ensureSize(float[] state, int parameterSize) {
+        if (state == null) {
+            return new float[parameterSize];
+        } else if (state.length != parameterSize) {
+            throw new IllegalArgumentException("The optimizer has state for " + state.length +
+                    " parameters, but got " + parameterSize + " parameters");
+        }
+
+        return state;
+    }
+
+    /** Returns a copy of {@code state}, or an empty array if it is null, i.e. before the first epoch. */
+    static float[] copyOf(float[] state) {
+        return state == null ? new float[0] : state.clone();
+    }
+
+    /** The inverse of {@link #copyOf(float[])}. */
+    static float[] restore(float[] state) {
+        return state.length == 0 ? null : state.clone();
+    }
+}
@@ -0,0 +1,67 @@
+package no.ion.neuron.optimizer;
+
+import no.ion.neuron.tensor.Vector;
+
+/**
+ * RMSProp: Each parameter is moved by -learningRate * g / (sqrt(s) + epsilon), where g is the average gradient
+ * of the epoch, and s = decay * s + (1 - decay) * g<sup>2</sup> is a moving average of its square.
+ */
+public class RMSPropOptimizer implements Optimizer {
+    private final float learningRate;
+    private final float decay;
+    private final float epsilon;
+
+    private float[] meanSquare = null;
+
+    public RMSPropOptimizer(float learningRate, float decay, float epsilon) {
+        if (learningRate <= 0) {
+            throw new IllegalArgumentException("The learning rate must be positive: " + learningRate);
+        } else if (decay < 0 || decay >= 1) {
+            throw new IllegalArgumentException("The decay must be in [0, 1): " + decay);
+        } else if (epsilon <= 0) {
+            throw new IllegalArgumentException("Epsilon must be positive: " + epsilon);
+        }
+
+        this.learningRate = learningRate;
+        this.decay = decay;
+        this.epsilon = epsilon;
+    }
+
+    public RMSPropOptimizer(float learningRate) {
+        this(learningRate, 0.9f, 1e-8f);
+    }
+
+    @Override
+    public void updateParameters(EpochSummary epochSummary, Vector parameters) {
+        meanSquare = OptimizerState.ensureSize(meanSquare, epochSummary.parameterSize());
+        Vector gradientSum = epochSummary.gradientSum();
+        float gradientScale = 1f / epochSummary.batchSize();
+
+        for (int k = 0; k < meanSquare.length; ++k) {
+            float gradient = gradientSum.get(k) * gradientScale;
+            float s = decay * meanSquare[k] + (1 - decay) * gradient * gradient;
+            meanSquare[k] = s;
+            parameters.addToElement(k, -learningRate * gradient / ((float) Math.sqrt(s) + epsilon));
+        }
+    }
+
+    /** The moving average of the square of the gradient of each parameter. */
+    @Override
+    public float[] state() {
+        return OptimizerState.copyOf(meanSquare);
+    }
+
+    @Override
+    public void restoreState(float[] state) {
+        meanSquare = OptimizerState.restore(state);
+    }
+
+    @Override
+    public String toString() {
+        return "RMSPropOptimizer{" +
+                "learningRate=" + learningRate +
+                ", decay=" + decay +
+                ", epsilon=" + epsilon +
+                '}';
+    }
+}
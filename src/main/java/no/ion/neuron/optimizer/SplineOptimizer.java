@@ -20,7 +20,11 @@ public class SplineOptimizer implements Optimizer {
     }
 
     @Override
-    public Vector calculateParameterAdjustments(EpochSummary epochSummary) {
+    public void updateParameters(EpochSummary epochSummary, Vector parameters) {
+        parameters.add(adjustments(epochSummary));
+    }
+
+    private Vector adjustments(EpochSummary epochSummary) {
         Vector adjustments;
 
         if (previousAdjustments != null && epochSummary.errorSum() > previousError) {
@@ -80,4 +84,43 @@ public class SplineOptimizer implements Optimizer {
 
         return adjustments;
     }
+
+    /**
+     * The learning rate and the previous error, followed by the previous adjustments and the previous gradient,
+     * if any.
+     */
+    @Override
+    public float[] state() {
+        int parameterSize = previousAdjustments == null ? 0 : previousAdjustments.size();
+        float[] state = new float[2 + 2 * parameterSize];
+        state[0] = learningRate;
+        state[1] = previousError;
+        for (int k = 0; k < parameterSize; ++k) {
+            state[2 + k] = previousAdjustments.get(k);
+            state[2 + parameterSize + k] = previousGradient.get(k);
+        }
+        return state;
+    }
+
+    @Override
+    public void restoreState(float[] state) {
+        if (state.length < 2 || state.length % 2 != 0) {
+            throw new IllegalArgumentException("Not the state of a SplineOptimizer: " + state.length + " values");
+        }
+
+        int parameterSize = (state.length - 2) / 2;
+        learningRate = state[0];
+        previousError = state[1];
+        if (parameterSize == 0) {
+            previousAdjustments = null;
+            previousGradient = null;
+        } else {
+            previousAdjustments = new Vector(parameterSize);
+            previousGradient = new Vector(parameterSize);
+            for (int k = 0; k < parameterSize; ++k) {
+                previousAdjustments.setElement(k, state[2 + k]);
+                previousGradient.setElement(k, state[2 + parameterSize + k]);
+            }
+        }
+    }
 }
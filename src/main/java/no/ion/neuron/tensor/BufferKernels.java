@@ -0,0 +1,74 @@
+package no.ion.neuron.tensor;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The operations of {@link Kernels} on float buffers with absolute indexing, for tensors stored off-heap
+ * (see {@link OffHeapArena}), or a mix of off-heap and heap tensors with the latter wrapped as buffers.
+ */
+class BufferKernels {
+    private BufferKernels() {}
+
+    static float dot(FloatBuffer a, int aOffset, FloatBuffer b, int bOffset, int length) {
+        float sum = 0.0f;
+        for (int i = 0; i < length; ++i) {
+            sum += a.get(aOffset + i) * b.get(bOffset + i);
+        }
+        return sum;
+    }
+
+    static float sumOfSquares(FloatBuffer a, int aOffset, int length) {
+        float sum = 0;
+        for (int i = 0; i < length; ++i) {
+            float value = a.get(aOffset + i);
+            sum += value * value;
+        }
+        return sum;
+    }
+
+    static void add(FloatBuffer a, int aOffset, FloatBuffer b, int bOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            a.put(aOffset + i, a.get(aOffset + i) + b.get(bOffset + i));
+        }
+    }
+
+    static void subtract(FloatBuffer a, int aOffset, FloatBuffer b, int bOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            a.put(aOffset + i, a.get(aOffset + i) - b.get(bOffset + i));
+        }
+    }
+
+    static void multiply(FloatBuffer a, int aOffset, FloatBuffer b, int bOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            a.put(aOffset + i, a.get(aOffset + i) * b.get(bOffset + i));
+        }
+    }
+
+    static void multiplyScalar(FloatBuffer a, int aOffset, int length, float factor) {
+        for (int i = 0; i < length; ++i) {
+            a.put(aOffset + i, a.get(aOffset + i) * factor);
+        }
+    }
+
+    static void axpy(float alpha, FloatBuffer x, int xOffset, FloatBuffer y, int yOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            y.put(yOffset + i, y.get(yOffset + i) + alpha * x.get(xOffset + i));
+        }
+    }
+
+    /** Copy length elements, which must not overlap unless the offsets are equal. */
+    static void copy(FloatBuffer source, int sourceOffset, FloatBuffer destination, int destinationOffset, int length) {
+        if (source == destination && sourceOffset == destinationOffset) {
+            return;
+        }
+        for (int i = 0; i < length; ++i) {
+            destination.put(destinationOffset + i, source.get(sourceOffset + i));
+        }
+    }
+
+    static void fill(FloatBuffer a, int aOffset, int length, float value) {
+        for (int i = 0; i < length; ++i) {
+            a.put(aOffset + i, value);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package no.ion.neuron.tensor;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A general matrix-matrix multiply C = op(A) op(B) or C += op(A) op(B) on row-major floats, where
+ * op(X) is either X or its transpose.
+ *
+ * <p>The multiply is cache blocked: op(B) is split into KC x NC blocks that are packed into NR-wide column
+ * panels, and op(A) into MC x KC blocks that are packed into MR-high row panels, so that the micro-kernel
+ * streams both operands contiguously regardless of the transposition and leading dimension of the originals.
+ * Panels at the edges are zero-padded so the micro-kernel always computes a full MR x NR register tile.</p>
+ *
+ * <p>The operands are arrays, or float buffers with absolute indexing, which may be stored off-heap. A buffer
+ * backed by an array, e.g. a wrapped heap array, is packed from and written to through the array, so only
+ * off-heap operands pay for the buffer accesses. A and B are only read while packing, so this costs little for
+ * them. The packed panels are reused by the multiplies of a thread.</p>
+ *
+ * <p>Within a KC block each element of C is accumulated in k order, starting from zero. Hence if k does not
+ * exceed KC the result is identical to the naive triple loop.</p>
+ */
+class Gemm {
+    static final int MR = 4;
+    static final int NR = 4;
+    static final int KC = 256;
+    static final int MC = 128;
+    static final int NC = 2048;
+
+    /** The packed panels of op(A) and op(B) of a thread, grown as needed. */
+    private static final class Panels {
+        private float[] a = new float[0];
+        private float[] b = new float[0];
+    }
+
+    private static final ThreadLocal<Panels> PANELS = ThreadLocal.withInitial(Panels::new);
+
+    private Gemm() {}
+
+    /**
+     * C = op(A) op(B), or C += op(A) op(B) if {@code accumulate}, with op(A) being m x k, op(B) k x n, and C m x n.
+     *
+     * @param lda the distance between rows in {@code a}, i.e. the number of columns of A (not op(A))
+     */
+    static void multiply(int m, int n, int k,
+                         float[] a, int aOffset, int lda, boolean transposeA,
+                         float[] b, int bOffset, int ldb, boolean transposeB,
+                         float[] c, int cOffset, int ldc, boolean accumulate) {
+        multiply(m, n, k,
+                a, null, aOffset, lda, transposeA,
+                b, null, bOffset, ldb, transposeB,
+                c, null, cOffset, ldc, accumulate);
+    }
+
+    /** See {@link #multiply(int, int, int, float[], int, int, boolean, float[], int, int, boolean, float[], int, int, boolean)}. */
+    static void multiply(int m, int n, int k,
+                         FloatBuffer a, int aOffset, int lda, boolean transposeA,
+                         FloatBuffer b, int bOffset, int ldb, boolean transposeB,
+                         FloatBuffer c, int cOffset, int ldc, boolean accumulate) {
+        multiply(m, n, k,
+                arrayOf(a), a, aOffset + arrayOffsetOf(a), lda, transposeA,
+                arrayOf(b), b, bOffset + arrayOffsetOf(b), ldb, transposeB,
+                arrayOf(c), c, cOffset + arrayOffsetOf(c), ldc, accumulate);
+    }
+
+    private static float[] arrayOf(FloatBuffer buffer) {
+        return buffer.hasArray() ? buffer.array() : null;
+    }
+
+    private static int arrayOffsetOf(FloatBuffer buffer) {
+        return buffer.hasArray() ? buffer.arrayOffset() : 0;
+    }
+
+    /** Each operand is accessed through the array if non-null, and otherwise through the buffer. */
+    private static void multiply(int m, int n, int k,
+                                 float[] a, FloatBuffer aBuffer, int aOffset, int lda, boolean transposeA,
+                                 float[] b, FloatBuffer bBuffer, int bOffset, int ldb, boolean transposeB,
+                                 float[] c, FloatBuffer cBuffer, int cOffset, int ldc, boolean accumulate) {
+        if (m == 0 || n == 0) {
+            return;
+        }
+
+        if (k == 0) {
+            if (!accumulate) {
+                for (int i = 0; i < m; ++i) {
+                    for (int j = 0; j < n; ++j) {
+                        if (c != null) {
+                            c[cOffset + i * ldc + j] = 0f;
+                        } else {
+                            cBuffer.put(cOffset + i * ldc + j, 0f);
+                        }
+                    }
+                }
+            }
+            return;
+        }
+
+        int kcMax = Math.min(KC, k);
+        Panels panels = PANELS.get();
+        int packedASize = roundUp(Math.min(MC, m), MR) * kcMax;
+        int packedBSize = roundUp(Math.min(NC, n), NR) * kcMax;
+        if (panels.a.length < packedASize) {
+            panels.a = new float[packedASize];
+        }
+        if (panels.b.length < packedBSize) {
+            panels.b = new float[packedBSize];
+        }
+        float[] packedA = panels.a;
+        float[] packedB = panels.b;
+
+        for (int jc = 0; jc < n; jc += NC) {
+            int nc = Math.min(NC, n - jc);
+
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                if (b != null) {
+                    packB(b, bOffset, ldb, transposeB, pc, jc, kc, nc, packedB);
+                } else {
+                    packB(bBuffer, bOffset, ldb, transposeB, pc, jc, kc, nc, packedB);
+                }
+                boolean overwrite = !accumulate && pc == 0;
+
+                for (int ic = 0; ic < m; ic += MC) {
+                    int mc = Math.min(MC, m - ic);
+                    if (a != null) {
+                        packA(a, aOffset, lda, transposeA, ic, pc, mc, kc, packedA);
+                    } else {
+                        packA(aBuffer, aOffset, lda, transposeA, ic, pc, mc, kc, packedA);
+                    }
+
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        int nr = Math.min(NR, nc - jr);
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            int mr = Math.min(MR, mc - ir);
+                            kernel(kc, packedA, ir * kc, packedB, jr * kc,
+                                    c, cBuffer, cOffset + (ic + ir) * ldc + jc + jr, ldc, mr, nr, overwrite);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Pack op(A)[ic:ic+mc, pc:pc+kc] into MR-high row panels, each laid out k-major: panel[p * MR + r]. */
+    private static void packA(float[] a, int aOffset, int lda, boolean transposeA,
+                              int ic, int pc, int mc, int kc, float[] packed) {
+        int index = 0;
+        for (int ir = 0; ir < mc; ir += MR) {
+            int mr = Math.min(MR, mc - ir);
+            for (int p = 0; p < kc; ++p) {
+                for (int r = 0; r < MR; ++r) {
+                    if (r < mr) {
+                        int row = ic + ir + r;
+                        int column = pc + p;
+                        packed[index++] = transposeA ? a[aOffset + column * lda + row] : a[aOffset + row * lda + column];
+                    } else {
+                        packed[index++] = 0f;
+                    }
+                }
+            }
+        }
+    }
+
+    /** See {@link #packA(float[], int, int, boolean, int, int, int, int, float[])}, for an off-heap A. */
+    private static void packA(FloatBuffer a, int aOffset, int lda, boolean transposeA,
+                              int ic, int pc, int mc, int kc, float[] packed) {
+        int index = 0;
+        for (int ir = 0; ir < mc; ir += MR) {
+            int mr = Math.min(MR, mc - ir);
+            for (int p = 0; p < kc; ++p) {
+                for (int r = 0; r < MR; ++r) {
+                    if (r < mr) {
+                        int row = ic + ir + r;
+                        int column = pc + p;
+                        packed[index++] = transposeA ? a.get(aOffset + column * lda + row) : a.get(aOffset + row * lda + column);
+                    } else {
+                        packed[index++] = 0f;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Pack op(B)[pc:pc+kc, jc:jc+nc] into NR-wide column panels, each laid out k-major: panel[p * NR + c]. */
+    private static void packB(float[] b, int bOffset, int ldb, boolean transposeB,
+                              int pc, int jc, int kc, int nc, float[] packed) {
+        int index = 0;
+        for (int jr = 0; jr < nc; jr += NR) {
+            int nr = Math.min(NR, nc - jr);
+            for (int p = 0; p < kc; ++p) {
+                int row = pc + p;
+                for (int col = 0; col < NR; ++col) {
+                    if (col < nr) {
+                        int column = jc + jr + col;
+                        packed[index++] = transposeB ? b[bOffset + column * ldb + row] : b[bOffset + row * ldb + column];
+                    } else {
+                        packed[index++] = 0f;
+                    }
+                }
+            }
+        }
+    }
+
+    /** See {@link #packB(float[], int, int, boolean, int, int, int, int, float[])}, for an off-heap B. */
+    private static void packB(FloatBuffer b, int bOffset, int ldb, boolean transposeB,
+                              int pc, int jc, int kc, int nc, float[] packed) {
+        int index = 0;
+        for (int jr = 0; jr < nc; jr += NR) {
+            int nr = Math.min(NR, nc - jr);
+            for (int p = 0; p < kc; ++p) {
+                int row = pc + p;
+                for (int col = 0; col < NR; ++col) {
+                    if (col < nr) {
+                        int column = jc + jr + col;
+                        packed[index++] = transposeB ? b.get(bOffset + column * ldb + row) : b.get(bOffset + row * ldb + column);
+                    } else {
+                        packed[index++] = 0f;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Computes the MR x NR tile of C in registers, and writes back the mr x nr part that is inside C. */
+    private static void kernel(int kc, float[] a, int aIndex, float[] b, int bIndex,
+                               float[] c, FloatBuffer cBuffer, int cIndex, int ldc, int mr, int nr, boolean overwrite) {
+        float c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        float c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        float c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        float c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+        for (int p = 0; p < kc; ++p) {
+            int ai = aIndex + p * MR;
+            int bi = bIndex + p * NR;
+            float a0 = a[ai], a1 = a[ai + 1], a2 = a[ai + 2], a3 = a[ai + 3];
+            float b0 = b[bi], b1 = b[bi + 1], b2 = b[bi + 2], b3 = b[bi + 3];
+
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+        }
+
+        if (c == null) {
+            // An off-heap C is written row by row, without the tile array below
+            store(cBuffer, cIndex, overwrite, nr, c00, c01, c02, c03);
+            if (mr > 1) {
+                store(cBuffer, cIndex + ldc, overwrite, nr, c10, c11, c12, c13);
+            }
+            if (mr > 2) {
+                store(cBuffer, cIndex + 2 * ldc, overwrite, nr, c20, c21, c22, c23);
+            }
+            if (mr > 3) {
+                store(cBuffer, cIndex + 3 * ldc, overwrite, nr, c30, c31, c32, c33);
+            }
+        } else if (mr == MR && nr == NR) {
+            store(c, cIndex, overwrite, c00, c01, c02, c03);
+            store(c, cIndex + ldc, overwrite, c10, c11, c12, c13);
+            store(c, cIndex + 2 * ldc, overwrite, c20, c21, c22, c23);
+            store(c, cIndex + 3 * ldc, overwrite, c30, c31, c32, c33);
+        } else {
+            float[] tile = {
+                    c00, c01, c02, c03,
+                    c10, c11, c12, c13,
+                    c20, c21, c22, c23,
+                    c30, c31, c32, c33 };
+            for (int r = 0; r < mr; ++r) {
+                for (int col = 0; col < nr; ++col) {
+                    int index = cIndex + r * ldc + col;
+                    c[index] = overwrite ? tile[r * NR + col] : c[index] + tile[r * NR + col];
+                }
+            }
+        }
+    }
+
+    /** Write the first {@code nr} of v0, ..., v3 to a row of C. */
+    private static void store(FloatBuffer c, int index, boolean overwrite, int nr, float v0, float v1, float v2, float v3) {
+        for (int col = 0; col < nr; ++col) {
+            float value = col == 0 ? v0 : col == 1 ? v1 : col == 2 ? v2 : v3;
+            c.put(index + col, overwrite ? value : c.get(index + col) + value);
+        }
+    }
+
+    private static void store(float[] c, int index, boolean overwrite, float v0, float v1, float v2, float v3) {
+        if (overwrite) {
+            c[index] = v0;
+            c[index + 1] = v1;
+            c[index + 2] = v2;
+            c[index + 3] = v3;
+        } else {
+            c[index] += v0;
+            c[index + 1] += v1;
+            c[index + 2] += v2;
+            c[index + 3] += v3;
+        }
+    }
+
+    private static int roundUp(int value, int multiple) {
+        return (value + multiple - 1) / multiple * multiple;
+    }
+}
@@ -0,0 +1,53 @@
+package no.ion.neuron.tensor;
+
+/**
+ * The element-wise and reduction loops of the tensor classes, on ranges of float arrays.
+ *
+ * <p>The implementation is selected once, at class initialization: If the optional Vector API backend was
+ * compiled in (the {@code simd} Maven profile), and the {@code jdk.incubator.vector} module is available at
+ * runtime (e.g. {@code --add-modules jdk.incubator.vector}), it is used. Otherwise, or if the system property
+ * {@code no.ion.neuron.kernels} is {@code scalar}, the plain loops of {@link ScalarKernels} are used.</p>
+ */
+interface Kernels {
+    Kernels INSTANCE = select();
+
+    /** Returns sum_i a[i] * b[i]. */
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /** Returns sum_i a[i]^2. */
+    float sumOfSquares(float[] a, int aOffset, int length);
+
+    /** a[i] += b[i] */
+    void add(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /** a[i] -= b[i] */
+    void subtract(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /** a[i] *= b[i] */
+    void multiply(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /** a[i] *= factor */
+    void multiplyScalar(float[] a, int aOffset, int length, float factor);
+
+    /** y[i] += alpha * x[i] */
+    void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length);
+
+    /** A short name of the implementation, e.g. for logging. */
+    String name();
+
+    private static Kernels select() {
+        if ("scalar".equals(System.getProperty("no.ion.neuron.kernels"))) {
+            return new ScalarKernels();
+        }
+
+        try {
+            Class<?> vectorApiKernelsClass = Class.forName("no.ion.neuron.tensor.VectorApiKernels");
+            Kernels kernels = (Kernels) vectorApiKernelsClass.getDeclaredConstructor().newInstance();
+            // Force linking against jdk.incubator.vector, which fails if the module has not been added.
+            kernels.dot(new float[1], 0, new float[1], 0, 1);
+            return kernels;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarKernels();
+        }
+    }
+}
@@ -1,12 +1,14 @@
 package no.ion.neuron.tensor;
 
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.function.Supplier;
 
 public class Matrix {
     /**
-     *  The value of the matrix element at row r and column c is {@code M(r, c) = values[r * columns + c]}.
+     *  The value of the matrix element at row r and column c is {@code M(r, c) = values[offset + r * columns + c]},
+     *  with offset 0 unless the matrix is a view of a vector, see {@link Vector#toMatrix(int)} and {@link #moveTo(Vector)}.
      *
      * <pre>
      *   / values[        0 * columns + 0]  values[       0 * columns + 1] ... values[       0 * columns + (columns-1)] \
@@ -15,8 +17,13 @@ public class Matrix {
      *  |     ...                              ...                         ...    ...                                    |
      *   \ values[(rows-1) * columns + 0]  values[(rows-1) * columns + 1]  ... values[(rows-1) * columns + (columns-1)] /
      * </pre>
+     *
+     * <p>If the matrix is stored off-heap, see {@link OffHeapArena}, {@code values} is null and the elements are
+     * instead in {@code segment}, at the same indices.</p>
      */
     private float values[];
+    private OffHeapSegment segment = null;
+    private int offset = 0;
     private final int rows;
     private final int columns;
 
@@ -58,50 +65,174 @@ public class Matrix {
         this.values = values;
     }
 
+    Matrix(int rows, int columns, float[] values, int offset) {
+        if (rows < 0 || columns < 0 || offset < 0 || offset + rows * columns > values.length) {
+            throw new IllegalArgumentException("A " + rows + "x" + columns + " matrix at offset " + offset +
+                    " does not fit in an array of length " + values.length);
+        }
+
+        this.rows = rows;
+        this.columns = columns;
+        this.values = values;
+        this.offset = offset;
+    }
+
+    Matrix(int rows, int columns, OffHeapSegment segment, int offset) {
+        if (rows < 0 || columns < 0 || offset < 0 || offset + rows * columns > segment.capacity()) {
+            throw new IllegalArgumentException("A " + rows + "x" + columns + " matrix at offset " + offset +
+                    " does not fit in an off-heap segment of " + segment.capacity() + " floats");
+        }
+
+        this.rows = rows;
+        this.columns = columns;
+        this.segment = segment;
+        this.offset = offset;
+    }
+
+    /** A copy of the matrix, on the heap. */
+    public Matrix(Matrix matrix) {
+        this(matrix.rows, matrix.columns);
+        toVector().assign(matrix.toVector());
+    }
+
+    /** Returns a copy of this matrix, on the heap. */
+    public Matrix copy() {
+        return new Matrix(this);
+    }
+
     public int rows() { return rows; }
     public int columns() { return columns; }
     public Vector dimensions() { return Vector.from(rows, columns); }
+    private int size() { return rows * columns; }
+
+    /** Returns a vector sharing the elements with this matrix. Inverse of Vector.toMatrix(). */
+    public Vector toVector() {
+        if (values != null) {
+            return new Vector(values, offset, size());
+        } else {
+            return new Vector(segment, offset, size());
+        }
+    }
+
+    /** Whether the matrix is backed by an array, i.e. stored on the heap. See {@link Vector#hasArray()}. */
+    public boolean hasArray() { return values != null; }
 
-    /** Transfer the values ownership to the returned vector. Inverse of Vector.toMatrix(). */
-    public Vector toVector() { return new Vector(values); }
+    /**
+     * Copy the elements of this matrix to {@code storage}, a vector of rows x columns elements, and make this
+     * matrix a view of {@code storage} from then on. See {@link Vector#moveTo(Vector)}.
+     */
+    public void moveTo(Vector storage) {
+        if (storage.size() != size()) {
+            throw new IllegalArgumentException("Cannot move a " + rows + "x" + columns + " matrix to a vector of size " +
+                    storage.size());
+        }
 
-    /** Retrieving a row vector is faster than retrieving a column vector. */
+        storage.assign(toVector());
+        values = storage.hasArray() ? storage.array() : null;
+        segment = storage.segment();
+        offset = storage.offset();
+    }
+
+    /** Retrieving a row vector is faster than retrieving a column vector. The row is copied to the heap. */
     public Vector row(int rowIndex) {
-        float[] rowArray = Arrays.copyOfRange(values, rowIndex * columns, (rowIndex + 1) * columns);
-        return new Vector(rowArray);
+        if (values != null) {
+            float[] rowArray = Arrays.copyOfRange(values, indexOf(rowIndex, 0), indexOf(rowIndex + 1, 0));
+            return new Vector(rowArray);
+        } else {
+            return rowView(rowIndex).copy();
+        }
+    }
+
+    /** Returns a vector sharing the elements of the given row with this matrix. */
+    public Vector rowView(int rowIndex) {
+        if (rowIndex < 0 || rowIndex >= rows) {
+            throw new IndexOutOfBoundsException("Row " + rowIndex + " is out of bounds for a matrix with " + rows + " rows");
+        }
+
+        if (values != null) {
+            return new Vector(values, indexOf(rowIndex, 0), columns);
+        } else {
+            return new Vector(segment, indexOf(rowIndex, 0), columns);
+        }
+    }
+
+    /** Returns a matrix sharing the elements of {@code count} consecutive rows from row {@code from} with this matrix. */
+    public Matrix rowsView(int from, int count) {
+        if (from < 0 || count < 0 || from + count > rows) {
+            throw new IndexOutOfBoundsException("Rows [" + from + ", " + (from + count) +
+                    ") are out of bounds for a matrix with " + rows + " rows");
+        }
+
+        if (values != null) {
+            return new Matrix(count, columns, values, indexOf(from, 0));
+        } else {
+            return new Matrix(count, columns, segment, indexOf(from, 0));
+        }
+    }
+
+    public void setRow(int rowIndex, Vector row) {
+        if (row.size() != columns) {
+            throw new IllegalArgumentException("Row of size " + row.size() + " does not match the number of columns " + columns);
+        }
+
+        for (int j = 0; j < columns; ++j) {
+            setElement(rowIndex, j, row.get(j));
+        }
     }
 
     public Vector column(int columnIndex) {
         Vector column = new Vector(rows);
         for (int i = 0; i < rows; ++i) {
-            column.setElement(i, indexOf(i, columnIndex));
+            column.setElement(i, getElement(i, columnIndex));
         }
         return column;
     }
 
     private int indexOf(int row, int column) {
-        return row * columns + column;
+        return offset + row * columns + column;
     }
 
     public float getElement(int outputIndex, int inputIndex) {
-        return values[indexOf(outputIndex, inputIndex)];
+        if (values != null) {
+            return values[indexOf(outputIndex, inputIndex)];
+        } else {
+            return segment.floats().get(indexOf(outputIndex, inputIndex));
+        }
     }
 
-    /** Set the elements of the matrix. Order of elements are (outputIndex, inputIndex) sequence (0,0), (0, 1), etc */
+    /**
+     * Set the elements of the matrix. Order of elements are (outputIndex, inputIndex) sequence (0,0), (0, 1), etc.
+     * The elements are copied, so the matrix stays a view of its storage, e.g. the parameters of a net.
+     */
     public void set(float... elements) {
-        if (elements.length != values.length) {
-            throw new IllegalArgumentException("Matrix has " + values.length + " elements, but elements array has " +
+        if (elements.length != size()) {
+            throw new IllegalArgumentException("Matrix has " + size() + " elements, but elements array has " +
                     elements.length + " elements");
         }
-        values = elements;
+
+        if (values != null) {
+            System.arraycopy(elements, 0, values, offset, size());
+        } else {
+            toVector().assign(new Vector(elements));
+        }
     }
 
     public void setElement(int outputIndex, int inputIndex, float value) {
-        values[indexOf(outputIndex, inputIndex)] = value;
+        if (values != null) {
+            values[indexOf(outputIndex, inputIndex)] = value;
+        } else {
+            segment.floats().put(indexOf(outputIndex, inputIndex), value);
+        }
     }
 
     public void addToElement(int outputIndex, int inputIndex, float value) {
-        values[indexOf(outputIndex, inputIndex)] += value;
+        if (values != null) {
+            values[indexOf(outputIndex, inputIndex)] += value;
+        } else {
+            FloatBuffer floats = segment.floats();
+            int index = indexOf(outputIndex, inputIndex);
+            floats.put(index, floats.get(index) + value);
+        }
     }
 
     public void add(Matrix rhs) {
@@ -113,31 +244,165 @@ public class Matrix {
             throw new IllegalArgumentException("Input sizes differ");
         }
 
-        for (int i = 0; i < values.length; ++i) {
-            values[i] += rhs.values[i];
+        if (values != null && rhs.values != null) {
+            Kernels.INSTANCE.add(values, offset, rhs.values, rhs.offset, size());
+        } else {
+            toVector().add(rhs.toVector());
         }
     }
 
     public Vector dot(Vector rhs) {
-        if (rhs.size() != columns) {
+        Vector result = new Vector(rows);
+        dot(rhs, result);
+        return result;
+    }
+
+    /** result = this · rhs, without allocating. */
+    public void dot(Vector rhs, Vector result) {
+        if (rhs.size() != columns || result.size() != rows) {
             throw new IllegalArgumentException("Matrix of dimension " + rows + "x" + columns +
-                    " cannot be multiplied with a vector of dimension " + rhs.size());
+                    " cannot be multiplied with a vector of dimension " + rhs.size() + " into a vector of dimension " +
+                    result.size());
         }
 
-        Vector result = new Vector(rows);
-        for (int outputIndex = 0; outputIndex < rows; ++outputIndex) {
-            float sum = 0.0f;
-            for (int inputIndex = 0; inputIndex < columns; ++inputIndex) {
-                sum += getElement(outputIndex, inputIndex) * rhs.get(inputIndex);
+        if (values != null && rhs.hasArray()) {
+            for (int outputIndex = 0; outputIndex < rows; ++outputIndex) {
+                float sum = Kernels.INSTANCE.dot(values, indexOf(outputIndex, 0), rhs.array(), rhs.arrayOffset(), columns);
+                result.setElement(outputIndex, sum);
+            }
+        } else {
+            FloatBuffer buffer = buffer();
+            FloatBuffer rhsBuffer = rhs.buffer();
+            for (int outputIndex = 0; outputIndex < rows; ++outputIndex) {
+                float sum = BufferKernels.dot(buffer, indexOf(outputIndex, 0), rhsBuffer, rhs.offset(), columns);
+                result.setElement(outputIndex, sum);
             }
-            result.setElement(outputIndex, sum);
         }
+    }
 
+    /**
+     * Returns this<sup>T</sup> · rhs. The matrix is traversed row by row, accumulating rhs[i] times row i
+     * into the result, so this is as cache-friendly as {@link #dot(Vector)}.
+     */
+    public Vector transposedDot(Vector rhs) {
+        Vector result = new Vector(columns);
+        transposedDot(rhs, result);
         return result;
     }
 
+    /** result = this<sup>T</sup> · rhs, without allocating. */
+    public void transposedDot(Vector rhs, Vector result) {
+        if (rhs.size() != rows || result.size() != columns) {
+            throw new IllegalArgumentException("The transpose of a matrix of dimension " + rows + "x" + columns +
+                    " cannot be multiplied with a vector of dimension " + rhs.size() + " into a vector of dimension " +
+                    result.size());
+        }
+
+        result.clear();
+        if (values != null && result.hasArray()) {
+            for (int i = 0; i < rows; ++i) {
+                Kernels.INSTANCE.axpy(rhs.get(i), values, indexOf(i, 0), result.array(), result.arrayOffset(), columns);
+            }
+        } else {
+            FloatBuffer buffer = buffer();
+            FloatBuffer resultBuffer = result.buffer();
+            for (int i = 0; i < rows; ++i) {
+                BufferKernels.axpy(rhs.get(i), buffer, indexOf(i, 0), resultBuffer, result.offset(), columns);
+            }
+        }
+    }
+
+    /** this += left · right<sup>T</sup>, i.e. the rank-1 update M(i, j) += left[i] * right[j], done row by row. */
+    public void addOuterProduct(Vector left, Vector right) {
+        if (left.size() != rows || right.size() != columns) {
+            throw new IllegalArgumentException("The outer product of vectors of dimension " + left.size() + " and " +
+                    right.size() + " cannot be added to a matrix of dimension " + rows + "x" + columns);
+        }
+
+        if (values != null && right.hasArray()) {
+            for (int i = 0; i < rows; ++i) {
+                Kernels.INSTANCE.axpy(left.get(i), right.array(), right.arrayOffset(), values, indexOf(i, 0), columns);
+            }
+        } else {
+            toVector().addOuterProduct(0, left, right);
+        }
+    }
+
+    /** Returns this · rhs. */
+    public Matrix multiply(Matrix rhs) {
+        return product(this, false, rhs, false);
+    }
+
+    /** Returns this · rhs<sup>T</sup>. */
+    public Matrix multiplyTransposed(Matrix rhs) {
+        return product(this, false, rhs, true);
+    }
+
+    /** Returns this<sup>T</sup> · rhs. */
+    public Matrix transposedMultiply(Matrix rhs) {
+        return product(this, true, rhs, false);
+    }
+
+    /** this += op(lhs) · op(rhs), where op(M) is M<sup>T</sup> if the corresponding transpose argument is true, otherwise M. */
+    public void addProduct(Matrix lhs, boolean transposeLhs, Matrix rhs, boolean transposeRhs) {
+        int m = transposeLhs ? lhs.columns : lhs.rows;
+        int k = transposeLhs ? lhs.rows : lhs.columns;
+        int rhsRows = transposeRhs ? rhs.columns : rhs.rows;
+        int n = transposeRhs ? rhs.rows : rhs.columns;
+        if (k != rhsRows || m != rows || n != columns) {
+            throw new IllegalArgumentException("Cannot add the product of a " + m + "x" + k + " and a " +
+                    rhsRows + "x" + n + " matrix to a matrix of dimension " + rows + "x" + columns);
+        }
+
+        Gemm.multiply(m, n, k,
+                lhs.buffer(), lhs.offset, lhs.columns, transposeLhs,
+                rhs.buffer(), rhs.offset, rhs.columns, transposeRhs,
+                buffer(), offset, columns, true);
+    }
+
+    private static Matrix product(Matrix lhs, boolean transposeLhs, Matrix rhs, boolean transposeRhs) {
+        int m = transposeLhs ? lhs.columns : lhs.rows;
+        int k = transposeLhs ? lhs.rows : lhs.columns;
+        int rhsRows = transposeRhs ? rhs.columns : rhs.rows;
+        int n = transposeRhs ? rhs.rows : rhs.columns;
+        if (k != rhsRows) {
+            throw new IllegalArgumentException("Matrix of dimension " + m + "x" + k +
+                    " cannot be multiplied with a matrix of dimension " + rhsRows + "x" + n);
+        }
+
+        Matrix result = new Matrix(m, n);
+        Gemm.multiply(m, n, k,
+                lhs.buffer(), lhs.offset, lhs.columns, transposeLhs,
+                rhs.buffer(), rhs.offset, rhs.columns, transposeRhs,
+                result.buffer(), result.offset, result.columns, false);
+        return result;
+    }
+
+    /**
+     * The elements as a buffer, at the same indices as in the array. Wraps the array of a heap matrix, which
+     * {@link Gemm} then accesses through the array.
+     */
+    private FloatBuffer buffer() {
+        return values != null ? FloatBuffer.wrap(values) : segment.floats();
+    }
+
+    /** Returns the sum of all rows. */
+    public Vector sumOfRows() {
+        Vector sum = new Vector(columns);
+        for (int i = 0; i < rows; ++i) {
+            for (int j = 0; j < columns; ++j) {
+                sum.addToElement(j, getElement(i, j));
+            }
+        }
+        return sum;
+    }
+
     public void clear() {
-        Arrays.fill(values, 0f);
+        if (values != null) {
+            Arrays.fill(values, offset, offset + size(), 0f);
+        } else {
+            toVector().clear();
+        }
     }
 
     @Override
@@ -171,14 +436,13 @@ public class Matrix {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Matrix matrix = (Matrix) o;
-        return rows == matrix.rows &&
-                Arrays.equals(values, matrix.values);
+        return rows == matrix.rows && toVector().equals(matrix.toVector());
     }
 
     @Override
     public int hashCode() {
         int result = Objects.hash(rows);
-        result = 31 * result + Arrays.hashCode(values);
+        result = 31 * result + toVector().hashCode();
         return result;
     }
 }
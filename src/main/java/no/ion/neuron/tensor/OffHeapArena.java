@@ -0,0 +1,139 @@
+package no.ion.neuron.tensor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Allocates vectors and matrices whose elements are stored outside of the Java heap, in direct native-order
+ * buffers, and invalidates them all when the arena is closed. Off-heap tensors support the same operations as those
+ * on the heap, except that they have no backing array, see {@link Vector#hasArray()}. They are meant for large
+ * parameter buffers, e.g. of an {@link no.ion.neuron.inference.InferenceModel}, which then neither add to the
+ * heap size nor to the work of the garbage collector.
+ *
+ * <p>Accessing a tensor of an arena after the arena is closed throws an IllegalStateException. The memory is not
+ * freed by closing the arena, but by the garbage collector once the buffers are unreachable: An access that is
+ * in progress on another thread when the arena is closed, e.g. an inference of a model served concurrently, still
+ * holds the buffer, and completes on valid memory instead of crashing the JVM.</p>
+ *
+ * <p>An arena can also map (part of) a file into memory as a vector, see {@link #map(FileChannel, long, int, boolean)}.
+ * The mapping is likewise unmapped by the garbage collector.</p>
+ *
+ * <p>A single allocation or mapping is limited to 2 GB, i.e. {@link #MAX_ALLOCATION_SIZE} floats, by the
+ * direct buffers.</p>
+ */
+public final class OffHeapArena implements AutoCloseable {
+    /** The maximum number of floats in one vector or matrix. */
+    public static final int MAX_ALLOCATION_SIZE = Integer.MAX_VALUE / Float.BYTES;
+
+    private final List<OffHeapSegment> segments = new ArrayList<>();
+    private long allocatedBytes = 0;
+    private boolean closed = false;
+
+    public OffHeapArena() {}
+
+    /** Returns a zero vector of the given size, off-heap. */
+    public Vector allocateVector(int size) {
+        return new Vector(allocate(size), 0, size);
+    }
+
+    /** Returns a zero rows x columns matrix, off-heap. */
+    public Matrix allocateMatrix(int rows, int columns) {
+        if (rows < 0 || columns < 0 || (long) rows * columns > MAX_ALLOCATION_SIZE) {
+            throw new IllegalArgumentException("Cannot allocate a " + rows + "x" + columns + " matrix off-heap");
+        }
+        return new Matrix(rows, columns, allocate(rows * columns), 0);
+    }
+
+    /**
+     * Returns a vector of {@code size} little-endian floats mapped from the file at {@code position}, which
+     * should be a multiple of 64 for the elements to be aligned for SIMD. The elements are paged in on first
+     * access. If {@code writable}, writes to the vector go to the file, otherwise they throw a
+     * {@link java.nio.ReadOnlyBufferException}.
+     */
+    public Vector map(FileChannel channel, long position, int size, boolean writable) throws IOException {
+        if (size < 0 || size > MAX_ALLOCATION_SIZE) {
+            throw new IllegalArgumentException("Cannot map " + size + " floats, the maximum is " + MAX_ALLOCATION_SIZE);
+        }
+
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        MappedByteBuffer bytes = channel.map(mode, position, (long) size * Float.BYTES);
+        bytes.order(ByteOrder.LITTLE_ENDIAN);
+        return new Vector(register(bytes), 0, size);
+    }
+
+    /**
+     * Write the changes to all writable mappings of this arena to their files, returning when they are written
+     * to the storage device. See {@link MappedByteBuffer#force()}.
+     */
+    public synchronized void force() {
+        if (closed) {
+            throw new IllegalStateException("The arena is closed");
+        }
+
+        for (OffHeapSegment segment : segments) {
+            segment.force();
+        }
+    }
+
+    /** Returns an off-heap copy of the vector. */
+    public Vector copyOf(Vector vector) {
+        Vector copy = allocateVector(vector.size());
+        copy.assign(vector);
+        return copy;
+    }
+
+    /** Returns an off-heap copy of the matrix. */
+    public Matrix copyOf(Matrix matrix) {
+        Matrix copy = allocateMatrix(matrix.rows(), matrix.columns());
+        copy.toVector().assign(matrix.toVector());
+        return copy;
+    }
+
+    /** The number of bytes allocated or mapped by this arena, until closed. */
+    public synchronized long allocatedBytes() { return allocatedBytes; }
+
+    public synchronized boolean isAlive() { return !closed; }
+
+    /**
+     * Invalidate all tensors of this arena, and release the references of the arena to their memory, which is
+     * freed by the garbage collector once no access is in progress.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        for (OffHeapSegment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        allocatedBytes = 0;
+    }
+
+    private OffHeapSegment allocate(int size) {
+        if (size < 0 || size > MAX_ALLOCATION_SIZE) {
+            throw new IllegalArgumentException("Cannot allocate " + size + " floats off-heap, the maximum is " +
+                    MAX_ALLOCATION_SIZE);
+        }
+
+        return register(ByteBuffer.allocateDirect(size * Float.BYTES).order(ByteOrder.nativeOrder()));
+    }
+
+    private synchronized OffHeapSegment register(ByteBuffer bytes) {
+        if (closed) {
+            throw new IllegalStateException("The arena is closed");
+        }
+
+        var segment = new OffHeapSegment(bytes);
+        segments.add(segment);
+        allocatedBytes += bytes.capacity();
+        return segment;
+    }
+}
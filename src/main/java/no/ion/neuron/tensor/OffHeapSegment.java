@@ -0,0 +1,43 @@
+package no.ion.neuron.tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * One allocation of an {@link OffHeapArena}, shared by all vectors and matrices viewing (part of) it, so that
+ * closing the arena invalidates them all at once.
+ */
+final class OffHeapSegment {
+    private ByteBuffer bytes;
+    private FloatBuffer floats;
+
+    OffHeapSegment(ByteBuffer bytes) {
+        this.bytes = bytes;
+        this.floats = bytes.asFloatBuffer();
+    }
+
+    /** The elements, indexed from 0. */
+    FloatBuffer floats() {
+        FloatBuffer floats = this.floats;
+        if (floats == null) {
+            throw new IllegalStateException("The off-heap tensor was invalidated by closing its arena");
+        }
+        return floats;
+    }
+
+    int capacity() { return floats().capacity(); }
+
+    /** Write any changes to a writable file mapping to the file. */
+    void force() {
+        if (bytes instanceof MappedByteBuffer && !bytes.isReadOnly()) {
+            ((MappedByteBuffer) bytes).force();
+        }
+    }
+
+    /** Invalidates the segment, so that later accesses throw. Accesses in progress keep the buffer. */
+    void close() {
+        this.bytes = null;
+        this.floats = null;
+    }
+}
@@ -0,0 +1,61 @@
+package no.ion.neuron.tensor;
+
+/** Plain loops, relying on the JIT for any auto-vectorization. */
+class ScalarKernels implements Kernels {
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0.0f;
+        for (int i = 0; i < length; ++i) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float sumOfSquares(float[] a, int aOffset, int length) {
+        float sum = 0;
+        for (int i = 0; i < length; ++i) {
+            float value = a[aOffset + i];
+            sum += value * value;
+        }
+        return sum;
+    }
+
+    @Override
+    public void add(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            a[aOffset + i] += b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void subtract(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            a[aOffset + i] -= b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void multiply(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            a[aOffset + i] *= b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void multiplyScalar(float[] a, int aOffset, int length, float factor) {
+        for (int i = 0; i < length; ++i) {
+            a[aOffset + i] *= factor;
+        }
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public String name() { return "scalar"; }
+}
@@ -1,10 +1,24 @@
 package no.ion.neuron.tensor;
 
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 import java.util.function.Supplier;
 
+/**
+ * A vector of floats, being the elements {@code values[offset]} to {@code values[offset + size - 1]} of a float array.
+ * Normally the vector owns the whole array, but a vector may also be a view of part of another vector's array,
+ * see {@link #view(int, int)} and {@link #moveTo(Vector)}.
+ *
+ * <p>A vector may instead be stored off-heap, as elements {@code offset} to {@code offset + size - 1} of an
+ * allocation of an {@link OffHeapArena}. Such a vector has no backing array, see {@link #hasArray()}.</p>
+ */
 public class Vector {
+    /** Null if the vector is stored off-heap. */
     private float values[];
+    /** Null if the vector is stored on the heap. */
+    private OffHeapSegment segment;
+    private int offset;
+    private final int size;
 
     public static Vector from(float... values) {
         return new Vector(values);
@@ -13,25 +27,28 @@ public class Vector {
         return new Vector(size, value);
     }
 
+    /** A copy of the vector, on the heap. */
     public Vector(Vector vector) {
-        this.values = vector.values.clone();
+        this(vector.size);
+        assign(vector);
     }
 
+    /** Returns a copy of this vector, on the heap. */
     public Vector copy() {
         return new Vector(this);
     }
 
     public Vector(int size) {
-        this.values = new float[size];
+        this(new float[size]);
     }
 
     public Vector(int size, float value) {
-        this.values = new float[size];
+        this(size);
         Arrays.fill(this.values, value);
     }
 
     public Vector(int size, Supplier<Float> elementSupplier) {
-        values = new float[size];
+        this(size);
 
         for (int i = 0; i < size; ++i) {
             values[i] = elementSupplier.get();
@@ -39,17 +56,39 @@ public class Vector {
     }
 
     Vector(float... values) {
+        this(values, 0, values.length);
+    }
+
+    Vector(float[] values, int offset, int size) {
+        if (offset < 0 || size < 0 || offset + size > values.length) {
+            throw new IllegalArgumentException("Range [" + offset + ", " + (offset + size) +
+                    ") is out of bounds for an array of length " + values.length);
+        }
+
         this.values = values;
+        this.offset = offset;
+        this.size = size;
     }
 
-    public int size() { return values.length; }
+    Vector(OffHeapSegment segment, int offset, int size) {
+        if (offset < 0 || size < 0 || offset + size > segment.capacity()) {
+            throw new IllegalArgumentException("Range [" + offset + ", " + (offset + size) +
+                    ") is out of bounds for an off-heap segment of " + segment.capacity() + " floats");
+        }
+
+        this.segment = segment;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    public int size() { return size; }
 
     public float squared() {
-        float sum = 0;
-        for (int i = 0; i < values.length; ++i) {
-            sum += values[i] * values[i];
+        if (values != null) {
+            return Kernels.INSTANCE.sumOfSquares(values, offset, size);
+        } else {
+            return BufferKernels.sumOfSquares(buffer(), offset, size);
         }
-        return sum;
     }
 
     /** Also known as magnitude. */
@@ -58,41 +97,123 @@ public class Vector {
     }
 
     public float get(int index) {
-        return values[index];
+        checkIndex(index);
+        if (values != null) {
+            return values[offset + index];
+        } else {
+            return segment.floats().get(offset + index);
+        }
     }
 
     public void setElement(int index, float value) {
-        values[index] = value;
+        checkIndex(index);
+        if (values != null) {
+            values[offset + index] = value;
+        } else {
+            segment.floats().put(offset + index, value);
+        }
     }
 
     public void addToElement(int index, float value) {
-        values[index] += value;
+        checkIndex(index);
+        if (values != null) {
+            values[offset + index] += value;
+        } else {
+            FloatBuffer floats = segment.floats();
+            floats.put(offset + index, floats.get(offset + index) + value);
+        }
+    }
+
+    /** The storage may extend past a view, so the index must be checked against the size of the view. */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for a vector of size " + size);
+        }
     }
 
+    /** Copy the elements into this vector, which stays a view of its storage, e.g. the parameters of a net. */
     public void set(float... elements) {
-        if (elements.length != values.length) {
-            throw new IllegalArgumentException("Vector has " + values.length + " elements, but elements argument has " +
+        if (elements.length != size) {
+            throw new IllegalArgumentException("Vector has " + size + " elements, but elements argument has " +
                     elements.length);
         }
 
-        values = elements;
+        if (values != null) {
+            System.arraycopy(elements, 0, values, offset, size);
+        } else {
+            assign(new Vector(elements));
+        }
+    }
+
+    /**
+     * Returns a vector of {@code size} elements starting at element {@code from} of this vector,
+     * sharing the elements with this vector.
+     */
+    public Vector view(int from, int size) {
+        if (from < 0 || size < 0 || from + size > this.size) {
+            throw new IllegalArgumentException("View [" + from + ", " + (from + size) +
+                    ") is out of bounds for a vector of size " + this.size);
+        }
+
+        if (values != null) {
+            return new Vector(values, offset + from, size);
+        } else {
+            return new Vector(segment, offset + from, size);
+        }
+    }
+
+    /**
+     * Copy the elements of this vector to {@code storage}, and make this vector a view of {@code storage}
+     * from then on. This allows moving the elements into a larger shared buffer while keeping the identity
+     * of this vector. The storage may be on the heap or off-heap, regardless of where this vector was.
+     */
+    public void moveTo(Vector storage) {
+        requireSameSize(storage, "move");
+        storage.assign(this);
+        values = storage.values;
+        segment = storage.segment;
+        offset = storage.offset;
+    }
+
+    /** Copy the elements of source into this vector, which must have the same size. */
+    public void assign(Vector source) {
+        requireSameSize(source, "assign");
+        if (values != null && source.values != null) {
+            System.arraycopy(source.values, source.offset, values, offset, size);
+        } else {
+            BufferKernels.copy(source.buffer(), source.offset, buffer(), offset, size);
+        }
     }
 
     public void add(Vector rhs) {
-        for (int index = 0; index < values.length; ++index) {
-            values[index] += rhs.get(index);
+        requireSameSize(rhs, "add");
+        add(0, rhs);
+    }
+
+    /** Add rhs to the elements {@code from} to {@code from + rhs.size() - 1} of this vector. */
+    public void add(int from, Vector rhs) {
+        requireRange(from, rhs.size());
+        if (values != null && rhs.values != null) {
+            Kernels.INSTANCE.add(values, offset + from, rhs.values, rhs.offset, rhs.size);
+        } else {
+            BufferKernels.add(buffer(), offset + from, rhs.buffer(), rhs.offset, rhs.size);
         }
     }
 
     public void subtract(Vector rhs) {
-        for (int index = 0; index < values.length; ++index) {
-            values[index] -= rhs.get(index);
+        requireSameSize(rhs, "subtract");
+        if (values != null && rhs.values != null) {
+            Kernels.INSTANCE.subtract(values, offset, rhs.values, rhs.offset, size);
+        } else {
+            BufferKernels.subtract(buffer(), offset, rhs.buffer(), rhs.offset, size);
         }
     }
 
     public void multiplyScalar(float factor) {
-        for (int index = 0; index < values.length; ++index) {
-            values[index] *= factor;
+        if (values != null) {
+            Kernels.INSTANCE.multiplyScalar(values, offset, size, factor);
+        } else {
+            BufferKernels.multiplyScalar(buffer(), offset, size, factor);
         }
     }
 
@@ -101,8 +222,10 @@ public class Vector {
             throw new IllegalArgumentException("A vector scale operation requires a vector of the same size");
         }
 
-        for (int index = 0; index < values.length; ++index) {
-            values[index] *= scales.values[index];
+        if (values != null && scales.values != null) {
+            Kernels.INSTANCE.multiply(values, offset, scales.values, scales.offset, size);
+        } else {
+            BufferKernels.multiply(buffer(), offset, scales.buffer(), scales.offset, size);
         }
     }
 
@@ -111,11 +234,43 @@ public class Vector {
             throw new IllegalArgumentException("A vector dot operation requires vectors of same sizes");
         }
 
-        float result = 0;
-        for (int i = 0; i < size(); ++i) {
-            result += values[i] * rhs.values[i];
+        if (values != null && rhs.values != null) {
+            return Kernels.INSTANCE.dot(values, offset, rhs.values, rhs.offset, size);
+        } else {
+            return BufferKernels.dot(buffer(), offset, rhs.buffer(), rhs.offset, size);
+        }
+    }
+
+    /**
+     * this += left · right<sup>T</sup>, with this vector viewed as the row-major left.size() x right.size()
+     * matrix of {@link #toMatrix(int) toMatrix(left.size())}.
+     */
+    public void addOuterProduct(Vector left, Vector right) {
+        if (left.size() * right.size() != size()) {
+            throw new IllegalArgumentException("The outer product of vectors of dimension " + left.size() + " and " +
+                    right.size() + " does not have " + size() + " elements");
+        }
+
+        addOuterProduct(0, left, right);
+    }
+
+    /**
+     * The equivalent of {@code view(from, left.size() * right.size()).addOuterProduct(left, right)},
+     * without creating the view.
+     */
+    public void addOuterProduct(int from, Vector left, Vector right) {
+        requireRange(from, left.size() * right.size());
+        if (values != null && right.values != null) {
+            for (int i = 0; i < left.size(); ++i) {
+                Kernels.INSTANCE.axpy(left.get(i), right.values, right.offset, values, offset + from + i * right.size(), right.size());
+            }
+        } else {
+            FloatBuffer buffer = buffer();
+            FloatBuffer rightBuffer = right.buffer();
+            for (int i = 0; i < left.size(); ++i) {
+                BufferKernels.axpy(left.get(i), rightBuffer, right.offset, buffer, offset + from + i * right.size(), right.size());
+            }
         }
-        return result;
     }
 
     /** Returns a unit vector (of length 1) pointing in the same direction as this, or a zero vector if length is 0. */
@@ -131,15 +286,88 @@ public class Vector {
     }
 
     public void clear() {
-        Arrays.fill(values, 0f);
+        if (values != null) {
+            Arrays.fill(values, offset, offset + size, 0f);
+        } else {
+            BufferKernels.fill(buffer(), offset, size, 0f);
+        }
     }
 
-    /** Transfer ownership of values to returned Matrix. Inverse of Matrix.toVector(). */
-    public Matrix toMatrix(int outputSize) { return new Matrix(outputSize, values); }
+    private void requireRange(int from, int size) {
+        if (from < 0 || size < 0 || from + size > this.size) {
+            throw new IllegalArgumentException("Range [" + from + ", " + (from + size) +
+                    ") is out of bounds for a vector of size " + this.size);
+        }
+    }
+
+    private void requireSameSize(Vector rhs, String operation) {
+        if (rhs.size() != size()) {
+            throw new IllegalArgumentException("A vector " + operation + " operation requires vectors of same sizes, but got " +
+                    size() + " and " + rhs.size());
+        }
+    }
+
+    /** Whether this vector is backed by an accessible array, see {@link #array()}. False if stored off-heap. */
+    public boolean hasArray() { return values != null; }
+
+    /**
+     * The backing array, for kernels that loop over the elements directly. Element i is at
+     * array()[arrayOffset() + i]. Only valid while the vector is not moved, see {@link #moveTo(Vector)}.
+     *
+     * @throws UnsupportedOperationException if the vector has no backing array, see {@link #hasArray()}
+     */
+    public float[] array() {
+        requireArray();
+        return values;
+    }
+
+    /**
+     * The index in {@link #array()} of element 0.
+     *
+     * @throws UnsupportedOperationException if the vector has no backing array, see {@link #hasArray()}
+     */
+    public int arrayOffset() {
+        requireArray();
+        return offset;
+    }
+
+    private void requireArray() {
+        if (values == null) {
+            throw new UnsupportedOperationException("An off-heap vector has no backing array");
+        }
+    }
+
+    /** The elements as a buffer, with element i at index offset() + i. Wraps the array of a heap vector. */
+    FloatBuffer buffer() {
+        return values != null ? FloatBuffer.wrap(values) : segment.floats();
+    }
+
+    /** The index of element 0 in the array or buffer. */
+    int offset() { return offset; }
+
+    /** The off-heap segment of the elements, or null if the vector is on the heap. */
+    OffHeapSegment segment() { return segment; }
+
+    /** Returns a matrix sharing the elements with this vector. Inverse of Matrix.toVector(). */
+    public Matrix toMatrix(int outputSize) {
+        if (outputSize <= 0 || size % outputSize != 0) {
+            throw new IllegalArgumentException("outputSize " + outputSize + " is not a factor of the size " + size);
+        }
+
+        if (values != null) {
+            return new Matrix(outputSize, size / outputSize, values, offset);
+        } else {
+            return new Matrix(outputSize, size / outputSize, segment, offset);
+        }
+    }
 
     @Override
     public String toString() {
-        return Arrays.toString(values);
+        if (values != null) {
+            return Arrays.toString(Arrays.copyOfRange(values, offset, offset + size));
+        } else {
+            return copy().toString();
+        }
     }
 
     @Override
@@ -147,11 +375,23 @@ public class Vector {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Vector vector = (Vector) o;
-        return Arrays.equals(values, vector.values);
+        if (values != null && vector.values != null) {
+            return Arrays.equals(values, offset, offset + size, vector.values, vector.offset, vector.offset + vector.size);
+        }
+
+        if (size != vector.size) return false;
+        for (int i = 0; i < size; ++i) {
+            if (Float.floatToIntBits(get(i)) != Float.floatToIntBits(vector.get(i))) return false;
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(values);
+        int result = 1;
+        for (int i = 0; i < size; ++i) {
+            result = 31 * result + Float.floatToIntBits(get(i));
+        }
+        return result;
     }
 }
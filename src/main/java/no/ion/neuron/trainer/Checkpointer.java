@@ -0,0 +1,394 @@
+package no.ion.neuron.trainer;
+
+import no.ion.neuron.optimizer.EpochSummary;
+import no.ion.neuron.tensor.Vector;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Periodically saves the parameters of the net, the state of the optimizer, and the number of epochs of a
+ * {@link Trainer} to a file, from which the training can be resumed with {@link #restore(Trainer, Path)}.
+ *
+ * <p>Add the checkpointer as an {@link Trainer#addEpochListener(Trainer.EpochListener) epoch listener}. At the end
+ * of every {@code interval}'th {@link Trainer#learn()}, the parameters and the optimizer state are copied to a
+ * snapshot, which is all the training thread does: A background thread encodes and writes the snapshot while
+ * the training continues. If the previous snapshot is still being written, the checkpoint is skipped rather than
+ * stalling the training, see {@link #skipped()}.</p>
+ *
+ * <p>The file is a log of checkpoints. A checkpoint is stored as the bitwise XOR of its floats with those of
+ * the previous checkpoint, which is mostly zero bits since the parameters change little between checkpoints,
+ * split into byte planes with the high byte of every float first, and deflated. Every {@code keyInterval}'th
+ * checkpoint is instead stored on its own, in a new file that atomically replaces the log, which bounds the size
+ * of the file. Each checkpoint has a CRC, so a checkpoint torn by a crash is ignored, and the training is
+ * restored from the last complete checkpoint.</p>
+ */
+public final class Checkpointer implements Trainer.EpochListener, AutoCloseable {
+    private static final byte[] MAGIC = "NEURONCP".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int FRAME_HEADER_SIZE = 24;
+    private static final int KEY_FLAG = 1;
+
+    private final Trainer trainer;
+    private final Path path;
+    private final int interval;
+    private final int keyInterval;
+    private final ExecutorService writer;
+
+    // Owned by the training thread
+    private Vector parameterSnapshot = null;
+    private Future<?> pendingWrite = null;
+    private int skipped = 0;
+    private long snapshotNanos = 0;
+    private boolean closed = false;
+
+    // Owned by the writer thread, or the thread that has waited for the pending write
+    private FileChannel channel = null;
+    private int[] previous = null;
+    private int[] current = null;
+    private int checkpointsInFile = 0;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] planes = new byte[0];
+    private byte[] compressed = new byte[0];
+    private volatile int written = 0;
+
+    /** Checkpoints every {@code interval} epochs, with every 16th checkpoint stored on its own. */
+    public Checkpointer(Trainer trainer, Path path, int interval) {
+        this(trainer, path, interval, 16);
+    }
+
+    /**
+     * @param interval    the number of epochs between each checkpoint
+     * @param keyInterval the number of checkpoints between each checkpoint stored on its own, i.e. not as a delta
+     */
+    public Checkpointer(Trainer trainer, Path path, int interval, int keyInterval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("The interval must be positive: " + interval);
+        } else if (keyInterval <= 0) {
+            throw new IllegalArgumentException("The key interval must be positive: " + keyInterval);
+        }
+
+        this.trainer = trainer;
+        this.path = path;
+        this.interval = interval;
+        this.keyInterval = keyInterval;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** The number of checkpoints written. */
+    public int written() { return written; }
+
+    /** The number of checkpoints skipped because the previous checkpoint was still being written. */
+    public int skipped() { return skipped; }
+
+    /** The total time the training thread has spent taking snapshots, in nanoseconds. */
+    public long snapshotNanos() { return snapshotNanos; }
+
+    /**
+     * Takes a snapshot on every interval'th epoch and hands it to the writer thread.
+     *
+     * @throws IllegalStateException if writing the previous checkpoint failed
+     */
+    @Override
+    public void epochCompleted(EpochSummary epochSummary) {
+        if (closed || epochSummary.epochs() % interval != 0) {
+            return;
+        }
+
+        if (pendingWrite != null) {
+            if (!pendingWrite.isDone()) {
+                ++skipped;
+                return;
+            }
+            flush();
+        }
+
+        long start = System.nanoTime();
+        Vector parameters = trainer.net().parameters();
+        if (parameterSnapshot == null || parameterSnapshot.size() != parameters.size()) {
+            parameterSnapshot = new Vector(parameters.size());
+        }
+        parameterSnapshot.assign(parameters);
+        float[] parameterValues = parameterSnapshot.array();
+        float[] state = trainer.optimizer().state();
+        int epochs = epochSummary.epochs();
+        pendingWrite = writer.submit(() -> {
+            write(epochs, parameterValues, state);
+            return null;
+        });
+        snapshotNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Waits for the pending checkpoint, if any, to be written.
+     *
+     * @throws IllegalStateException if writing the checkpoint failed
+     */
+    public void flush() {
+        if (pendingWrite == null) {
+            return;
+        }
+
+        try {
+            pendingWrite.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to write checkpoint to " + path, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing checkpoint to " + path, e);
+        } finally {
+            pendingWrite = null;
+        }
+    }
+
+    /** Writes the pending checkpoint, if any, and stops the writer thread. Later epochs are not checkpointed. */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        try {
+            flush();
+        } finally {
+            writer.shutdown();
+            deflater.end();
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Restores the parameters of the net, the state of the optimizer, and the number of epochs of the trainer
+     * from the last complete checkpoint in the file. The trainer must have a net with the same layers, and an
+     * optimizer with the same configuration, as the trainer that was checkpointed.
+     *
+     * @return the number of epochs of the checkpoint
+     * @throws IOException if there is no complete checkpoint in the file, or it does not fit the trainer
+     */
+    public static int restore(Trainer trainer, Path path) throws IOException {
+        Checkpoint checkpoint = read(path);
+        Vector parameters = trainer.net().parameters();
+        if (checkpoint.parameters.length != parameters.size()) {
+            throw new IOException("The checkpoint in " + path + " has " + checkpoint.parameters.length +
+                    " parameters, but the net has " + parameters.size());
+        }
+
+        parameters.assign(Vector.from(checkpoint.parameters));
+        trainer.optimizer().restoreState(checkpoint.state);
+        trainer.resumeAt(checkpoint.epochs);
+        return checkpoint.epochs;
+    }
+
+    private void write(int epochs, float[] parameters, float[] state) throws IOException {
+        int size = parameters.length + state.length;
+        boolean key = previous == null || previous.length != size || checkpointsInFile == keyInterval;
+
+        if (current == null || current.length != size) {
+            current = new int[size];
+        }
+        for (int i = 0; i < parameters.length; ++i) {
+            current[i] = Float.floatToRawIntBits(parameters[i]);
+        }
+        for (int i = 0; i < state.length; ++i) {
+            current[parameters.length + i] = Float.floatToRawIntBits(state[i]);
+        }
+
+        int compressedLength = encode(key);
+        var crc = new CRC32();
+        crc.update(compressed, 0, compressedLength);
+
+        ByteBuffer frameHeader = ByteBuffer.allocate(FRAME_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(epochs)
+                .putInt(parameters.length)
+                .putInt(state.length)
+                .putInt(key ? KEY_FLAG : 0)
+                .putInt(compressedLength)
+                .putInt((int) crc.getValue());
+        frameHeader.flip();
+
+        if (key) {
+            // Start a new log next to the old one, and replace the old one once the new checkpoint is durable
+            if (channel != null) {
+                channel.close();
+            }
+            Path newPath = path.resolveSibling(path.getFileName() + ".tmp");
+            channel = FileChannel.open(newPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC).putInt(VERSION).putInt(0);
+            header.flip();
+            writeFully(header);
+            writeFully(frameHeader);
+            writeFully(ByteBuffer.wrap(compressed, 0, compressedLength));
+            channel.force(false);
+            Files.move(newPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            checkpointsInFile = 1;
+        } else {
+            writeFully(frameHeader);
+            writeFully(ByteBuffer.wrap(compressed, 0, compressedLength));
+            channel.force(false);
+            ++checkpointsInFile;
+        }
+
+        int[] swap = previous;
+        previous = current;
+        current = swap;
+        ++written;
+    }
+
+    /** Deflates the byte planes of current (XOR previous, unless key) into compressed, returning its length. */
+    private int encode(boolean key) {
+        int size = current.length;
+        if (planes.length < 4 * size) {
+            planes = new byte[4 * size];
+        }
+        for (int i = 0; i < size; ++i) {
+            int delta = key ? current[i] : current[i] ^ previous[i];
+            planes[i] = (byte) (delta >>> 24);
+            planes[size + i] = (byte) (delta >>> 16);
+            planes[2 * size + i] = (byte) (delta >>> 8);
+            planes[3 * size + i] = (byte) delta;
+        }
+
+        deflater.reset();
+        deflater.setInput(planes, 0, 4 * size);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, Math.max(1024, 2 * compressed.length));
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        return length;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static class Checkpoint {
+        private final int epochs;
+        private final float[] parameters;
+        private final float[] state;
+
+        private Checkpoint(int epochs, float[] parameters, float[] state) {
+            this.epochs = epochs;
+            this.parameters = parameters;
+            this.state = state;
+        }
+    }
+
+    private static Checkpoint read(Path path) throws IOException {
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+            byte[] header = new byte[HEADER_SIZE];
+            if (input.readNBytes(header, 0, HEADER_SIZE) != HEADER_SIZE ||
+                    !Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length) ||
+                    ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getInt(MAGIC.length) != VERSION) {
+                throw new IOException(path + " is not a checkpoint file of version " + VERSION);
+            }
+
+            var inflater = new Inflater();
+            byte[] frameHeaderBytes = new byte[FRAME_HEADER_SIZE];
+            int[] values = null;
+            int epochs = 0;
+            int parameterSize = 0;
+            try {
+                while (input.readNBytes(frameHeaderBytes, 0, FRAME_HEADER_SIZE) == FRAME_HEADER_SIZE) {
+                    ByteBuffer frameHeader = ByteBuffer.wrap(frameHeaderBytes).order(ByteOrder.LITTLE_ENDIAN);
+                    int frameEpochs = frameHeader.getInt();
+                    int frameParameterSize = frameHeader.getInt();
+                    int stateSize = frameHeader.getInt();
+                    boolean key = (frameHeader.getInt() & KEY_FLAG) != 0;
+                    int compressedLength = frameHeader.getInt();
+                    int expectedCrc = frameHeader.getInt();
+
+                    // A torn checkpoint at the end of the log, which is ignored
+                    if (frameParameterSize < 0 || stateSize < 0 || compressedLength < 0) {
+                        break;
+                    }
+                    byte[] frameCompressed = input.readNBytes(compressedLength);
+                    var crc = new CRC32();
+                    crc.update(frameCompressed);
+                    if (frameCompressed.length != compressedLength || (int) crc.getValue() != expectedCrc) {
+                        break;
+                    }
+
+                    int size = frameParameterSize + stateSize;
+                    if (!key && (values == null || values.length != size)) {
+                        throw new IOException("The checkpoint of epoch " + frameEpochs + " in " + path +
+                                " is a delta without a matching previous checkpoint");
+                    }
+
+                    byte[] framePlanes = new byte[4 * size];
+                    inflater.reset();
+                    inflater.setInput(frameCompressed);
+                    if (inflater.inflate(framePlanes) != framePlanes.length || !inflater.finished()) {
+                        throw new IOException("The checkpoint of epoch " + frameEpochs + " in " + path + " is corrupt");
+                    }
+
+                    int[] frameValues = key ? new int[size] : values;
+                    for (int i = 0; i < size; ++i) {
+                        int delta = (framePlanes[i] & 0xff) << 24 |
+                                (framePlanes[size + i] & 0xff) << 16 |
+                                (framePlanes[2 * size + i] & 0xff) << 8 |
+                                (framePlanes[3 * size + i] & 0xff);
+                        frameValues[i] = key ? delta : frameValues[i] ^ delta;
+                    }
+
+                    values = frameValues;
+                    epochs = frameEpochs;
+                    parameterSize = frameParameterSize;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("A checkpoint in " + path + " is corrupt", e);
+            } finally {
+                inflater.end();
+            }
+
+            if (values == null) {
+                throw new IOException("There is no complete checkpoint in " + path);
+            }
+
+            float[] parameters = new float[parameterSize];
+            float[] state = new float[values.length - parameterSize];
+            for (int i = 0; i < values.length; ++i) {
+                float value = Float.intBitsToFloat(values[i]);
+                if (i < parameterSize) {
+                    parameters[i] = value;
+                } else {
+                    state[i - parameterSize] = value;
+                }
+            }
+            return new Checkpoint(epochs, parameters, state);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package no.ion.neuron.trainer;
+
+import no.ion.neuron.BatchComputeContext;
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.gradientdescent.Replica;
+import no.ion.neuron.tensor.Matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Processes a batch of samples data-parallel: The batch is split into one contiguous shard per worker, each worker
+ * processes its shard as one batch, a view of its rows, with its own {@link Replica} of the net, and the gradients
+ * of the replicas are then summed pairwise in a tree (replica 0 += replica 1, 2 += 3, ..., then 0 += 2, ...) and
+ * added to the gradient of the net.
+ *
+ * <p>Both the sharding and the order of the reduction depend only on the batch size and the number of workers,
+ * so the result is deterministic for a fixed number of workers, regardless of the number of threads in the
+ * executor and how the tasks are scheduled.</p>
+ */
+class DataParallelProcessor {
+    private final NeuralNet net;
+    private final ExecutorService executor;
+    private final Replica[] replicas;
+    private final float[] errorSums;
+
+    private float lastError = 0;
+
+    DataParallelProcessor(NeuralNet net, ExecutorService executor, int workers) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("The number of workers must be positive: " + workers);
+        }
+
+        this.net = net;
+        this.executor = executor;
+        this.replicas = new Replica[workers];
+        this.errorSums = new float[workers];
+        for (int worker = 0; worker < workers; ++worker) {
+            replicas[worker] = net.createReplica();
+        }
+    }
+
+    int workers() { return replicas.length; }
+
+    /** The error of the last sample of the last batch. */
+    float lastError() { return lastError; }
+
+    /**
+     * Process all samples of the batch, adding the error gradient of the parameters to the net.
+     *
+     * @return the sum of the errors of the samples
+     */
+    float processBatch(BatchComputeContext context, Matrix inputs) {
+        if (inputs.rows() != context.batchSize()) {
+            throw new IllegalArgumentException("There are " + inputs.rows() + " inputs but " +
+                    context.batchSize() + " ideal outputs");
+        }
+
+        int batchSize = inputs.rows();
+        int workers = replicas.length;
+        var shardTasks = new ArrayList<Callable<Void>>(workers);
+        for (int worker = 0; worker < workers; ++worker) {
+            int shard = worker;
+            int from = (int) ((long) batchSize * worker / workers);
+            int to = (int) ((long) batchSize * (worker + 1) / workers);
+            shardTasks.add(() -> {
+                processShard(shard, context, inputs, from, to);
+                return null;
+            });
+        }
+        runAll(shardTasks);
+
+        reduceGradients();
+
+        float sumError = 0;
+        for (int worker = 0; worker < workers; ++worker) {
+            sumError += errorSums[worker];
+        }
+        return sumError;
+    }
+
+    private void processShard(int shard, BatchComputeContext context, Matrix inputs, int from, int to) {
+        if (from == to) {
+            errorSums[shard] = 0;
+            return;
+        }
+
+        int size = to - from;
+        Matrix errors = replicas[shard].processBatch(context.rows(from, size), inputs.rowsView(from, size));
+        if (errors.columns() != 1) {
+            throw new IllegalStateException("Output of neural network did not have expected size 1: " + errors.columns());
+        }
+
+        float errorSum = 0;
+        for (int sample = 0; sample < size; ++sample) {
+            errorSum += errors.getElement(sample, 0);
+        }
+
+        errorSums[shard] = errorSum;
+        if (to == inputs.rows()) {
+            lastError = errors.getElement(size - 1, 0);
+        }
+    }
+
+    private void reduceGradients() {
+        int workers = replicas.length;
+        for (int stride = 1; stride < workers; stride *= 2) {
+            var levelTasks = new ArrayList<Callable<Void>>();
+            for (int target = 0; target + stride < workers; target += 2 * stride) {
+                Replica targetReplica = replicas[target];
+                Replica sourceReplica = replicas[target + stride];
+                levelTasks.add(() -> {
+                    targetReplica.cumulativeErrorGradientOfParameters().add(sourceReplica.cumulativeErrorGradientOfParameters());
+                    sourceReplica.clearCumulativeErrorGradientOfParameters();
+                    return null;
+                });
+            }
+            runAll(levelTasks);
+        }
+
+        net.cumulativeGradientOfParameters().add(replicas[0].cumulativeErrorGradientOfParameters());
+        replicas[0].clearCumulativeErrorGradientOfParameters();
+    }
+
+    private void runAll(List<Callable<Void>> tasks) {
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while processing a batch", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException("Failed to process a batch", e.getCause());
+        }
+    }
+}
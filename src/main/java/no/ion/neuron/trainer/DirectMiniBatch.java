@@ -1,30 +1,128 @@
 package no.ion.neuron.trainer;
 
+import no.ion.neuron.data.DataSource;
+import no.ion.neuron.data.RandomAccessDataSource;
+import no.ion.neuron.data.SampleStream;
+import no.ion.neuron.tensor.Matrix;
 import no.ion.neuron.tensor.Vector;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Random;
 
 /**
- * A trainer that can be set up with a list of input-idealOutput pairs,
+ * A trainer that can be set up with a list of input-idealOutput pairs, or a {@link DataSource},
  * and run those as an epoch, completing each such epoch with learning.
+ *
+ * <p>By default each epoch is one batch of all the samples, i.e. full-batch gradient descent. With
+ * {@link #useShuffledMiniBatches(int, Random)} an epoch instead visits the samples in a random order, learning
+ * after each mini-batch. Only an index array is shuffled, but since the batched forward and backward passes need
+ * the rows of a batch to be contiguous, each sample is copied once per epoch into reused mini-batch matrices.</p>
  */
 public class DirectMiniBatch {
-    private final List<RunInfo> trainingSet = new ArrayList<>();
+    /** The most samples processed in one batch when streaming through a data source. */
+    static final int STREAM_BATCH_SIZE = 1024;
+
     private final Trainer trainer;
 
+    /** The data source to train on, or null if the samples are added with {@link #add(Vector, Vector)}. */
+    private final DataSource dataSource;
+
+    // The samples added, with the values of each sample stored contiguously
+    private float[] inputValues = new float[0];
+    private float[] idealOutputValues = new float[0];
+    private int inputSize = -1;
+    private int idealOutputSize = -1;
+    private int samples = 0;
+
+    // The added samples as batch matrices with one sample per row, built lazily
+    private Matrix inputs = null;
+    private Matrix idealOutputs = null;
+
+    // The size of the shuffled mini-batches, or 0 for full-batch epochs
+    private int miniBatchSize = 0;
+    private Random random = null;
+    private int[] permutation = new int[0];
+    private Matrix miniBatchInputs = null;
+    private Matrix miniBatchIdealOutputs = null;
+
     public DirectMiniBatch(Trainer trainer) {
         this.trainer = trainer;
+        this.dataSource = null;
+    }
+
+    /** Runs each epoch on the samples of the data source, streamed in batches. */
+    public DirectMiniBatch(Trainer trainer, DataSource dataSource) {
+        this.trainer = trainer;
+        this.dataSource = dataSource;
     }
 
     public DirectMiniBatch add(Vector input, Vector idealOutput) {
-        trainingSet.add(new RunInfo(input.copy(), idealOutput.copy()));
+        if (dataSource != null) {
+            throw new IllegalStateException("Cannot add samples when training on a data source");
+        }
+
+        if (samples == 0) {
+            inputSize = input.size();
+            idealOutputSize = idealOutput.size();
+        } else if (input.size() != inputSize || idealOutput.size() != idealOutputSize) {
+            throw new IllegalArgumentException("The sample has input size " + input.size() + " and ideal output size " +
+                    idealOutput.size() + ", but the previous samples have " + inputSize + " and " + idealOutputSize);
+        }
+
+        if ((samples + 1) * inputSize > inputValues.length || (samples + 1) * idealOutputSize > idealOutputValues.length) {
+            int capacity = Math.max(4, 2 * samples);
+            inputValues = Arrays.copyOf(inputValues, capacity * inputSize);
+            idealOutputValues = Arrays.copyOf(idealOutputValues, capacity * idealOutputSize);
+        }
+
+        for (int i = 0; i < inputSize; ++i) {
+            inputValues[samples * inputSize + i] = input.get(i);
+        }
+        for (int i = 0; i < idealOutputSize; ++i) {
+            idealOutputValues[samples * idealOutputSize + i] = idealOutput.get(i);
+        }
+        ++samples;
+
+        inputs = null;
+        idealOutputs = null;
+        return this;
+    }
+
+    /**
+     * Run each epoch as mini-batches of {@code batchSize} samples (the last may be smaller), learning after each
+     * mini-batch. The samples are visited in a new random order each epoch, by shuffling an array of their
+     * indices. The samples of each mini-batch are then copied (gathered) into a pair of reused batch matrices,
+     * which costs one copy of every sample per epoch but no allocation. The data source, if any, must be a
+     * {@link RandomAccessDataSource}.
+     */
+    public DirectMiniBatch useShuffledMiniBatches(int batchSize, Random random) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive: " + batchSize);
+        } else if (dataSource != null && !(dataSource instanceof RandomAccessDataSource)) {
+            throw new IllegalStateException("Shuffled mini-batches require a RandomAccessDataSource");
+        }
+
+        this.miniBatchSize = batchSize;
+        this.random = random;
+        this.miniBatchInputs = null;
+        this.miniBatchIdealOutputs = null;
         return this;
     }
 
+    /** Returns the average error of the samples of the epoch, as computed before learning from each. */
     public float runEpoch() {
-        for (var runInfo : trainingSet) {
-            trainer.process(runInfo.input, runInfo.idealOutput);
+        DataSource source = dataSource == null ? addedSamples() : dataSource;
+        if (source == null || source.size() == 0) {
+            return Float.NaN;
+        } else if (miniBatchSize > 0) {
+            return runShuffledEpoch((RandomAccessDataSource) source);
+        }
+
+        // The samples added are processed as one batch
+        int batchSize = dataSource == null ? samples : STREAM_BATCH_SIZE;
+        SampleStream stream = source.stream();
+        while (stream.next(batchSize) > 0) {
+            trainer.processBatch(stream.inputs(), stream.idealOutputs());
         }
 
         float E = trainer.averageError();
@@ -34,6 +132,67 @@ public class DirectMiniBatch {
         return E;
     }
 
+    private float runShuffledEpoch(RandomAccessDataSource source) {
+        if (source.size() > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many samples to shuffle: " + source.size());
+        }
+
+        int size = (int) source.size();
+        if (permutation.length != size) {
+            permutation = new int[size];
+            for (int i = 0; i < size; ++i) {
+                permutation[i] = i;
+            }
+        }
+
+        // Fisher-Yates
+        for (int i = size - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            int index = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = index;
+        }
+
+        if (miniBatchInputs == null || miniBatchInputs.columns() != source.inputSize() ||
+                miniBatchIdealOutputs.columns() != source.idealOutputSize()) {
+            miniBatchInputs = new Matrix(miniBatchSize, source.inputSize());
+            miniBatchIdealOutputs = new Matrix(miniBatchSize, source.idealOutputSize());
+        }
+
+        float errorSum = 0;
+        for (int from = 0; from < size; from += miniBatchSize) {
+            int rows = Math.min(miniBatchSize, size - from);
+            Matrix batchInputs = miniBatchInputs.rowsView(0, rows);
+            Matrix batchIdealOutputs = miniBatchIdealOutputs.rowsView(0, rows);
+
+            // Gather the permuted samples, as the batch passes multiply whole row-major matrices
+            for (int row = 0; row < rows; ++row) {
+                batchInputs.rowView(row).assign(source.input(permutation[from + row]));
+                batchIdealOutputs.rowView(row).assign(source.idealOutput(permutation[from + row]));
+            }
+
+            trainer.processBatch(batchInputs, batchIdealOutputs);
+            errorSum += trainer.averageError() * rows;
+            trainer.learn();
+        }
+
+        return errorSum / size;
+    }
+
+    /** The samples added, or null if there are none. */
+    private RandomAccessDataSource addedSamples() {
+        if (samples == 0) {
+            return null;
+        }
+
+        if (inputs == null) {
+            inputs = Vector.from(inputValues).view(0, samples * inputSize).toMatrix(samples);
+            idealOutputs = Vector.from(idealOutputValues).view(0, samples * idealOutputSize).toMatrix(samples);
+        }
+
+        return DataSource.of(inputs, idealOutputs);
+    }
+
     public void runEpochs(int times) {
         while (times --> 0) runEpoch();
     }
@@ -45,14 +204,4 @@ public class DirectMiniBatch {
 
         return i;
     }
-
-    private static class RunInfo {
-        private final Vector input;
-        private final Vector idealOutput;
-
-        public RunInfo(Vector input, Vector idealOutput) {
-            this.input = input;
-            this.idealOutput = idealOutput;
-        }
-    }
 }
@@ -0,0 +1,223 @@
+package no.ion.neuron.trainer;
+
+import no.ion.neuron.ComputeContext;
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.gradientdescent.Replica;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.ErrorTransform;
+import no.ion.neuron.transform.loss.ErrorFunction;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Asynchronous stochastic gradient descent without locks (Hogwild): Each worker thread processes its own
+ * stream of samples with its own {@link Replica} of the net, and after each sample subtracts learningRate times
+ * its gradient directly from the shared parameter buffer of the net, see {@link NeuralNet#parameters()}.
+ *
+ * <p>The workers read parameters that other workers may be updating concurrently, and updates may be lost
+ * when two workers update the same parameter at the same time. This is benign as long as the gradients are
+ * sparse-ish, i.e. most samples update few parameters, and parameters with a zero gradient are not written.</p>
+ *
+ * <p>With a maximum staleness, each worker counts its updates, and a worker waits before processing the next
+ * sample while it is more than {@code maxStaleness} updates ahead of the slowest worker (stale synchronous
+ * parallel). This bounds how old the parameters a gradient was computed from can be, at the cost of
+ * the faster workers waiting for the slower.</p>
+ */
+public class HogwildTrainer {
+    /** The maximum staleness of a trainer without bounded staleness. */
+    public static final long UNBOUNDED = Long.MAX_VALUE;
+
+    private final NeuralNet net;
+    private final float learningRate;
+    private final int workers;
+    private final long maxStaleness;
+    private final Replica[] replicas;
+
+    public HogwildTrainer(NeuralNet net, ErrorFunction errorFunction, float learningRate, int workers, long maxStaleness) {
+        if (learningRate <= 0) {
+            throw new IllegalArgumentException("The learning rate must be positive: " + learningRate);
+        } else if (workers <= 0) {
+            throw new IllegalArgumentException("The number of workers must be positive: " + workers);
+        } else if (maxStaleness < 0) {
+            throw new IllegalArgumentException("The maximum staleness cannot be negative: " + maxStaleness);
+        }
+
+        this.net = net;
+        this.learningRate = learningRate;
+        this.workers = workers;
+        this.maxStaleness = maxStaleness;
+
+        net.addTransform(new ErrorTransform(net.outputSize(), errorFunction));
+        this.replicas = new Replica[workers];
+        for (int worker = 0; worker < workers; ++worker) {
+            replicas[worker] = net.createReplica();
+        }
+    }
+
+    public HogwildTrainer(NeuralNet net, ErrorFunction errorFunction, float learningRate, int workers) {
+        this(net, errorFunction, learningRate, workers, UNBOUNDED);
+    }
+
+    /** The result of a {@link #train(Matrix, Matrix, int) training run}. */
+    public static class Report {
+        private final long samples;
+        private final long elapsedNanos;
+        private final float averageError;
+
+        Report(long samples, long elapsedNanos, float averageError) {
+            this.samples = samples;
+            this.elapsedNanos = elapsedNanos;
+            this.averageError = averageError;
+        }
+
+        /** The number of samples processed by all workers. */
+        public long samples() { return samples; }
+
+        public double seconds() { return elapsedNanos / 1e9; }
+
+        public double samplesPerSecond() { return samples / seconds(); }
+
+        /** The average error of the samples of the last pass over the training set. */
+        public float averageError() { return averageError; }
+
+        @Override
+        public String toString() {
+            return "Report{" +
+                    "samples=" + samples +
+                    ", seconds=" + seconds() +
+                    ", samplesPerSecond=" + samplesPerSecond() +
+                    ", averageError=" + averageError +
+                    '}';
+        }
+    }
+
+    /**
+     * Train on the samples, one per row, by {@code passes} passes over the samples. The samples are split
+     * into one contiguous shard per worker, and each worker runs on its own thread, passing over its shard
+     * {@code passes} times. Returns when all workers are done.
+     */
+    public Report train(Matrix inputs, Matrix idealOutputs, int passes) {
+        if (inputs.rows() != idealOutputs.rows()) {
+            throw new IllegalArgumentException("There are " + inputs.rows() + " inputs but " +
+                    idealOutputs.rows() + " ideal outputs");
+        } else if (inputs.rows() < workers) {
+            throw new IllegalArgumentException("Every one of the " + workers + " workers needs at least one of the " +
+                    inputs.rows() + " samples");
+        }
+
+        int batchSize = inputs.rows();
+        var clocks = new AtomicLongArray(workers);
+        var lastPassErrorSums = new float[workers];
+        var failure = new AtomicReference<Throwable>();
+        var threads = new Thread[workers];
+        for (int worker = 0; worker < workers; ++worker) {
+            int id = worker;
+            int from = (int) ((long) batchSize * worker / workers);
+            int to = (int) ((long) batchSize * (worker + 1) / workers);
+            threads[worker] = new Thread(() -> {
+                try {
+                    lastPassErrorSums[id] = runWorker(id, inputs, idealOutputs, from, to, passes, clocks);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    // A finished worker no longer holds back the others.
+                    clocks.set(id, Long.MAX_VALUE);
+                }
+            }, "hogwild-worker-" + worker);
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            join(thread);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        if (failure.get() != null) {
+            throw new IllegalStateException("A worker failed", failure.get());
+        }
+
+        float errorSum = 0;
+        for (float workerErrorSum : lastPassErrorSums) {
+            errorSum += workerErrorSum;
+        }
+
+        return new Report((long) batchSize * passes, elapsedNanos, errorSum / batchSize);
+    }
+
+    /** @return the sum of the errors of the last pass */
+    private float runWorker(int id, Matrix inputs, Matrix idealOutputs, int from, int to, int passes,
+                            AtomicLongArray clocks) {
+        Replica replica = replicas[id];
+        Vector gradient = replica.cumulativeErrorGradientOfParameters();
+        Vector parameters = net.parameters();
+        ComputeContext context = null;
+
+        float errorSum = 0;
+        for (int pass = 0; pass < passes; ++pass) {
+            errorSum = 0;
+            for (int sample = from; sample < to; ++sample) {
+                awaitSlowestWorker(id, clocks);
+
+                Vector idealOutput = idealOutputs.rowView(sample);
+                if (context == null) {
+                    context = new ComputeContext(idealOutput);
+                } else {
+                    context.reset(idealOutput);
+                }
+
+                errorSum += replica.process(context, inputs.rowView(sample)).get(0);
+
+                for (int k = 0; k < gradient.size(); ++k) {
+                    float g = gradient.get(k);
+                    if (g != 0) {
+                        parameters.addToElement(k, -learningRate * g);
+                    }
+                }
+                replica.clearCumulativeErrorGradientOfParameters();
+
+                clocks.incrementAndGet(id);
+            }
+        }
+
+        return errorSum;
+    }
+
+    private void awaitSlowestWorker(int id, AtomicLongArray clocks) {
+        if (maxStaleness == UNBOUNDED) {
+            return;
+        }
+
+        long clock = clocks.get(id);
+        for (int spins = 0; ; ++spins) {
+            long slowest = Long.MAX_VALUE;
+            for (int worker = 0; worker < workers; ++worker) {
+                slowest = Math.min(slowest, clocks.get(worker));
+            }
+
+            if (clock - slowest <= maxStaleness) {
+                return;
+            }
+
+            // Spin briefly, then give the slower workers the CPU, as there may be fewer cores than workers.
+            if (spins < 100) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + thread.getName(), e);
+        }
+    }
+}
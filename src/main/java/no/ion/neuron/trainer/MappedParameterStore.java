@@ -0,0 +1,235 @@
+package no.ion.neuron.trainer;
+
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.optimizer.EpochSummary;
+import no.ion.neuron.optimizer.Optimizer;
+import no.ion.neuron.tensor.OffHeapArena;
+import no.ion.neuron.tensor.Vector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Keeps the parameters of the net of a trainer in a memory-mapped file while training, so that every update of
+ * {@link Trainer#learn()} is written to the file, and training can resume from the file after a restart or crash.
+ * The cumulative gradient is kept off-heap as well, so neither takes up heap.
+ *
+ * <p>The operating system writes the changed pages to the file at its own pace. To bound what a crash can lose,
+ * the store is an {@link Trainer#addEpochListener(Trainer.EpochListener) epoch listener} of the trainer that
+ * forces the parameters to the storage device every sync interval epochs, or when {@link #force()} is called.
+ * A sync also writes the state of the optimizer, e.g. the moments of Adam, and then records the number of epochs
+ * in the header of the file. A resumed trainer continues from the state of the optimizer and the number of epochs
+ * of the last sync.</p>
+ *
+ * <p>The file has a 64 byte header: "NEURONPS", int version, int parameterSize, long epochs (as of the last sync),
+ * int stateSize, and zero padding; followed by the parameters of the net as little-endian floats, and then the
+ * stateSize floats of the state of the optimizer. The parameters are limited to 2 GB, the maximum size of a
+ * mapping.</p>
+ */
+public final class MappedParameterStore implements Trainer.EpochListener, AutoCloseable {
+    private static final byte[] MAGIC = "NEURONPS".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int EPOCHS_OFFSET = 16;
+
+    private final FileChannel channel;
+    private final OffHeapArena arena;
+    private final Optimizer optimizer;
+    private final long stateOffset;
+    private final int syncInterval;
+    private final boolean resumed;
+    private long epochs;
+    private long syncedEpochs;
+
+    /**
+     * Store the parameters of the net of the trainer, and the state of its optimizer, in the file, and add the
+     * store as an epoch listener of the trainer. If the file exists, the trainer resumes from the file, which must
+     * have been made for a trainer with the same layers and optimizer configuration: The net adopts the parameters,
+     * the optimizer the state, and the trainer the number of epochs. Otherwise, the file is created with the
+     * current parameters of the net and state of the optimizer.
+     *
+     * <p>The net must not get more layers with parameters afterwards, see {@link NeuralNet#moveTo(Vector, Vector)}.</p>
+     *
+     * @param syncInterval the number of epochs between each {@link #force()}, or 0 to only force explicitly
+     */
+    public static MappedParameterStore open(Trainer trainer, Path path, int syncInterval) throws IOException {
+        if (syncInterval < 0) {
+            throw new IllegalArgumentException("The sync interval cannot be negative: " + syncInterval);
+        }
+
+        NeuralNet net = trainer.net();
+        boolean exists = Files.exists(path);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        var arena = new OffHeapArena();
+        try {
+            int parameterSize = net.parameterSize();
+            long stateOffset = HEADER_SIZE + (long) parameterSize * Float.BYTES;
+            long epochs = 0;
+            if (exists) {
+                ByteBuffer header = readHeader(channel, path, parameterSize);
+                epochs = header.getLong();
+                int stateSize = header.getInt();
+                if (epochs > Integer.MAX_VALUE) {
+                    throw new IOException(path + " has " + epochs + " epochs, more than a trainer can count");
+                }
+                trainer.optimizer().restoreState(readState(channel, path, stateOffset, stateSize));
+                trainer.resumeAt((int) epochs);
+            } else {
+                writeHeader(channel, parameterSize);
+            }
+
+            Vector parameters = arena.map(channel, HEADER_SIZE, parameterSize, true);
+            Vector gradient = arena.allocateVector(parameterSize);
+            if (exists) {
+                net.adopt(parameters, gradient);
+            } else {
+                net.moveTo(parameters, gradient);
+            }
+
+            var store = new MappedParameterStore(channel, arena, trainer.optimizer(), stateOffset, syncInterval, exists, epochs);
+            if (!exists) {
+                store.force();
+            }
+            trainer.addEpochListener(store);
+            return store;
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            channel.close();
+            throw e;
+        }
+    }
+
+    private MappedParameterStore(FileChannel channel, OffHeapArena arena, Optimizer optimizer, long stateOffset,
+                                 int syncInterval, boolean resumed, long epochs) {
+        this.channel = channel;
+        this.arena = arena;
+        this.optimizer = optimizer;
+        this.stateOffset = stateOffset;
+        this.syncInterval = syncInterval;
+        this.resumed = resumed;
+        this.epochs = epochs;
+        this.syncedEpochs = epochs;
+    }
+
+    /** Whether the parameters were read from an existing file. */
+    public boolean resumed() { return resumed; }
+
+    /** The number of epochs completed, including those before resuming. */
+    public long epochs() { return epochs; }
+
+    /** The number of epochs completed as of the last sync, which is what a resumed store starts from. */
+    public long syncedEpochs() { return syncedEpochs; }
+
+    @Override
+    public void epochCompleted(EpochSummary epochSummary) {
+        ++epochs;
+        if (syncInterval > 0 && epochs % syncInterval == 0) {
+            force();
+        }
+    }
+
+    /**
+     * Write the parameters and the state of the optimizer to the storage device, then record the number of epochs
+     * in the header. A crash while forcing may leave the file with parameters and state newer than the recorded
+     * number of epochs, but never older.
+     */
+    public void force() {
+        arena.force();
+        try {
+            float[] state = optimizer.state();
+            ByteBuffer stateBuffer = ByteBuffer.allocate(state.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            stateBuffer.asFloatBuffer().put(state);
+            writeFully(channel, stateBuffer, stateOffset);
+            channel.force(false);
+
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                    .putLong(epochs)
+                    .putInt(state.length);
+            buffer.flip();
+            writeFully(channel, buffer, EPOCHS_OFFSET);
+            channel.force(false);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to sync the parameter store", e);
+        }
+        syncedEpochs = epochs;
+    }
+
+    /**
+     * Syncs the file if there are epochs since the last sync, and unmaps it. The net must not be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (epochs != syncedEpochs) {
+                force();
+            }
+        } finally {
+            arena.close();
+            channel.close();
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, int parameterSize) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(VERSION).putInt(parameterSize).putLong(0).putInt(0);
+        header.clear();
+        writeFully(channel, header, 0);
+    }
+
+    /** @return the header, positioned at the number of epochs */
+    private static ByteBuffer readHeader(FileChannel channel, Path path, int parameterSize) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException(path + " is not a parameter store");
+            }
+        }
+        header.flip();
+
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || header.getInt() != VERSION) {
+            throw new IOException(path + " is not a parameter store of version " + VERSION);
+        }
+
+        int storedParameterSize = header.getInt();
+        if (storedParameterSize != parameterSize) {
+            throw new IOException(path + " has " + storedParameterSize + " parameters, but the net has " + parameterSize);
+        } else if (channel.size() < HEADER_SIZE + (long) parameterSize * Float.BYTES) {
+            throw new IOException(path + " is truncated");
+        }
+
+        return header;
+    }
+
+    private static float[] readState(FileChannel channel, Path path, long stateOffset, int stateSize) throws IOException {
+        if (stateSize < 0 || channel.size() < stateOffset + (long) stateSize * Float.BYTES) {
+            throw new IOException(path + " has a truncated optimizer state");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(stateSize * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, stateOffset + buffer.position()) < 0) {
+                throw new IOException(path + " has a truncated optimizer state");
+            }
+        }
+        buffer.flip();
+
+        float[] state = new float[stateSize];
+        buffer.asFloatBuffer().get(state);
+        return state;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -1,19 +1,35 @@
 package no.ion.neuron.trainer;
 
+import no.ion.neuron.BatchComputeContext;
 import no.ion.neuron.ComputeContext;
 import no.ion.neuron.NeuralNet;
+import no.ion.neuron.inference.InferenceModel;
 import no.ion.neuron.optimizer.EpochSummary;
 import no.ion.neuron.optimizer.Optimizer;
+import no.ion.neuron.tensor.Matrix;
 import no.ion.neuron.tensor.Vector;
 import no.ion.neuron.transform.ErrorTransform;
 import no.ion.neuron.transform.loss.ErrorFunction;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
 /**
  * Takes ownership of a {@link NeuralNet neural net}, prepares it for training,
  * and exposes method to process input/idealOutputs pairs, and a method to learn from
  * such experience with an optimizer.
  */
 public class Trainer {
+    /** Notified at the end of each {@link #learn()}, after the parameters have been updated. */
+    public interface EpochListener {
+        /**
+         * Called on the thread calling learn(). The gradient of the summary is the live buffer of the net,
+         * which is cleared when this returns.
+         */
+        void epochCompleted(EpochSummary epochSummary);
+    }
+
     private final NeuralNet net;
     private final Optimizer optimizer;
     private final int outputSize;
@@ -23,18 +39,82 @@ public class Trainer {
     private float lastError = 0;
     private float sumError = 0;
 
+    /** Reused for every sample processed. */
+    private ComputeContext context = null;
+
+    /** Non-null if batches are processed data-parallel. */
+    private final DataParallelProcessor dataParallelProcessor;
+
+    private final List<EpochListener> epochListeners = new ArrayList<>();
+
     public Trainer(NeuralNet net, ErrorFunction errorFunction, Optimizer optimizer) {
         this.net = net;
         this.optimizer = optimizer;
         this.outputSize = net.outputSize();
 
         net.addTransform(new ErrorTransform(outputSize, errorFunction));
+        this.dataParallelProcessor = null;
+    }
+
+    /**
+     * A trainer that processes each batch data-parallel, by splitting it into {@code workers} shards that
+     * are processed concurrently by the executor, see {@link #processBatch(Matrix, Matrix)}. The trainer
+     * does not take ownership of the executor.
+     *
+     * <p>The result is deterministic for a fixed number of workers, but differs from the sequential
+     * trainer (and between different numbers of workers) by the order in which gradients are summed.</p>
+     */
+    public Trainer(NeuralNet net, ErrorFunction errorFunction, Optimizer optimizer, ExecutorService executor, int workers) {
+        this.net = net;
+        this.optimizer = optimizer;
+        this.outputSize = net.outputSize();
+
+        net.addTransform(new ErrorTransform(outputSize, errorFunction));
+        this.dataParallelProcessor = new DataParallelProcessor(net, executor, workers);
     }
 
     public int outputSizeOfOriginalNet() { return outputSize; }
 
+    /** The number of epochs learned, see {@link EpochSummary#epochs()}. */
+    public int epochs() { return epochs; }
+
+    NeuralNet net() { return net; }
+    Optimizer optimizer() { return optimizer; }
+
+    /** Continue counting epochs from {@code epochs}, e.g. when resuming from a checkpoint. */
+    void resumeAt(int epochs) { this.epochs = epochs; }
+
+    /** Listeners are notified in the order they were added. */
+    public void addEpochListener(EpochListener listener) { epochListeners.add(listener); }
+
+    /** Returns an immutable snapshot of the net being trained, without the error function. */
+    public InferenceModel inferenceModel() { return net.inferenceModel(); }
+
     public void process(Vector input, Vector idealOutput) {
-        ComputeContext context = new ComputeContext(idealOutput);
+        if (context == null) {
+            context = new ComputeContext(idealOutput);
+        } else {
+            context.reset(idealOutput);
+        }
+
+        compute(input);
+    }
+
+    /**
+     * Process a sample of a classification, whose ideal output is the one-hot vector of the class label.
+     * See {@link ErrorFunction#error(Vector, int)}.
+     */
+    public void process(Vector input, int classLabel) {
+        if (context == null) {
+            context = new ComputeContext(classLabel);
+        } else {
+            context.reset(classLabel);
+        }
+
+        compute(input);
+    }
+
+    private void compute(Vector input) {
         Vector error = net.compute(context, input);
 
         // Training a neural network means adding an artificial last layer, that transforms
@@ -49,6 +129,43 @@ public class Trainer {
         sumError += error.get(0);
     }
 
+    /**
+     * Process a batch of samples in one pass through the net, with one sample per row of each matrix.
+     * If the trainer was created with an executor, the batch is instead sharded across its workers.
+     */
+    public void processBatch(Matrix inputs, Matrix idealOutputs) {
+        processBatch(new BatchComputeContext(idealOutputs), inputs);
+    }
+
+    /**
+     * Process a batch of samples of a classification, with the class label of each row of {@code inputs},
+     * see {@link #process(Vector, int)} and {@link #processBatch(Matrix, Matrix)}.
+     */
+    public void processBatch(Matrix inputs, int[] classLabels) {
+        processBatch(new BatchComputeContext(classLabels), inputs);
+    }
+
+    private void processBatch(BatchComputeContext context, Matrix inputs) {
+        if (dataParallelProcessor != null) {
+            sumError += dataParallelProcessor.processBatch(context, inputs);
+            processed += inputs.rows();
+            lastError = dataParallelProcessor.lastError();
+            return;
+        }
+
+        Matrix errors = net.computeBatch(context, inputs);
+
+        if (errors.columns() != 1) {
+            throw new IllegalStateException("Output of neural network did not have expected size 1: " + errors.columns());
+        }
+
+        for (int sample = 0; sample < errors.rows(); ++sample) {
+            ++processed;
+            lastError = errors.getElement(sample, 0);
+            sumError += lastError;
+        }
+    }
+
     public float averageError() {
         return sumError / processed;
     }
@@ -62,8 +179,10 @@ public class Trainer {
         ++epochs;
         Vector gradientOfParameters = net.cumulativeGradientOfParameters();
         EpochSummary epochSummary = new EpochSummary(epochs, sumError, processed, gradientOfParameters);
-        Vector delta = optimizer.calculateParameterAdjustments(epochSummary);
-        net.adjustParameters(delta);
+        optimizer.updateParameters(epochSummary, net.parameters());
+        for (EpochListener listener : epochListeners) {
+            listener.epochCompleted(epochSummary);
+        }
         net.clearCumulativeErrorGradientOfParameters();
         processed = 0;
         sumError = 0;
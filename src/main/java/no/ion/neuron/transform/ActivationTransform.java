@@ -1,7 +1,8 @@
 package no.ion.neuron.transform;
 
+import no.ion.neuron.BatchComputeContext;
 import no.ion.neuron.ComputeContext;
-import no.ion.neuron.internal.BackPropagationImpl;
+import no.ion.neuron.tensor.Matrix;
 import no.ion.neuron.tensor.Vector;
 import no.ion.neuron.transform.activation.ActivationFunction;
 
@@ -17,6 +18,7 @@ public class ActivationTransform implements Transform {
         this.activationFunction = activationFunction;
     }
 
+    public ActivationFunction activationFunction() { return activationFunction; }
     @Override public int inputSize() { return size; }
     @Override public int outputSize() { return size; }
     @Override public int parameterSize() { return 0; }
@@ -24,35 +26,40 @@ public class ActivationTransform implements Transform {
     @Override public Vector parameters() { return new Vector(0); }
 
     @Override
-    public ComputationResult compute(ComputeContext context, Vector input) {
-        Vector output = new Vector(size);
-        for (int i = 0; i < size; ++i) {
-            float value = activationFunction.f(input.get(i));
-            output.setElement(i, value);
-        }
-
-        return new ComputationResult() {
+    public BatchComputationResult computeBatch(BatchComputeContext context, Matrix inputs) {
+        // The matrices are contiguous, so the whole batch is one range of rows x size elements.
+        Vector inputVector = inputs.toVector();
+        Matrix outputs = new Matrix(inputs.rows(), size);
+        Vector outputVector = outputs.toVector();
+        Activations.apply(activationFunction, inputVector, outputVector);
+
+        return new BatchComputationResult() {
             @Override
-            public Vector output() {
-                return output;
+            public Matrix outputs() {
+                return outputs;
             }
 
             @Override
-            public BackPropagation backPropagate(Vector errorGradientOfOutput) {
-                Vector errorGradientOfInput = new Vector(inputSize());
-                for (int i = 0; i < inputSize(); ++i) {
-                    float derivative = activationFunction.fGradient(input.get(i), output.get(i));
-                    float errorGradientOfInput_i = derivative * errorGradientOfOutput.get(i);
-                    errorGradientOfInput.addToElement(i, errorGradientOfInput_i);
-                }
-
-                Vector errorGradientOfParameter = new Vector(0);
-
-                return new BackPropagationImpl(errorGradientOfInput, errorGradientOfParameter);
+            public Matrix backPropagate(Matrix errorGradientOfOutputs, Vector errorGradientOfParameters) {
+                Matrix errorGradientOfInputs = new Matrix(inputs.rows(), size);
+                Activations.backPropagate(activationFunction, inputVector, outputVector, errorGradientOfOutputs.toVector(),
+                        errorGradientOfInputs.toVector());
+                return errorGradientOfInputs;
             }
         };
     }
 
+    @Override
+    public void infer(Vector input, Vector output) {
+        Activations.apply(activationFunction, input, output);
+    }
+
+    @Override
+    public void backward(ComputeContext context, Vector input, Vector output, Vector errorGradientOfOutput,
+                         Vector errorGradientOfInput, Vector errorGradientOfParameters) {
+        Activations.backPropagate(activationFunction, input, output, errorGradientOfOutput, errorGradientOfInput);
+    }
+
     @Override
     public String toString() {
         return "ActivationTransform{" +
@@ -0,0 +1,41 @@
+package no.ion.neuron.transform;
+
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.activation.ActivationFunction;
+
+/**
+ * Applies an activation function to whole vectors through its range methods, falling back to the scalar methods
+ * for vectors without a backing array, e.g. those stored off-heap.
+ */
+class Activations {
+    private Activations() {}
+
+    /** y = f(x), element-wise. y may be x. */
+    static void apply(ActivationFunction function, Vector x, Vector y) {
+        if (x.hasArray() && y.hasArray()) {
+            function.f(x.array(), x.arrayOffset(), y.array(), y.arrayOffset(), y.size());
+        } else {
+            for (int i = 0; i < y.size(); ++i) {
+                y.setElement(i, function.f(x.get(i)));
+            }
+        }
+    }
+
+    /** errorGradientOfInput = f'(x, y) * errorGradientOfOutput, element-wise. errorGradientOfInput may be x. */
+    static void backPropagate(ActivationFunction function, Vector x, Vector y, Vector errorGradientOfOutput,
+                              Vector errorGradientOfInput) {
+        if (x.hasArray() && y.hasArray() && errorGradientOfOutput.hasArray() && errorGradientOfInput.hasArray()) {
+            function.backPropagate(
+                    x.array(), x.arrayOffset(),
+                    y.array(), y.arrayOffset(),
+                    errorGradientOfOutput.array(), errorGradientOfOutput.arrayOffset(),
+                    errorGradientOfInput.array(), errorGradientOfInput.arrayOffset(),
+                    errorGradientOfInput.size());
+        } else {
+            for (int i = 0; i < errorGradientOfInput.size(); ++i) {
+                float derivative = function.fGradient(x.get(i), y.get(i));
+                errorGradientOfInput.setElement(i, derivative * errorGradientOfOutput.get(i));
+            }
+        }
+    }
+}
@@ -1,8 +1,9 @@
 package no.ion.neuron.transform;
 
+import no.ion.neuron.BatchComputeContext;
 import no.ion.neuron.ComputeContext;
+import no.ion.neuron.tensor.Matrix;
 import no.ion.neuron.tensor.Vector;
-import no.ion.neuron.internal.BackPropagationImpl;
 
 public class BiasTransform implements Transform {
     private final Vector bias;
@@ -17,31 +18,45 @@ public class BiasTransform implements Transform {
     @Override public int outputSize() { return bias.size(); }
     @Override public int parameterSize() { return bias.size(); }
     @Override public Vector parameters() { return bias.copy(); }
+    @Override public void moveParametersTo(Vector storage) { bias.moveTo(storage); }
+    @Override public BiasTransform copy() { return new BiasTransform(bias.copy()); }
 
     @Override
-    public ComputationResult compute(ComputeContext context, Vector input) {
-        Vector output = input.copy();
-        output.add(bias);
-        return new ComputationResult() {
+    public BatchComputationResult computeBatch(BatchComputeContext context, Matrix inputs) {
+        Matrix outputs = inputs.copy();
+        for (int sample = 0; sample < outputs.rows(); ++sample) {
+            for (int i = 0; i < bias.size(); ++i) {
+                outputs.addToElement(sample, i, bias.get(i));
+            }
+        }
+
+        return new BatchComputationResult() {
             @Override
-            public Vector output() {
-                return output;
+            public Matrix outputs() {
+                return outputs;
             }
 
             @Override
-            public BackPropagation backPropagate(Vector errorGradient) {
-                Vector errorGradientOfInput = new Vector(inputSize());
-                Vector errorGradientOfParameters = new Vector(parameterSize());
-                for (int i = 0; i < bias.size(); ++i) {
-                    errorGradientOfInput.setElement(i, errorGradient.get(i));
-                    errorGradientOfParameters.setElement(i, errorGradient.get(i));
-                }
-
-                return new BackPropagationImpl(errorGradientOfInput, errorGradientOfParameters);
+            public Matrix backPropagate(Matrix errorGradientOfOutputs, Vector errorGradientOfParameters) {
+                errorGradientOfParameters.add(errorGradientOfOutputs.sumOfRows());
+                return errorGradientOfOutputs.copy();
             }
         };
     }
 
+    @Override
+    public void infer(Vector input, Vector output) {
+        output.assign(input);
+        output.add(bias);
+    }
+
+    @Override
+    public void backward(ComputeContext context, Vector input, Vector output, Vector errorGradientOfOutput,
+                         Vector errorGradientOfInput, Vector errorGradientOfParameters) {
+        errorGradientOfInput.assign(errorGradientOfOutput);
+        errorGradientOfParameters.add(errorGradientOfOutput);
+    }
+
     @Override
     public void adjustParameters(Vector amount) {
         bias.add(amount);
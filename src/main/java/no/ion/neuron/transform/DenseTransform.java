@@ -0,0 +1,184 @@
+package no.ion.neuron.transform;
+
+import no.ion.neuron.BatchComputeContext;
+import no.ion.neuron.ComputeContext;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.activation.ActivationFunction;
+
+/**
+ * A fully connected layer y = f(W x + b), equivalent to a WeightTransform, a BiasTransform, and an
+ * ActivationTransform in sequence, but computing the output in one pass over W and the back-propagation in
+ * another, without the intermediate vectors of the separate transforms.
+ *
+ * <p>The parameters are the elements of W (row-major) followed by the elements of b, the same layout as the
+ * parameters of the separate transforms, laid out in one vector that W and b are views of, see
+ * {@link #parameters()}. The pre-activation z = W x + b of a sample is kept in the scratch
+ * vector between the forward and backward pass.</p>
+ */
+public class DenseTransform implements Transform {
+    private final Matrix weight;
+    private final Vector bias;
+    private final ActivationFunction activationFunction;
+
+    /** The storage of the weight and bias. */
+    private Vector parameters;
+
+    /**
+     * The weight and bias are moved into a new parameter vector, see {@link Matrix#moveTo(Vector)}, so they remain
+     * views of the parameters of the transform.
+     */
+    public DenseTransform(Matrix weight, Vector bias, ActivationFunction activationFunction) {
+        if (bias.size() != weight.rows()) {
+            throw new IllegalArgumentException("Weight output size " + weight.rows() +
+                    " does not match bias size " + bias.size());
+        }
+
+        this.weight = weight;
+        this.bias = bias;
+        this.activationFunction = activationFunction;
+        this.parameters = new Vector(weight.rows() * weight.columns() + bias.size());
+        weight.moveTo(parameters.view(0, weightSize()));
+        bias.moveTo(parameters.view(weightSize(), bias.size()));
+    }
+
+    /** A transform whose parameters are {@code parameters}, which is not copied: W row-major followed by b. */
+    public DenseTransform(Vector parameters, int outputSize, ActivationFunction activationFunction) {
+        if (outputSize <= 0 || parameters.size() % outputSize != 0 || parameters.size() / outputSize < 1) {
+            throw new IllegalArgumentException("There are " + parameters.size() + " parameters, which does not fit " +
+                    "a weight and bias of output size " + outputSize);
+        }
+
+        int weightSize = parameters.size() - outputSize;
+        this.weight = parameters.view(0, weightSize).toMatrix(outputSize);
+        this.bias = parameters.view(weightSize, outputSize);
+        this.activationFunction = activationFunction;
+        this.parameters = parameters;
+    }
+
+    public Matrix weight() { return weight; }
+    public Vector bias() { return bias; }
+    public ActivationFunction activationFunction() { return activationFunction; }
+
+    @Override public int inputSize() { return weight.columns(); }
+    @Override public int outputSize() { return weight.rows(); }
+    @Override public int parameterSize() { return weightSize() + bias.size(); }
+    @Override public int scratchSize() { return outputSize(); }
+    @Override public DenseTransform copy() { return new DenseTransform(parameters.copy(), outputSize(), activationFunction); }
+
+    private int weightSize() { return weight.rows() * weight.columns(); }
+
+    /** The storage of the parameters, not a copy. */
+    @Override
+    public Vector parameters() { return parameters; }
+
+    @Override
+    public void moveParametersTo(Vector storage) {
+        weight.moveTo(storage.view(0, weightSize()));
+        bias.moveTo(storage.view(weightSize(), bias.size()));
+        parameters = storage;
+    }
+
+    @Override
+    public void infer(Vector input, Vector output) {
+        weight.dot(input, output);
+        output.add(bias);
+        Activations.apply(activationFunction, output, output);
+    }
+
+    @Override
+    public void forward(ComputeContext context, Vector input, Vector output, Vector scratch) {
+        // scratch = z = W x + b
+        weight.dot(input, scratch);
+        scratch.add(bias);
+        Activations.apply(activationFunction, scratch, output);
+    }
+
+    @Override
+    public void backward(ComputeContext context, Vector input, Vector output, Vector scratch,
+                         Vector errorGradientOfOutput, Vector errorGradientOfInput, Vector errorGradientOfParameters) {
+        // dE/dz overwrites z in scratch
+        Activations.backPropagate(activationFunction, scratch, output, errorGradientOfOutput, scratch);
+
+        // dE/dWij = dE/dzi * xj, and dE/dbi = dE/dzi
+        errorGradientOfParameters.addOuterProduct(0, scratch, input);
+        errorGradientOfParameters.add(weightSize(), scratch);
+
+        // dE/dXj = sum_i dE/dzi * Wij
+        weight.transposedDot(scratch, errorGradientOfInput);
+    }
+
+    /**
+     * Back-propagation without the scratch vector of the forward pass, which recomputes z into a new vector.
+     * Training passes the scratch vector instead, and does not allocate.
+     */
+    @Override
+    public void backward(ComputeContext context, Vector input, Vector output, Vector errorGradientOfOutput,
+                         Vector errorGradientOfInput, Vector errorGradientOfParameters) {
+        Vector scratch = new Vector(scratchSize());
+        weight.dot(input, scratch);
+        scratch.add(bias);
+        backward(context, input, output, scratch, errorGradientOfOutput, errorGradientOfInput, errorGradientOfParameters);
+    }
+
+    @Override
+    public Matrix inferBatch(Matrix inputs) {
+        Matrix outputs = inputs.multiplyTransposed(weight);
+        for (int sample = 0; sample < outputs.rows(); ++sample) {
+            outputs.rowView(sample).add(bias);
+        }
+        Activations.apply(activationFunction, outputs.toVector(), outputs.toVector());
+        return outputs;
+    }
+
+    @Override
+    public BatchComputationResult computeBatch(BatchComputeContext context, Matrix inputs) {
+        // Z = X W^T + b, with one sample per row of X and Z
+        Matrix preActivations = inputs.multiplyTransposed(weight);
+        for (int sample = 0; sample < inputs.rows(); ++sample) {
+            preActivations.rowView(sample).add(bias);
+        }
+
+        // The matrices are contiguous, so the whole batch is one range of rows x outputSize elements.
+        Matrix outputs = new Matrix(inputs.rows(), outputSize());
+        Activations.apply(activationFunction, preActivations.toVector(), outputs.toVector());
+
+        return new BatchComputationResult() {
+            @Override
+            public Matrix outputs() {
+                return outputs;
+            }
+
+            @Override
+            public Matrix backPropagate(Matrix errorGradientOfOutputs, Vector errorGradientOfParameters) {
+                // dE/dZ overwrites Z
+                Matrix errorGradientOfPreActivations = preActivations;
+                Activations.backPropagate(activationFunction, preActivations.toVector(), outputs.toVector(),
+                        errorGradientOfOutputs.toVector(), errorGradientOfPreActivations.toVector());
+
+                // dE/dW = dE/dZ^T X, and dE/db = the sum of the rows of dE/dZ
+                errorGradientOfParameters.view(0, weightSize()).toMatrix(outputSize())
+                        .addProduct(errorGradientOfPreActivations, true, inputs, false);
+                errorGradientOfParameters.add(weightSize(), errorGradientOfPreActivations.sumOfRows());
+
+                // dE/dX = dE/dZ W
+                return errorGradientOfPreActivations.multiply(weight);
+            }
+        };
+    }
+
+    @Override
+    public void adjustParameters(Vector amount) {
+        weight.add(amount.view(0, weightSize()).toMatrix(outputSize()));
+        bias.add(amount.view(weightSize(), bias.size()));
+    }
+
+    @Override
+    public String toString() {
+        return "DenseTransform{" +
+                "weight=" + weight +
+                ", bias=" + bias +
+                ", activationFunction=" + activationFunction +
+                '}';
+    }
+}
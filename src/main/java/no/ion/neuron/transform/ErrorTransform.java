@@ -1,9 +1,9 @@
 package no.ion.neuron.transform;
 
+import no.ion.neuron.BatchComputeContext;
 import no.ion.neuron.ComputeContext;
-import no.ion.neuron.internal.BackPropagationImpl;
+import no.ion.neuron.tensor.Matrix;
 import no.ion.neuron.tensor.Vector;
-import no.ion.neuron.transform.Transform;
 import no.ion.neuron.transform.loss.ErrorFunction;
 
 /**
@@ -18,27 +18,107 @@ public class ErrorTransform implements Transform {
         this.errorFunction = errorFunction;
     }
 
+    public ErrorFunction errorFunction() { return errorFunction; }
     @Override public int inputSize() { return inputSize; }
     @Override public int outputSize() { return 1; }
     @Override public int parameterSize() { return errorFunction.parameterSize(); }
     @Override public Vector parameters() { return errorFunction.parameters(); }
+    @Override public void moveParametersTo(Vector storage) { errorFunction.moveParametersTo(storage); }
+    @Override public int scratchSize() { return errorFunction.scratchSize(inputSize); }
 
     @Override
-    public ComputationResult compute(ComputeContext context, Vector input) {
-        ErrorFunction.Computation computation = errorFunction.compute(input, context.idealOutput());
-        return new ComputationResult() {
+    public void forward(ComputeContext context, Vector input, Vector output) {
+        if (context.hasClassLabel()) {
+            output.setElement(0, errorFunction.error(input, context.classLabel()));
+        } else {
+            output.setElement(0, errorFunction.error(input, context.idealOutput()));
+        }
+    }
+
+    @Override
+    public void backward(ComputeContext context, Vector input, Vector output, Vector errorGradientOfOutput,
+                         Vector errorGradientOfInput, Vector errorGradientOfParameters) {
+        if (context.hasClassLabel()) {
+            errorFunction.backPropagate(input, context.classLabel(), errorGradientOfInput, errorGradientOfParameters);
+        } else {
+            errorFunction.backPropagate(input, context.idealOutput(), errorGradientOfInput, errorGradientOfParameters);
+        }
+    }
+
+    /** The error function saves intermediate values of the error in the scratch vector, e.g. the softmax. */
+    @Override
+    public void forward(ComputeContext context, Vector input, Vector output, Vector scratch) {
+        if (context.hasClassLabel()) {
+            output.setElement(0, errorFunction.error(input, context.classLabel(), scratch));
+        } else {
+            output.setElement(0, errorFunction.error(input, context.idealOutput(), scratch));
+        }
+    }
+
+    @Override
+    public void backward(ComputeContext context, Vector input, Vector output, Vector scratch,
+                         Vector errorGradientOfOutput, Vector errorGradientOfInput, Vector errorGradientOfParameters) {
+        if (context.hasClassLabel()) {
+            errorFunction.backPropagate(input, context.classLabel(), scratch, errorGradientOfInput, errorGradientOfParameters);
+        } else {
+            errorFunction.backPropagate(input, context.idealOutput(), scratch, errorGradientOfInput, errorGradientOfParameters);
+        }
+    }
+
+    /**
+     * Computes the error of each sample on views of the rows, with the scratch vector of each sample in a row of
+     * one scratch matrix, and back-propagates into the rows of one gradient matrix.
+     */
+    @Override
+    public BatchComputationResult computeBatch(BatchComputeContext context, Matrix inputs) {
+        int batchSize = inputs.rows();
+        Matrix outputs = new Matrix(batchSize, 1);
+        Matrix scratch = new Matrix(batchSize, scratchSize());
+        for (int sample = 0; sample < batchSize; ++sample) {
+            Vector input = inputs.rowView(sample);
+            Vector sampleScratch = scratch.rowView(sample);
+            float error = context.hasClassLabels() ?
+                    errorFunction.error(input, context.classLabel(sample), sampleScratch) :
+                    errorFunction.error(input, context.idealOutputs().rowView(sample), sampleScratch);
+            outputs.setElement(sample, 0, error);
+        }
+
+        return new BatchComputationResult() {
             @Override
-            public Vector output() {
-                return Vector.from(computation.error());
+            public Matrix outputs() {
+                return outputs;
             }
 
             @Override
-            public BackPropagation backPropagate(Vector errorGradient) {
-                return new BackPropagationImpl(computation.errorGradientOfOutput(), computation.errorGradientOfParameters());
+            public Matrix backPropagate(Matrix errorGradientOfOutputs, Vector errorGradientOfParameters) {
+                Matrix errorGradientOfInputs = new Matrix(batchSize, inputSize);
+                for (int sample = 0; sample < batchSize; ++sample) {
+                    Vector input = inputs.rowView(sample);
+                    Vector sampleScratch = scratch.rowView(sample);
+                    Vector errorGradientOfInput = errorGradientOfInputs.rowView(sample);
+                    if (context.hasClassLabels()) {
+                        errorFunction.backPropagate(input, context.classLabel(sample), sampleScratch,
+                                errorGradientOfInput, errorGradientOfParameters);
+                    } else {
+                        errorFunction.backPropagate(input, context.idealOutputs().rowView(sample), sampleScratch,
+                                errorGradientOfInput, errorGradientOfParameters);
+                    }
+                }
+
+                return errorGradientOfInputs;
             }
         };
     }
 
+    /** The error is only defined relative to an ideal output, which is not available during inference. */
+    @Override
+    public boolean isInferable() { return false; }
+
+    @Override
+    public void infer(Vector input, Vector output) {
+        throw new UnsupportedOperationException("An ErrorTransform is not inferable, see isInferable()");
+    }
+
     @Override
     public void adjustParameters(Vector amount) {
         errorFunction.adjustParameters(amount);
@@ -2,7 +2,6 @@ package no.ion.neuron.transform;
 
 import no.ion.neuron.ComputeContext;
 import no.ion.neuron.tensor.Vector;
-import no.ion.neuron.internal.BackPropagationImpl;
 
 public class IdentityTransform implements Transform {
     private final int size;
@@ -14,18 +13,19 @@ public class IdentityTransform implements Transform {
     @Override public Vector parameters() { return new Vector(0); }
 
     @Override
-    public ComputationResult compute(ComputeContext context, Vector input) {
-        return new ComputationResult() {
-            @Override
-            public Vector output() {
-                return input;
-            }
-
-            @Override
-            public BackPropagation backPropagate(Vector errorGradientOfOutput) {
-                return new BackPropagationImpl(errorGradientOfOutput, Vector.from());
-            }
-        };
+    public void infer(Vector input, Vector output) {
+        output.assign(input);
+    }
+
+    @Override
+    public void backward(ComputeContext context, Vector input, Vector output, Vector errorGradientOfOutput,
+                         Vector errorGradientOfInput, Vector errorGradientOfParameters) {
+        errorGradientOfInput.assign(errorGradientOfOutput);
+    }
+
+    @Override
+    public Vector infer(Vector input) {
+        return input;
     }
 
     @Override
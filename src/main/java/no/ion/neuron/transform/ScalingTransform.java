@@ -1,8 +1,9 @@
 package no.ion.neuron.transform;
 
+import no.ion.neuron.BatchComputeContext;
 import no.ion.neuron.ComputeContext;
+import no.ion.neuron.tensor.Matrix;
 import no.ion.neuron.tensor.Vector;
-import no.ion.neuron.internal.BackPropagationImpl;
 
 /**
  * Scale each input value with its own scaling parameter.
@@ -19,35 +20,59 @@ public class ScalingTransform implements Transform {
     @Override public int outputSize() { return scales.size(); }
     @Override public int parameterSize() { return scales.size(); }
     @Override public Vector parameters() { return scales.copy(); }
+    @Override public void moveParametersTo(Vector storage) { scales.moveTo(storage); }
+    @Override public ScalingTransform copy() { return new ScalingTransform(scales.copy()); }
 
     @Override
-    public ComputationResult compute(ComputeContext context, Vector input) {
-        Vector output = input.copy();
-        output.scale(scales);
+    public BatchComputationResult computeBatch(BatchComputeContext context, Matrix inputs) {
+        Matrix outputs = new Matrix(inputs.rows(), outputSize());
+        for (int sample = 0; sample < inputs.rows(); ++sample) {
+            for (int i = 0; i < scales.size(); ++i) {
+                outputs.setElement(sample, i, inputs.getElement(sample, i) * scales.get(i));
+            }
+        }
 
-        return new ComputationResult() {
+        return new BatchComputationResult() {
             @Override
-            public Vector output() {
-                return output;
+            public Matrix outputs() {
+                return outputs;
             }
 
             @Override
-            public BackPropagation backPropagate(Vector errorGradientOfOutput) {
-                BackPropagationImpl backPropagation = new BackPropagationImpl(inputSize(), parameterSize());
-
-                for (int i = 0; i < inputSize(); ++i) {
-                    float gradientOfInput = errorGradientOfOutput.get(i) * scales.get(i);
-                    backPropagation.errorGradientOfInputs().setElement(i, gradientOfInput);
+            public Matrix backPropagate(Matrix errorGradientOfOutputs, Vector errorGradientOfParameters) {
+                Matrix errorGradientOfInputs = new Matrix(inputs.rows(), inputSize());
 
-                    float gradientOfParameter = errorGradientOfOutput.get(i) * input.get(i);
-                    backPropagation.errorGradientOfParameters().setElement(i, gradientOfParameter);
+                for (int sample = 0; sample < inputs.rows(); ++sample) {
+                    for (int i = 0; i < inputSize(); ++i) {
+                        float errorGradientOfOutput = errorGradientOfOutputs.getElement(sample, i);
+                        errorGradientOfInputs.setElement(sample, i, errorGradientOfOutput * scales.get(i));
+                        errorGradientOfParameters.addToElement(i, errorGradientOfOutput * inputs.getElement(sample, i));
+                    }
                 }
 
-                return backPropagation;
+                return errorGradientOfInputs;
             }
         };
     }
 
+    @Override
+    public void infer(Vector input, Vector output) {
+        output.assign(input);
+        output.scale(scales);
+    }
+
+    @Override
+    public void backward(ComputeContext context, Vector input, Vector output, Vector errorGradientOfOutput,
+                         Vector errorGradientOfInput, Vector errorGradientOfParameters) {
+        for (int i = 0; i < inputSize(); ++i) {
+            float gradientOfInput = errorGradientOfOutput.get(i) * scales.get(i);
+            errorGradientOfInput.setElement(i, gradientOfInput);
+
+            float gradientOfParameter = errorGradientOfOutput.get(i) * input.get(i);
+            errorGradientOfParameters.addToElement(i, gradientOfParameter);
+        }
+    }
+
     @Override
     public void adjustParameters(Vector amount) {
         scales.add(amount);
@@ -1,6 +1,8 @@
 package no.ion.neuron.transform;
 
+import no.ion.neuron.BatchComputeContext;
 import no.ion.neuron.ComputeContext;
+import no.ion.neuron.tensor.Matrix;
 import no.ion.neuron.tensor.Vector;
 
 /**
@@ -22,12 +24,94 @@ public interface Transform {
     /** The current value of the parameters. */
     Vector parameters();
 
-    interface BackPropagation {
-        /** dE/dXj = sum_i dE/dYi dYi/dXj, where E is the error/loss, and Xj is the j'th input (input.get(j)). */
-        Vector errorGradientOfInputs();
+    /**
+     * Move the parameters into {@code storage}, a vector of size {@link #parameterSize()}: The current values
+     * are copied to it, and from then on the transform reads and adjusts its parameters through it. This allows
+     * the parameters of all transforms of a net to live in one contiguous buffer.
+     *
+     * <p>The default implementation only supports transforms without parameters.</p>
+     */
+    default void moveParametersTo(Vector storage) {
+        if (parameterSize() != 0) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support moving its parameters");
+        }
+    }
+
+    /**
+     * Returns a transform of the same kind and shape, with a copy of the parameters, that shares no mutable
+     * state with this transform.
+     *
+     * <p>The default implementation returns this transform, and only supports transforms without parameters,
+     * which are assumed to be stateless.</p>
+     */
+    default Transform copy() {
+        if (parameterSize() != 0) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support copying");
+        }
+
+        return this;
+    }
+
+    /**
+     * Whether the transform takes part in inference. A transform that only applies to training, like the
+     * {@link ErrorTransform} appended by a Trainer, does not, and inference through a chain of transforms ends
+     * before it. Defaults to true.
+     */
+    default boolean isInferable() { return true; }
+
+    /**
+     * Compute the output of the transformation into {@code output}, a vector of size {@link #outputSize()},
+     * without modifying the state of the transform. Only supported if the transform {@link #isInferable()}.
+     */
+    void infer(Vector input, Vector output);
+
+    /**
+     * Compute the output as part of training. Defaults to {@link #infer(Vector, Vector)}, which suffices
+     * for any transform that does not depend on the context.
+     */
+    default void forward(ComputeContext context, Vector input, Vector output) {
+        infer(input, output);
+    }
+
+    /**
+     * Back-propagate the error gradient of the output of a previous {@link #forward(ComputeContext, Vector, Vector)}.
+     *
+     * <p>All vectors are owned by the caller, and the transform keeps no per-sample state: Together with
+     * {@code forward} this allows the caller to preallocate and reuse all buffers, so that training
+     * does not allocate per sample.</p>
+     *
+     * @param input                     the input that was passed to forward.
+     * @param output                    the output computed by forward.
+     * @param errorGradientOfOutput     dE/dYi, where E is the error/loss, and Yi is the i'th output.
+     * @param errorGradientOfInput      overwritten with dE/dXj = sum_i dE/dYi dYi/dXj, where Xj is the j'th input.
+     * @param errorGradientOfParameters dE/dPk = sum_i dE/dYi dYi/dPk is added to this, where Pk is the k'th parameter.
+     */
+    void backward(ComputeContext context, Vector input, Vector output, Vector errorGradientOfOutput,
+                  Vector errorGradientOfInput, Vector errorGradientOfParameters);
+
+    /**
+     * The size of the scratch vector passed to {@link #forward(ComputeContext, Vector, Vector, Vector)} and
+     * {@link #backward(ComputeContext, Vector, Vector, Vector, Vector, Vector, Vector)}, for intermediate values of
+     * a sample that are needed by the backward pass, but are neither the input nor the output. Defaults to 0.
+     */
+    default int scratchSize() { return 0; }
+
+    /**
+     * Compute the output as part of training, saving whatever intermediate values the backward pass needs
+     * in {@code scratch}, a caller-owned vector of size {@link #scratchSize()}. The default implementation
+     * ignores the scratch vector.
+     */
+    default void forward(ComputeContext context, Vector input, Vector output, Vector scratch) {
+        forward(context, input, output);
+    }
 
-        /** dE/dPk = sum_i dE/dYi dYi/dPk, where E is the error/loss, and Pk is the k'th parameter. */
-        Vector errorGradientOfParameters();
+    /**
+     * Back-propagate with the scratch vector from {@link #forward(ComputeContext, Vector, Vector, Vector)}, which
+     * may be overwritten. The default implementation ignores the scratch vector.
+     */
+    default void backward(ComputeContext context, Vector input, Vector output, Vector scratch,
+                          Vector errorGradientOfOutput, Vector errorGradientOfInput, Vector errorGradientOfParameters) {
+        backward(context, input, output, errorGradientOfOutput, errorGradientOfInput, errorGradientOfParameters);
     }
 
     interface ComputationResult {
@@ -35,18 +119,112 @@ public interface Transform {
         Vector output();
 
         /**
-         * Invoked once the error gradient of the output is known, to calculate the effect of back-propagation.
+         * Invoked once the error gradient of the output is known, to back-propagate it.
+         *
+         * <p>The gradient of the parameters is accumulated in place, so that the parameter gradients of
+         * all samples of an epoch can be summed without allocating a parameter-sized vector per sample.</p>
          *
          * @param errorGradientOfOutput dE/dYi, where E is the error/loss, and Yi is the i'th output (output().get(i)).
+         * @param errorGradientOfParameters a vector of size {@link #parameterSize()} to which
+         *                                  dE/dPk = sum_i dE/dYi dYi/dPk is added, Pk being the k'th parameter.
+         * @return dE/dXj = sum_i dE/dYi dYi/dXj, where Xj is the j'th input (input.get(j)).
+         */
+        Vector backPropagate(Vector errorGradientOfOutput, Vector errorGradientOfParameters);
+    }
+
+    /** Compute the output and capture what is needed for back-propagation, allocating new vectors for both. */
+    default ComputationResult compute(ComputeContext context, Vector input) {
+        Vector output = new Vector(outputSize());
+        Vector scratch = new Vector(scratchSize());
+        forward(context, input, output, scratch);
+
+        return new ComputationResult() {
+            @Override
+            public Vector output() {
+                return output;
+            }
+
+            @Override
+            public Vector backPropagate(Vector errorGradientOfOutput, Vector errorGradientOfParameters) {
+                Vector errorGradientOfInput = new Vector(inputSize());
+                backward(context, input, output, scratch, errorGradientOfOutput, errorGradientOfInput, errorGradientOfParameters);
+                return errorGradientOfInput;
+            }
+        };
+    }
+
+    /** The batch equivalent of {@link ComputationResult}, with one row per sample. */
+    interface BatchComputationResult {
+        /** The outputs of the transformation, with row s being the output of sample s. */
+        Matrix outputs();
+
+        /**
+         * @param errorGradientOfOutputs dE/dYi of each sample, one row per sample.
+         * @param errorGradientOfParameters a vector to which dE/dPk summed over all samples of the batch is added.
+         * @return the error gradient of the inputs, with row s being dE/dXj of sample s.
          */
-        BackPropagation backPropagate(Vector errorGradientOfOutput);
+        Matrix backPropagate(Matrix errorGradientOfOutputs, Vector errorGradientOfParameters);
     }
 
-    ComputationResult compute(ComputeContext context, Vector input);
+    /**
+     * Compute the outputs of a batch of inputs, one row per sample. The default implementation
+     * computes each sample separately: Transforms should override it with a native batch implementation.
+     */
+    default BatchComputationResult computeBatch(BatchComputeContext context, Matrix inputs) {
+        int batchSize = inputs.rows();
+        var results = new ComputationResult[batchSize];
+        Matrix outputs = new Matrix(batchSize, outputSize());
+        for (int sample = 0; sample < batchSize; ++sample) {
+            results[sample] = compute(context.sampleContext(sample), inputs.row(sample));
+            outputs.setRow(sample, results[sample].output());
+        }
+
+        return new BatchComputationResult() {
+            @Override
+            public Matrix outputs() {
+                return outputs;
+            }
+
+            @Override
+            public Matrix backPropagate(Matrix errorGradientOfOutputs, Vector errorGradientOfParameters) {
+                Matrix errorGradientOfInputs = new Matrix(batchSize, inputSize());
+                for (int sample = 0; sample < batchSize; ++sample) {
+                    Vector errorGradientOfInput = results[sample].backPropagate(errorGradientOfOutputs.row(sample), errorGradientOfParameters);
+                    errorGradientOfInputs.setRow(sample, errorGradientOfInput);
+                }
+
+                return errorGradientOfInputs;
+            }
+        };
+    }
+
+    /**
+     * Compute the output of the transformation without preparing for back-propagation, and without
+     * modifying the state of the transform. The input vector must not be modified by the caller afterwards,
+     * as it may be returned as-is.
+     */
+    default Vector infer(Vector input) {
+        Vector output = new Vector(outputSize());
+        infer(input, output);
+        return output;
+    }
+
+    /**
+     * Compute the outputs of a batch of inputs without preparing for back-propagation, one row per sample.
+     * The default implementation infers each sample separately: Transforms should override it with a
+     * native batch implementation where that is faster.
+     */
+    default Matrix inferBatch(Matrix inputs) {
+        Matrix outputs = new Matrix(inputs.rows(), outputSize());
+        for (int sample = 0; sample < inputs.rows(); ++sample) {
+            infer(inputs.rowView(sample), outputs.rowView(sample));
+        }
+        return outputs;
+    }
 
     /**
      * @param amount the amount to adjust the parameters. The {@code amount} vector has parameters matching 1-1
-     *               with the output of {@link BackPropagation#errorGradientOfParameters()}.
+     *               with the {@code errorGradientOfParameters} of {@link ComputationResult#backPropagate(Vector, Vector)}.
      */
     void adjustParameters(Vector amount);
 }
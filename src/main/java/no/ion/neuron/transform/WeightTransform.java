@@ -1,9 +1,9 @@
 package no.ion.neuron.transform;
 
+import no.ion.neuron.BatchComputeContext;
 import no.ion.neuron.ComputeContext;
 import no.ion.neuron.tensor.Matrix;
 import no.ion.neuron.tensor.Vector;
-import no.ion.neuron.internal.BackPropagationImpl;
 
 public class WeightTransform implements Transform {
     private final Matrix weight;
@@ -17,37 +17,51 @@ public class WeightTransform implements Transform {
     @Override public int outputSize() { return weight.rows(); }
     @Override public int parameterSize() { return weight.rows() * weight.columns(); }
     @Override public Vector parameters() { return weight.toVector(); }
+    @Override public void moveParametersTo(Vector storage) { weight.moveTo(storage); }
+    @Override public WeightTransform copy() { return new WeightTransform(weight.copy()); }
 
     @Override
-    public ComputationResult compute(ComputeContext context, Vector input) {
-        Vector output = weight.dot(input);
+    public BatchComputationResult computeBatch(BatchComputeContext context, Matrix inputs) {
+        // Y = X W^T, with one sample per row of X and Y
+        Matrix outputs = inputs.multiplyTransposed(weight);
 
-        return new ComputationResult() {
+        return new BatchComputationResult() {
             @Override
-            public Vector output() {
-                return output;
+            public Matrix outputs() {
+                return outputs;
             }
 
             @Override
-            public BackPropagation backPropagate(Vector errorGradientOfOutput) {
-                // dE/dXj = sum_i dE/dYi * Wij
-                Vector errorGradientOfInputs = new Vector(inputSize());
+            public Matrix backPropagate(Matrix errorGradientOfOutputs, Vector errorGradientOfParameters) {
+                // dE/dW = sum over samples of dE/dY^T X
+                errorGradientOfParameters.toMatrix(outputSize()).addProduct(errorGradientOfOutputs, true, inputs, false);
 
-                // dE/dWij = dE/dyi * xj
-                Matrix errorGradientOfParameters = new Matrix(outputSize(), inputSize());
-
-                for (int j = 0; j < inputSize(); ++j) {
-                    for (int i = 0; i < outputSize(); ++i) {
-                        errorGradientOfInputs.addToElement(j, errorGradientOfOutput.get(i) * weight.getElement(i, j));
-                        errorGradientOfParameters.setElement(i, j, errorGradientOfOutput.get(i) * input.get(j));
-                    }
-                }
-
-                return new BackPropagationImpl(errorGradientOfInputs, errorGradientOfParameters.toVector());
+                // dE/dX = dE/dY W
+                return errorGradientOfOutputs.multiply(weight);
             }
         };
     }
 
+    @Override
+    public Matrix inferBatch(Matrix inputs) {
+        return inputs.multiplyTransposed(weight);
+    }
+
+    @Override
+    public void infer(Vector input, Vector output) {
+        weight.dot(input, output);
+    }
+
+    @Override
+    public void backward(ComputeContext context, Vector input, Vector output, Vector errorGradientOfOutput,
+                         Vector errorGradientOfInput, Vector errorGradientOfParameters) {
+        // dE/dWij = dE/dyi * xj
+        errorGradientOfParameters.addOuterProduct(errorGradientOfOutput, input);
+
+        // dE/dXj = sum_i dE/dYi * Wij
+        weight.transposedDot(errorGradientOfOutput, errorGradientOfInput);
+    }
+
     @Override
     public void adjustParameters(Vector amount) {
         weight.add(amount.toMatrix(outputSize()));
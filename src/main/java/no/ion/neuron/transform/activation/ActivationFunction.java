@@ -1,10 +1,40 @@
 package no.ion.neuron.transform.activation;
 
-/** A parameter-free transform that maps each input value x to an output value f(x). */
+/**
+ * A parameter-free transform that maps each input value x to an output value f(x).
+ *
+ * <p>Besides the scalar methods, an activation function can be applied to a range of an array at a time, which lets
+ * each implementation run a tight monomorphic loop that the JIT can unroll and vectorize, instead of a call through
+ * this interface per element. The default range implementations simply call the scalar methods.</p>
+ */
 public interface ActivationFunction {
     /** y = f(x) */
     float f(float x);
 
     /** f'(x), with y = f(x). */
     float fGradient(float x, float y);
+
+    /**
+     * y[yOffset + i] = f(x[xOffset + i]) for i in [0, length). The ranges may be the same range of the same array,
+     * but must not otherwise overlap.
+     */
+    default void f(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            y[yOffset + i] = f(x[xOffset + i]);
+        }
+    }
+
+    /**
+     * Back-propagate over a range: errorGradientOfInput[i] = f'(x[i], y[i]) * errorGradientOfOutput[i], with each
+     * array indexed from its offset. The error gradient of the input may be the same range of the same array as any
+     * of the other arguments, but must not otherwise overlap them.
+     */
+    default void backPropagate(float[] x, int xOffset, float[] y, int yOffset,
+                               float[] errorGradientOfOutput, int errorGradientOfOutputOffset,
+                               float[] errorGradientOfInput, int errorGradientOfInputOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            float derivative = fGradient(x[xOffset + i], y[yOffset + i]);
+            errorGradientOfInput[errorGradientOfInputOffset + i] = derivative * errorGradientOfOutput[errorGradientOfOutputOffset + i];
+        }
+    }
 }
@@ -11,7 +11,28 @@ public class Asinh implements ActivationFunction {
 
     @Override
     public float fGradient(float x, float y) {
-        return (float) sqrt(x * x + 1);
+        return (float) (1 / sqrt(x * x + 1));
+    }
+
+    @Override
+    public void f(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            float value = x[xOffset + i];
+            float absolute = Math.abs(value);
+            float asinh = (float) log(absolute + sqrt(absolute * absolute + 1));
+            y[yOffset + i] = value < 0 ? -asinh : asinh;
+        }
+    }
+
+    @Override
+    public void backPropagate(float[] x, int xOffset, float[] y, int yOffset,
+                              float[] errorGradientOfOutput, int errorGradientOfOutputOffset,
+                              float[] errorGradientOfInput, int errorGradientOfInputOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            float input = x[xOffset + i];
+            float derivative = (float) (1 / sqrt(input * input + 1));
+            errorGradientOfInput[errorGradientOfInputOffset + i] = derivative * errorGradientOfOutput[errorGradientOfOutputOffset + i];
+        }
     }
 
     @Override
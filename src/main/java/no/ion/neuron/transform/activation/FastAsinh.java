@@ -0,0 +1,78 @@
+package no.ion.neuron.transform.activation;
+
+/**
+ * An approximation of {@link Asinh} as log(|x| + sqrt(x<sup>2</sup> + 1)), with the logarithm computed from the
+ * exponent and mantissa of the float: For t = m 2<sup>e</sup> with m in [sqrt(1/2), sqrt(2)),
+ * log(t) = e log(2) + 2 atanh(s) where s = (m - 1) / (m + 1), and atanh(s) is approximated by its Taylor polynomial
+ * of degree 7. The absolute error is at most 5e-6, and the relative error at most 2e-6 for |x| &ge; 1.
+ */
+public class FastAsinh implements ActivationFunction {
+    static final float MAX_ERROR = 5e-6f;
+
+    private static final float LN2 = 0.6931471805599453f;
+    private static final float SQRT2 = 1.4142135623730951f;
+
+    /** log(t) for positive, finite t. */
+    static float log(float t) {
+        int bits = Float.floatToRawIntBits(t);
+        int exponent = ((bits >>> 23) & 0xff) - 127;
+        float mantissa = Float.intBitsToFloat((bits & 0x007fffff) | 0x3f800000);
+        if (mantissa > SQRT2) {
+            mantissa *= 0.5f;
+            ++exponent;
+        }
+
+        float s = (mantissa - 1) / (mantissa + 1);
+        float s2 = s * s;
+        return exponent * LN2 + s * (2f + s2 * (2f / 3 + s2 * (2f / 5 + s2 * (2f / 7))));
+    }
+
+    static float asinh(float x) {
+        float absolute = Math.abs(x);
+        float asinh;
+        if (absolute < 0x1p-6f) {
+            // The Taylor polynomial avoids the cancellation in log(1 + small)
+            asinh = absolute * (1 - absolute * absolute / 6);
+        } else if (absolute > 1e9f) {
+            // x^2 + 1 = x^2 in float, and may overflow
+            asinh = log(absolute) + LN2;
+        } else {
+            asinh = log(absolute + (float) Math.sqrt(absolute * absolute + 1));
+        }
+
+        return x < 0 ? -asinh : asinh;
+    }
+
+    @Override
+    public float f(float x) {
+        return asinh(x);
+    }
+
+    @Override
+    public float fGradient(float x, float y) {
+        return (float) (1 / Math.sqrt(x * x + 1));
+    }
+
+    @Override
+    public void f(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            y[yOffset + i] = asinh(x[xOffset + i]);
+        }
+    }
+
+    @Override
+    public void backPropagate(float[] x, int xOffset, float[] y, int yOffset,
+                              float[] errorGradientOfOutput, int errorGradientOfOutputOffset,
+                              float[] errorGradientOfInput, int errorGradientOfInputOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            float input = x[xOffset + i];
+            float derivative = (float) (1 / Math.sqrt(input * input + 1));
+            errorGradientOfInput[errorGradientOfInputOffset + i] = derivative * errorGradientOfOutput[errorGradientOfOutputOffset + i];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FastAsinh{}";
+    }
+}
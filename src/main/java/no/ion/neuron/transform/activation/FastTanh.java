@@ -0,0 +1,57 @@
+package no.ion.neuron.transform.activation;
+
+/**
+ * An approximation of {@link Tanh} by the (7, 6) Padé approximant of the continued fraction of tanh, clamped to
+ * &plusmn;1 for |x| &gt; 4.97. The absolute error is at most 1e-4 (largest near the clamp), in return for being an
+ * order of magnitude faster than {@link Math#tanh(double)}.
+ */
+public class FastTanh implements ActivationFunction {
+    static final float MAX_ERROR = 1e-4f;
+
+    private static final float CLAMP = 4.97f;
+
+    static float tanh(float x) {
+        if (x > CLAMP) {
+            return 1;
+        } else if (x < -CLAMP) {
+            return -1;
+        }
+
+        float x2 = x * x;
+        float numerator = x * (135135f + x2 * (17325f + x2 * (378f + x2)));
+        float denominator = 135135f + x2 * (62370f + x2 * (3150f + x2 * 28f));
+        return numerator / denominator;
+    }
+
+    @Override
+    public float f(float x) {
+        return tanh(x);
+    }
+
+    @Override
+    public float fGradient(float x, float y) {
+        return 1 - y * y;
+    }
+
+    @Override
+    public void f(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            y[yOffset + i] = tanh(x[xOffset + i]);
+        }
+    }
+
+    @Override
+    public void backPropagate(float[] x, int xOffset, float[] y, int yOffset,
+                              float[] errorGradientOfOutput, int errorGradientOfOutputOffset,
+                              float[] errorGradientOfInput, int errorGradientOfInputOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            float output = y[yOffset + i];
+            errorGradientOfInput[errorGradientOfInputOffset + i] = (1 - output * output) * errorGradientOfOutput[errorGradientOfOutputOffset + i];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FastTanh{}";
+    }
+}
@@ -13,6 +13,9 @@ public class ReLU implements ActivationFunction {
     /** Plain ReLU */
     public ReLU() { this(0f); }
 
+    /** The slope for negative x. */
+    public float epsilon() { return epsilon; }
+
     @Override
     public float f(float x) {
         return x < 0 ? epsilon * x : x;
@@ -23,6 +26,24 @@ public class ReLU implements ActivationFunction {
         return x < 0 ? epsilon : 1;
     }
 
+    @Override
+    public void f(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            float value = x[xOffset + i];
+            y[yOffset + i] = value < 0 ? epsilon * value : value;
+        }
+    }
+
+    @Override
+    public void backPropagate(float[] x, int xOffset, float[] y, int yOffset,
+                              float[] errorGradientOfOutput, int errorGradientOfOutputOffset,
+                              float[] errorGradientOfInput, int errorGradientOfInputOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            float derivative = x[xOffset + i] < 0 ? epsilon : 1;
+            errorGradientOfInput[errorGradientOfInputOffset + i] = derivative * errorGradientOfOutput[errorGradientOfOutputOffset + i];
+        }
+    }
+
     @Override
     public String toString() {
         return "ReLU{" + epsilon + '}';
@@ -13,6 +13,23 @@ public class Sigmoid implements ActivationFunction {
         return y * (1 - y);
     }
 
+    @Override
+    public void f(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            y[yOffset + i] = (float) (1 / (1 + exp(-x[xOffset + i])));
+        }
+    }
+
+    @Override
+    public void backPropagate(float[] x, int xOffset, float[] y, int yOffset,
+                              float[] errorGradientOfOutput, int errorGradientOfOutputOffset,
+                              float[] errorGradientOfInput, int errorGradientOfInputOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            float output = y[yOffset + i];
+            errorGradientOfInput[errorGradientOfInputOffset + i] = output * (1 - output) * errorGradientOfOutput[errorGradientOfOutputOffset + i];
+        }
+    }
+
     @Override
     public String toString() {
         return "Sigmoid{}";
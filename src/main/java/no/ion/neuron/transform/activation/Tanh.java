@@ -13,6 +13,23 @@ public class Tanh implements ActivationFunction {
         return 1 - y * y;
     }
 
+    @Override
+    public void f(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            y[yOffset + i] = (float) tanh(x[xOffset + i]);
+        }
+    }
+
+    @Override
+    public void backPropagate(float[] x, int xOffset, float[] y, int yOffset,
+                              float[] errorGradientOfOutput, int errorGradientOfOutputOffset,
+                              float[] errorGradientOfInput, int errorGradientOfInputOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            float output = y[yOffset + i];
+            errorGradientOfInput[errorGradientOfInputOffset + i] = (1 - output * output) * errorGradientOfOutput[errorGradientOfOutputOffset + i];
+        }
+    }
+
     @Override
     public String toString() {
         return "Tanh{}";
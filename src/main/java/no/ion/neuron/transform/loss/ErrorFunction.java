@@ -24,8 +24,91 @@ public interface ErrorFunction {
     /** Compute the error/loss given the output of the neural network, and the ideal output of the neural network. */
     Computation compute(Vector output, Vector idealOutput);
 
+    /** The error/loss of the output, see {@link Computation#error()}. Error functions should override this to avoid allocating. */
+    default float error(Vector output, Vector idealOutput) {
+        return compute(output, idealOutput).error();
+    }
+
+    /**
+     * Overwrite {@code errorGradientOfOutput} with dE/dYj, and add dE/dPk to {@code errorGradientOfParameters}.
+     * Error functions should override this to avoid allocating.
+     */
+    default void backPropagate(Vector output, Vector idealOutput, Vector errorGradientOfOutput, Vector errorGradientOfParameters) {
+        Computation computation = compute(output, idealOutput);
+        errorGradientOfOutput.assign(computation.errorGradientOfOutput());
+        errorGradientOfParameters.add(computation.errorGradientOfParameters());
+    }
+
+    /**
+     * The error/loss of the output given a class label, which is equivalent to an ideal output that is 1 at the
+     * index classLabel and 0 elsewhere. Error functions meant for classification should override this to avoid
+     * allocating the one-hot vector.
+     */
+    default float error(Vector output, int classLabel) {
+        return error(output, oneHot(output.size(), classLabel));
+    }
+
+    /** The back-propagation given a class label, see {@link #error(Vector, int)}. */
+    default void backPropagate(Vector output, int classLabel, Vector errorGradientOfOutput, Vector errorGradientOfParameters) {
+        backPropagate(output, oneHot(output.size(), classLabel), errorGradientOfOutput, errorGradientOfParameters);
+    }
+
+    /**
+     * The size of the scratch vector of the error and back-propagation of an output of size {@code outputSize},
+     * for intermediate values of the error that the back-propagation reuses, e.g. the softmax of the output.
+     * Defaults to 0.
+     */
+    default int scratchSize(int outputSize) { return 0; }
+
+    /**
+     * The error/loss of the output, saving whatever {@link #backPropagate(Vector, Vector, Vector, Vector, Vector)}
+     * needs in {@code scratch}, a caller-owned vector of size {@link #scratchSize(int)}. The default implementation
+     * ignores the scratch vector.
+     */
+    default float error(Vector output, Vector idealOutput, Vector scratch) {
+        return error(output, idealOutput);
+    }
+
+    /** The error/loss given a class label, saving intermediate values in {@code scratch}, see {@link #error(Vector, int)}. */
+    default float error(Vector output, int classLabel, Vector scratch) {
+        return error(output, classLabel);
+    }
+
+    /**
+     * The back-propagation with the scratch vector of {@link #error(Vector, Vector, Vector)}, which may be
+     * overwritten, and may be the same vector as {@code errorGradientOfOutput}. The default implementation
+     * ignores the scratch vector.
+     */
+    default void backPropagate(Vector output, Vector idealOutput, Vector scratch, Vector errorGradientOfOutput,
+                               Vector errorGradientOfParameters) {
+        backPropagate(output, idealOutput, errorGradientOfOutput, errorGradientOfParameters);
+    }
+
+    /** The back-propagation given a class label with the scratch vector of {@link #error(Vector, int, Vector)}. */
+    default void backPropagate(Vector output, int classLabel, Vector scratch, Vector errorGradientOfOutput,
+                               Vector errorGradientOfParameters) {
+        backPropagate(output, classLabel, errorGradientOfOutput, errorGradientOfParameters);
+    }
+
+    private static Vector oneHot(int size, int classLabel) {
+        if (classLabel >= size) {
+            throw new IndexOutOfBoundsException("Class label " + classLabel + " is out of range for output size " + size);
+        }
+
+        var idealOutput = new Vector(size);
+        idealOutput.setElement(classLabel, 1);
+        return idealOutput;
+    }
+
     default int parameterSize() { return 0; }
     default Vector parameters() { return new Vector(0); }
     default void adjustParameters(Vector amount) {}
+
+    /** See {@link no.ion.neuron.transform.Transform#moveParametersTo(Vector)}. */
+    default void moveParametersTo(Vector storage) {
+        if (parameterSize() != 0) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support moving its parameters");
+        }
+    }
     String toString();
 }
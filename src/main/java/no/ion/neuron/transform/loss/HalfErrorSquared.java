@@ -25,6 +25,22 @@ public class HalfErrorSquared implements ErrorFunction {
         };
     }
 
+    @Override
+    public float error(Vector output, Vector idealOutput) {
+        float sum = 0;
+        for (int i = 0; i < output.size(); ++i) {
+            float error = output.get(i) - idealOutput.get(i);
+            sum += error * error;
+        }
+        return sum / 2f;
+    }
+
+    @Override
+    public void backPropagate(Vector output, Vector idealOutput, Vector errorGradientOfOutput, Vector errorGradientOfParameters) {
+        errorGradientOfOutput.assign(output);
+        errorGradientOfOutput.subtract(idealOutput);
+    }
+
     @Override
     public String toString() {
         return "HalfErrorSquared{}";
@@ -0,0 +1,159 @@
+package no.ion.neuron.transform.loss;
+
+import no.ion.neuron.tensor.Vector;
+
+/**
+ * The cross-entropy of the softmax of the output: The output z of the net are the logits of the classes, with
+ * the probabilities p = softmax(z), pj = exp(zj) / sum_k exp(zk), and the error E = -sum_j yj log(pj) for the
+ * ideal output y, a probability distribution over the classes.
+ *
+ * <p>Fusing the softmax into the loss avoids a separate activation, and the gradient simplifies to dE/dzj = pj - yj.
+ * log(pj) = zj - log(sum_k exp(zk)) is computed with the log-sum-exp shifted by max(z), so neither overflows nor
+ * underflows for large logits.</p>
+ *
+ * <p>With a class label, as in {@link no.ion.neuron.ComputeContext#ComputeContext(int)}, y is the one-hot vector
+ * of the label, and E = log(sum_k exp(zk)) - z<sub>label</sub> is computed without the vector.</p>
+ *
+ * <p>With a scratch vector, see {@link #scratchSize(int)}, the error is computed in one pass with p, which is
+ * saved in the scratch vector, so the back-propagation takes p - y without computing the exponentials again.</p>
+ */
+public class SoftmaxCrossEntropy implements ErrorFunction {
+    @Override
+    public Computation compute(Vector output, Vector idealOutput) {
+        Vector errorGradientOfOutput = new Vector(output.size());
+        float error = error(output, idealOutput, errorGradientOfOutput);
+        backPropagate(output, idealOutput, errorGradientOfOutput, errorGradientOfOutput, new Vector(0));
+
+        return new Computation() {
+            @Override
+            public float error() {
+                return error;
+            }
+
+            @Override
+            public Vector errorGradientOfOutput() {
+                return errorGradientOfOutput;
+            }
+        };
+    }
+
+    @Override
+    public float error(Vector output, Vector idealOutput) {
+        return crossEntropy(output, idealOutput, logSumExp(output));
+    }
+
+    @Override
+    public float error(Vector output, int classLabel) {
+        return logSumExp(output) - output.get(classLabel);
+    }
+
+    /** The scratch vector holds p = softmax(z). */
+    @Override
+    public int scratchSize(int outputSize) { return outputSize; }
+
+    @Override
+    public float error(Vector output, Vector idealOutput, Vector scratch) {
+        return crossEntropy(output, idealOutput, softmax(output, scratch));
+    }
+
+    @Override
+    public float error(Vector output, int classLabel, Vector scratch) {
+        return softmax(output, scratch) - output.get(classLabel);
+    }
+
+    /** -sum_j yj log(pj) = sum_j yj (log(sum_k exp(zk)) - zj). */
+    private static float crossEntropy(Vector output, Vector idealOutput, float logSumExp) {
+        float error = 0;
+        for (int j = 0; j < output.size(); ++j) {
+            float y = idealOutput.get(j);
+            if (y != 0) {
+                error += y * (logSumExp - output.get(j));
+            }
+        }
+        return error;
+    }
+
+    @Override
+    public void backPropagate(Vector output, Vector idealOutput, Vector errorGradientOfOutput, Vector errorGradientOfParameters) {
+        softmax(output, errorGradientOfOutput);
+        gradient(errorGradientOfOutput, idealOutput, errorGradientOfOutput);
+    }
+
+    @Override
+    public void backPropagate(Vector output, int classLabel, Vector errorGradientOfOutput, Vector errorGradientOfParameters) {
+        softmax(output, errorGradientOfOutput);
+        errorGradientOfOutput.addToElement(classLabel, -1);
+    }
+
+    @Override
+    public void backPropagate(Vector output, Vector idealOutput, Vector scratch, Vector errorGradientOfOutput,
+                              Vector errorGradientOfParameters) {
+        gradient(scratch, idealOutput, errorGradientOfOutput);
+    }
+
+    @Override
+    public void backPropagate(Vector output, int classLabel, Vector scratch, Vector errorGradientOfOutput,
+                              Vector errorGradientOfParameters) {
+        if (scratch != errorGradientOfOutput) {
+            errorGradientOfOutput.assign(scratch);
+        }
+        errorGradientOfOutput.addToElement(classLabel, -1);
+    }
+
+    /** dE/dzj = pj sum_k yk - yj, which is pj - yj when y is a probability distribution. p may be the gradient. */
+    private static void gradient(Vector p, Vector idealOutput, Vector errorGradientOfOutput) {
+        float idealSum = 0;
+        for (int j = 0; j < idealOutput.size(); ++j) {
+            idealSum += idealOutput.get(j);
+        }
+
+        for (int j = 0; j < p.size(); ++j) {
+            errorGradientOfOutput.setElement(j, p.get(j) * idealSum - idealOutput.get(j));
+        }
+    }
+
+    /** log(sum_j exp(zj)) = m + log(sum_j exp(zj - m)) with m = max(z). */
+    static float logSumExp(Vector z) {
+        float max = max(z);
+        double sum = 0;
+        for (int j = 0; j < z.size(); ++j) {
+            sum += Math.exp(z.get(j) - max);
+        }
+        return (float) (max + Math.log(sum));
+    }
+
+    /**
+     * p = softmax(z), with exp(zj - max(z)) in the numerator and denominator.
+     *
+     * @return log(sum_j exp(zj)), from the same exponentials
+     */
+    static float softmax(Vector z, Vector p) {
+        float max = max(z);
+        double sum = 0;
+        for (int j = 0; j < z.size(); ++j) {
+            float exp = (float) Math.exp(z.get(j) - max);
+            p.setElement(j, exp);
+            sum += exp;
+        }
+
+        float inverseSum = (float) (1 / sum);
+        for (int j = 0; j < z.size(); ++j) {
+            p.setElement(j, p.get(j) * inverseSum);
+        }
+
+        return (float) (max + Math.log(sum));
+    }
+
+    private static float max(Vector z) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (int j = 0; j < z.size(); ++j) {
+            max = Math.max(max, z.get(j));
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "SoftmaxCrossEntropy{}";
+    }
+}
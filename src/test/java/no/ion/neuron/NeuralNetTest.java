@@ -5,7 +5,13 @@ import no.ion.neuron.tensor.Matrix;
 import no.ion.neuron.tensor.Vector;
 import no.ion.neuron.trainer.DirectMiniBatch;
 import no.ion.neuron.trainer.Trainer;
+import no.ion.neuron.transform.BiasTransform;
+import no.ion.neuron.transform.ErrorTransform;
+import no.ion.neuron.transform.IdentityTransform;
+import no.ion.neuron.transform.ScalingTransform;
+import no.ion.neuron.transform.WeightTransform;
 import no.ion.neuron.transform.activation.ReLU;
+import no.ion.neuron.transform.activation.Tanh;
 import no.ion.neuron.transform.loss.HalfErrorSquared;
 import no.ion.neuron.transform.activation.ActivationFunction;
 import org.junit.jupiter.api.Test;
@@ -38,4 +44,101 @@ class NeuralNetTest {
                 .add(Vector.from(1), Vector.from(1));
         miniBatch.runEpochs(100);
     }
-}
\ No newline at end of file
+
+    @Test
+    void infer() {
+        net = new NeuralNet(2);
+        net.addLayers(Matrix.from(2, 1, 2, -3, 4), Vector.from(0.5f, -0.5f), new ReLU(0.1f));
+        Trainer trainer = new Trainer(net, new HalfErrorSquared(), new FixedRateOptimizer(0.1f));
+
+        Vector output = net.infer(Vector.from(1, 1));
+        assertEquals(Vector.from(3.5f, 0.5f), output);
+        assertEquals(new Vector(net.parameters().size()), net.cumulativeGradientOfParameters());
+
+        trainer.process(Vector.from(1, 1), Vector.from(3, 1));
+        assertEquals(output, net.infer(Vector.from(1, 1)));
+    }
+
+    @Test
+    void deepNetDoesNotRecurse() {
+        net = new NeuralNet(2);
+        net.addTransform(new ScalingTransform(Vector.from(2, 3)));
+        for (int i = 0; i < 20_000; ++i) {
+            net.addTransform(new IdentityTransform(2));
+        }
+
+        Vector output = net.compute(Vector.from(1, 1), Vector.from(0, 0));
+        assertEquals(Vector.from(2, 3), output);
+        assertEquals(Vector.from(1, 1), net.cumulativeGradientOfParameters());
+    }
+
+    @Test
+    void batchMatchesSingleSamples() {
+        Matrix inputs = Matrix.from(3,
+                1, -2,
+                0.5f, 3,
+                -1, 0.25f);
+        Matrix idealOutputs = Matrix.from(3,
+                1, 0,
+                0, 1,
+                0.5f, 0.5f);
+
+        NeuralNet singleNet = createNetWithAllTransforms();
+        for (int sample = 0; sample < inputs.rows(); ++sample) {
+            singleNet.compute(inputs.row(sample), idealOutputs.row(sample));
+        }
+
+        NeuralNet batchNet = createNetWithAllTransforms();
+        batchNet.computeBatch(inputs, idealOutputs);
+
+        assertEquals(singleNet.cumulativeGradientOfParameters(), batchNet.cumulativeGradientOfParameters());
+    }
+
+    private static NeuralNet createNetWithAllTransforms() {
+        var net = new NeuralNet(2);
+        net.addTransform(new ScalingTransform(Vector.from(0.5f, 2)));
+        net.addLayers(Matrix.from(2, 1, 2, -3, 4), Vector.from(0.5f, -0.5f), new Tanh());
+        net.addTransform(new IdentityTransform(2));
+        net.addTransform(new ErrorTransform(2, new HalfErrorSquared()));
+        return net;
+    }
+
+    @Test
+    void parametersLiveInOneBuffer() {
+        net = new NeuralNet(2);
+        var weight = Matrix.from(1, 1, 2);
+        var weightTransform = new WeightTransform(weight);
+        net.addTransform(weightTransform);
+        var bias = Vector.from(3);
+        net.addTransform(new BiasTransform(bias));
+        assertEquals(Vector.from(1, 2, 3), net.parameters());
+
+        net.adjustParameters(Vector.from(1, 1, 1));
+        assertEquals(Matrix.from(1, 2, 3), weightTransform.weight());
+        assertEquals(Vector.from(4), bias);
+
+        net.compute(Vector.from(1, -1), Vector.from(0));
+        assertEquals(Vector.from(1, -1, 1), net.cumulativeGradientOfParameters());
+        net.clearCumulativeErrorGradientOfParameters();
+        assertEquals(new Vector(3), net.cumulativeGradientOfParameters());
+        assertEquals(new Vector(2), net.layers().get(0).cumulativeErrorGradientOfParameters());
+    }
+
+    @Test
+    void setKeepsParametersInTheBuffer() {
+        net = new NeuralNet(2);
+        var weight = Matrix.from(1, 1, 2);
+        net.addTransform(new WeightTransform(weight));
+        var bias = Vector.from(3);
+        net.addTransform(new BiasTransform(bias));
+        assertEquals(Vector.from(1, 2, 3), net.parameters());
+
+        weight.set(5, 6);
+        bias.set(7);
+        assertEquals(Vector.from(5, 6, 7), net.parameters());
+
+        net.adjustParameters(Vector.from(1, 1, 1));
+        assertEquals(Matrix.from(1, 6, 7), weight);
+        assertEquals(Vector.from(8), bias);
+    }
+}
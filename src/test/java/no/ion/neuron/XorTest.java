@@ -1,7 +1,11 @@
 package no.ion.neuron;
 
+import no.ion.neuron.optimizer.AdamOptimizer;
 import no.ion.neuron.optimizer.AnalyticOptimizer;
 import no.ion.neuron.optimizer.FixedRateOptimizer;
+import no.ion.neuron.optimizer.MomentumOptimizer;
+import no.ion.neuron.optimizer.Optimizer;
+import no.ion.neuron.optimizer.RMSPropOptimizer;
 import no.ion.neuron.optimizer.SplineOptimizer;
 import no.ion.neuron.tensor.Matrix;
 import no.ion.neuron.tensor.Vector;
@@ -13,6 +17,7 @@ import no.ion.neuron.transform.loss.HalfErrorSquared;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class XorTest {
     private static final boolean PRINT_DEBUG = false;
@@ -145,4 +150,39 @@ public class XorTest {
 
         return null;
     }
+
+    @Test
+    void statefulOptimizers() {
+        assertConvergesWith(new MomentumOptimizer(.1f, .9f));
+        assertConvergesWith(new MomentumOptimizer(.1f, .9f, true));
+        assertConvergesWith(new RMSPropOptimizer(.01f));
+        assertConvergesWith(new AdamOptimizer(.02f));
+        assertConvergesWith(AdamOptimizer.adamW(.02f, .001f));
+
+        var analyticAdamW = new AnalyticOptimizer(AdamOptimizer.adamW(.02f, .001f));
+        assertConvergesWith(analyticAdamW);
+        assertTrue(analyticAdamW.lastEpoch().adjustments().length() > 0);
+    }
+
+    private void assertConvergesWith(Optimizer optimizer) {
+        var net = new NeuralNet(2);
+        var activationFunction = new Tanh();
+        net.addLayers(Matrix.from(2, .1f, -.1f, .2f, .3f), Vector.from(.5f, -.3f), activationFunction);
+        net.addLayers(Matrix.from(1, .4f, .5f), Vector.from(-.2f), activationFunction);
+
+        var trainer = new Trainer(net, new HalfErrorSquared(), optimizer);
+        var miniBatch = new DirectMiniBatch(trainer)
+                .add(Vector.from(0, 0), Vector.from(0))
+                .add(Vector.from(0, 1), Vector.from(1))
+                .add(Vector.from(1, 0), Vector.from(1))
+                .add(Vector.from(1, 1), Vector.from(0));
+
+        final int maxEpochs = 10000;
+        int i = miniBatch.runUntilAverageErrorInEpochIsBelow(0.001f, maxEpochs);
+        if (PRINT_DEBUG) {
+            System.out.println(optimizer + " completed after " + i + " epochs");
+        }
+
+        assertTrue(i < maxEpochs, optimizer + " did not converge");
+    }
 }
@@ -0,0 +1,94 @@
+package no.ion.neuron.data;
+
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.optimizer.FixedRateOptimizer;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.trainer.DirectMiniBatch;
+import no.ion.neuron.trainer.Trainer;
+import no.ion.neuron.transform.activation.Tanh;
+import no.ion.neuron.transform.loss.HalfErrorSquared;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MappedDataSetTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void streamsTheSamplesWritten() throws IOException {
+        var random = new Random(23);
+        var inputs = new Matrix(3, 10, () -> random.nextFloat());
+        var idealOutputs = new Matrix(2, 10, () -> random.nextFloat());
+        Path path = directory.resolve("data");
+        MappedDataSet.write(DataSource.of(inputs, idealOutputs), path);
+
+        try (var dataSet = MappedDataSet.open(path)) {
+            assertEquals(3, dataSet.inputSize());
+            assertEquals(2, dataSet.idealOutputSize());
+            assertEquals(10, dataSet.size());
+
+            SampleStream stream = dataSet.stream();
+            int row = 0;
+            for (int batchSize; (batchSize = stream.next(4)) > 0; row += batchSize) {
+                assertFalse(stream.inputs().hasArray());
+                for (int sample = 0; sample < batchSize; ++sample) {
+                    assertEquals(inputs.row(row + sample), stream.inputs().row(sample));
+                    assertEquals(idealOutputs.row(row + sample), stream.idealOutputs().row(sample));
+                }
+            }
+            assertEquals(10, row);
+            assertEquals(0, stream.next(4));
+        }
+    }
+
+    @Test
+    void trainingOnMappedDataSetMatchesAddedSamples() throws IOException {
+        Path path = directory.resolve("xor");
+        try (var writer = MappedDataSet.create(path, 2, 1, 4)) {
+            writer.add(Vector.from(0, 0), Vector.from(0));
+            writer.add(Vector.from(0, 1), Vector.from(1));
+            writer.add(Vector.from(1, 0), Vector.from(1));
+            writer.add(Vector.from(1, 1), Vector.from(0));
+        }
+
+        NeuralNet addedNet = createNet();
+        var added = new DirectMiniBatch(new Trainer(addedNet, new HalfErrorSquared(), new FixedRateOptimizer(0.1f)))
+                .add(Vector.from(0, 0), Vector.from(0))
+                .add(Vector.from(0, 1), Vector.from(1))
+                .add(Vector.from(1, 0), Vector.from(1))
+                .add(Vector.from(1, 1), Vector.from(0));
+        added.runEpochs(20);
+
+        NeuralNet mappedNet = createNet();
+        try (var dataSet = MappedDataSet.open(path)) {
+            var mapped = new DirectMiniBatch(new Trainer(mappedNet, new HalfErrorSquared(), new FixedRateOptimizer(0.1f)), dataSet);
+            mapped.runEpochs(20);
+        }
+
+        assertEquals(addedNet.parameters(), mappedNet.parameters());
+    }
+
+    @Test
+    void writerRequiresAllSamples() throws IOException {
+        var writer = MappedDataSet.create(directory.resolve("short"), 2, 1, 2);
+        writer.add(Vector.from(0, 0), Vector.from(0));
+        assertThrows(IllegalStateException.class, writer::close);
+    }
+
+    private static NeuralNet createNet() {
+        var random = new Random(23);
+        var net = new NeuralNet(2);
+        net.addLayers(new Matrix(2, 3, () -> random.nextFloat() - 0.5f), new Vector(3, 0f), new Tanh());
+        net.addLayers(new Matrix(3, 1, () -> random.nextFloat() - 0.5f), new Vector(1, 0f), new Tanh());
+        return net;
+    }
+}
@@ -0,0 +1,77 @@
+package no.ion.neuron.data;
+
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PrefetchingDataSourceTest {
+    @Test
+    void streamsPreparedBatchesInOrder() {
+        var random = new Random(24);
+        var inputs = new Matrix(2, 11, () -> random.nextFloat());
+        var idealOutputs = new Matrix(1, 11, () -> random.nextFloat());
+        var offset = Vector.from(0.5f, 0.25f);
+        var scale = Vector.from(2f, 4f);
+
+        try (var prefetching = new PrefetchingDataSource(DataSource.of(inputs, idealOutputs), 4, 3,
+                PrefetchingDataSource.normalizeInputs(offset, scale))) {
+            // Each epoch is a new stream, and the second stream reuses the buffers of the first
+            for (int epoch = 0; epoch < 2; ++epoch) {
+                SampleStream stream = prefetching.stream();
+                int row = 0;
+                for (int batchSize; (batchSize = stream.next(3)) > 0; row += batchSize) {
+                    for (int sample = 0; sample < batchSize; ++sample) {
+                        for (int i = 0; i < 2; ++i) {
+                            float expected = (inputs.getElement(row + sample, i) - offset.get(i)) * scale.get(i);
+                            assertEquals(expected, stream.inputs().getElement(sample, i));
+                        }
+                        assertEquals(idealOutputs.row(row + sample), stream.idealOutputs().row(sample));
+                    }
+                }
+                assertEquals(11, row);
+            }
+
+            // 3 prepared batches of 4, 4, and 3 samples per epoch
+            assertEquals(6, prefetching.batches());
+        }
+    }
+
+    @Test
+    void newStreamEndsThePreviousStream() {
+        var inputs = new Matrix(1, 100, () -> 1f);
+        var idealOutputs = new Matrix(1, 100, () -> 2f);
+        try (var prefetching = new PrefetchingDataSource(DataSource.of(inputs, idealOutputs), 8)) {
+            SampleStream first = prefetching.stream();
+            assertEquals(8, first.next(8));
+
+            SampleStream second = prefetching.stream();
+            assertThrows(IllegalStateException.class, () -> first.next(8));
+
+            int samples = 0;
+            for (int batchSize; (batchSize = second.next(100)) > 0; ) {
+                samples += batchSize;
+            }
+            assertEquals(100, samples);
+        }
+    }
+
+    @Test
+    void failureOfTheSourceIsThrownByTheStream() {
+        var inputs = new Matrix(1, 4, () -> 1f);
+        var idealOutputs = new Matrix(1, 4, () -> 2f);
+        PrefetchingDataSource.Preprocessor failing = (batchInputs, batchIdealOutputs) -> {
+            throw new IllegalArgumentException("bad sample");
+        };
+
+        try (var prefetching = new PrefetchingDataSource(DataSource.of(inputs, idealOutputs), 2, 2, failing)) {
+            SampleStream stream = prefetching.stream();
+            var e = assertThrows(IllegalStateException.class, () -> stream.next(2));
+            assertEquals("bad sample", e.getCause().getMessage());
+        }
+    }
+}
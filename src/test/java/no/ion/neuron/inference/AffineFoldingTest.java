@@ -0,0 +1,104 @@
+package no.ion.neuron.inference;
+
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.ActivationTransform;
+import no.ion.neuron.transform.BiasTransform;
+import no.ion.neuron.transform.DenseTransform;
+import no.ion.neuron.transform.IdentityTransform;
+import no.ion.neuron.transform.ScalingTransform;
+import no.ion.neuron.transform.WeightTransform;
+import no.ion.neuron.transform.activation.Tanh;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AffineFoldingTest {
+    @Test
+    void foldsAffineChains() {
+        var net = new NeuralNet(2);
+        net.addTransform(new ScalingTransform(Vector.from(0.5f, 2)));
+        net.addTransform(new WeightTransform(Matrix.from(3, 1, 2, -3, 4, 0.5f, -1)));
+        net.addTransform(new BiasTransform(Vector.from(0.5f, -0.5f, 0.25f)));
+        net.addTransform(new IdentityTransform(3));
+        net.addTransform(new ActivationTransform(3, new Tanh()));
+        net.addTransform(new BiasTransform(Vector.from(0.1f, 0.2f, 0.3f)));
+        net.addLayers(Matrix.from(2, 1, -1, 2, 0.5f, 0.5f, -2), Vector.from(0.1f, -0.1f), new Tanh());
+        net.addTransform(new IdentityTransform(2));
+        net.addTransform(new WeightTransform(Matrix.from(1, 1, -2)));
+
+        AffineFolding.Result result = AffineFolding.fold(net);
+
+        List<Class<?>> foldedTransforms = List.of(DenseTransform.class, DenseTransform.class, WeightTransform.class);
+        assertEquals(foldedTransforms.size(), result.net().transforms().size());
+        for (int i = 0; i < foldedTransforms.size(); ++i) {
+            assertEquals(foldedTransforms.get(i), result.net().transforms().get(i).getClass());
+        }
+
+        // 2 + 12 + 3 + 0 + 3 + 3 + (12 + 4) + 0 + 4 before, and (12 + 6) + (12 + 4) + 4 after
+        assertEquals(43, result.flopsBefore());
+        assertEquals(38, result.flopsAfter());
+        assertEquals(5, result.flopsSaved());
+        assertTrue(result.maxDifference() < 1e-5f, result.toString());
+
+        // The folded net does not share parameters with the original
+        Vector input = Vector.from(0.3f, -0.7f);
+        Vector output = net.infer(input);
+        result.net().adjustParameters(new Vector(result.net().parameters().size(), 1f));
+        assertEquals(output, net.infer(input));
+    }
+
+    @Test
+    void keepsScalingWithoutWeight() {
+        var net = new NeuralNet(256);
+        net.addTransform(new ScalingTransform(new Vector(256, 0.5f)));
+        net.addTransform(new ActivationTransform(256, new Tanh()));
+
+        AffineFolding.Result result = AffineFolding.fold(net);
+
+        assertTransforms(result.net(), ScalingTransform.class, ActivationTransform.class);
+        assertEquals(512, result.flopsBefore());
+        assertEquals(512, result.flopsAfter());
+    }
+
+    @Test
+    void foldsScalingIntoDenseWeight() {
+        var net = new NeuralNet(2);
+        net.addTransform(new ScalingTransform(Vector.from(0.5f, 2)));
+        net.addLayers(Matrix.from(2, 1, -1, 2, 0.5f), Vector.from(0.1f, -0.1f), new Tanh());
+
+        AffineFolding.Result result = AffineFolding.fold(net);
+
+        assertTransforms(result.net(), DenseTransform.class);
+        assertEquals(2 + 12, result.flopsBefore());
+        assertEquals(12, result.flopsAfter());
+        assertTrue(result.maxDifference() < 1e-6f, result.toString());
+    }
+
+    @Test
+    void keepsBottleneck() {
+        var random = new Random(1);
+        var net = new NeuralNet(1000);
+        net.addTransform(new WeightTransform(new Matrix(1000, 10, () -> random.nextFloat() - 0.5f)));
+        net.addTransform(new WeightTransform(new Matrix(10, 1000, () -> random.nextFloat() - 0.5f)));
+
+        AffineFolding.Result result = AffineFolding.fold(net);
+
+        assertTransforms(result.net(), WeightTransform.class, WeightTransform.class);
+        assertEquals(40_000, result.flopsBefore());
+        assertEquals(40_000, result.flopsAfter());
+        assertEquals(0f, result.maxDifference());
+    }
+
+    private static void assertTransforms(NeuralNet net, Class<?>... transformClasses) {
+        assertEquals(transformClasses.length, net.transforms().size());
+        for (int i = 0; i < transformClasses.length; ++i) {
+            assertEquals(transformClasses[i], net.transforms().get(i).getClass());
+        }
+    }
+}
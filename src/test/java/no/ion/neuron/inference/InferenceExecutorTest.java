@@ -0,0 +1,106 @@
+package no.ion.neuron.inference;
+
+import no.ion.neuron.ComputeContext;
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.Transform;
+import no.ion.neuron.transform.activation.Tanh;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InferenceExecutorTest {
+    @Test
+    void batchesConcurrentRequests() {
+        var random = new Random(9);
+        var net = new NeuralNet(4);
+        net.addLayers(new Matrix(4, 6, () -> random.nextFloat() - 0.5f), new Vector(6, 0.1f), new Tanh());
+        net.addLayers(new Matrix(6, 2, () -> random.nextFloat() - 0.5f), new Vector(2, -0.1f), new Tanh());
+        InferenceModel model = net.inferenceModel();
+
+        final int requests = 200;
+        var inputs = new ArrayList<Vector>();
+        for (int i = 0; i < requests; ++i) {
+            inputs.add(new Vector(4, () -> random.nextFloat()));
+        }
+
+        try (var executor = new InferenceExecutor(model, 16, Duration.ofMillis(5))) {
+            var futures = new ArrayList<CompletableFuture<Vector>>();
+            for (Vector input : inputs) {
+                futures.add(executor.submit(input));
+            }
+
+            for (int i = 0; i < requests; ++i) {
+                Vector expected = net.infer(inputs.get(i));
+                Vector actual = futures.get(i).join();
+                for (int j = 0; j < expected.size(); ++j) {
+                    assertEquals(expected.get(j), actual.get(j), 1e-6f);
+                }
+            }
+
+            InferenceExecutor.Metrics metrics = executor.metrics();
+            assertEquals(requests, metrics.completedRequests());
+            assertEquals(0, metrics.queueDepth());
+
+            long[] histogram = metrics.batchSizeHistogram();
+            long samples = 0;
+            for (int size = 0; size < histogram.length; ++size) {
+                samples += size * histogram[size];
+            }
+            assertEquals(requests, samples);
+            assertTrue(metrics.batches(16) > 0, metrics.toString());
+            assertTrue(metrics.latency(50).compareTo(metrics.latency(99)) <= 0);
+
+            assertThrows(CompletionException.class, () -> executor.submit(new Vector(3)).join());
+        }
+    }
+
+    @Test
+    void failsRequestsAfterClose() {
+        var model = new InferenceModel(2, new ArrayList<>());
+        var executor = new InferenceExecutor(model, 4, Duration.ofMillis(1));
+        assertEquals(Vector.from(1, 2), executor.submit(Vector.from(1, 2)).join());
+        executor.close();
+
+        assertThrows(CompletionException.class, () -> executor.submit(Vector.from(1, 2)).join());
+    }
+
+    @Test
+    void errorFailsOnlyItsBatch() {
+        var failNext = new AtomicBoolean(true);
+        var transform = new Transform() {
+            @Override public int inputSize() { return 2; }
+            @Override public int outputSize() { return 2; }
+            @Override public int parameterSize() { return 0; }
+            @Override public Vector parameters() { return new Vector(0); }
+            @Override public void adjustParameters(Vector amount) {}
+            @Override public void backward(ComputeContext context, Vector input, Vector output, Vector errorGradientOfOutput,
+                                           Vector errorGradientOfInput, Vector errorGradientOfParameters) {}
+
+            @Override
+            public void infer(Vector input, Vector output) {
+                if (failNext.getAndSet(false)) {
+                    throw new AssertionError("Failing the first batch");
+                }
+                output.assign(input);
+            }
+        };
+
+        try (var executor = new InferenceExecutor(new InferenceModel(2, List.of(transform)), 1, Duration.ZERO)) {
+            CompletionException failure = assertThrows(CompletionException.class, () -> executor.submit(Vector.from(1, 2)).join());
+            assertTrue(failure.getCause() instanceof AssertionError, failure.toString());
+            assertEquals(Vector.from(3, 4), executor.submit(Vector.from(3, 4)).join());
+        }
+    }
+}
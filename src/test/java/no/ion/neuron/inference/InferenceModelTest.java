@@ -0,0 +1,94 @@
+package no.ion.neuron.inference;
+
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.optimizer.FixedRateOptimizer;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.trainer.Trainer;
+import no.ion.neuron.transform.ErrorTransform;
+import no.ion.neuron.transform.ScalingTransform;
+import no.ion.neuron.transform.activation.Sigmoid;
+import no.ion.neuron.transform.activation.Tanh;
+import no.ion.neuron.transform.loss.HalfErrorSquared;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InferenceModelTest {
+    @Test
+    void snapshotIsUnaffectedByTraining() {
+        var net = new NeuralNet(2);
+        net.addTransform(new ScalingTransform(Vector.from(1, 2)));
+        net.addLayers(Matrix.from(2, .1f, -.1f, .2f, .3f), Vector.from(.5f, -.3f), new Tanh());
+        net.addLayers(Matrix.from(1, .4f, .5f), Vector.from(-.2f), new Sigmoid());
+        var trainer = new Trainer(net, new HalfErrorSquared(), new FixedRateOptimizer(0.5f));
+
+        InferenceModel model = trainer.inferenceModel();
+        var input = Vector.from(1, 0);
+        Vector before = net.infer(input);
+        assertEquals(before, model.infer(input));
+        assertEquals(2, model.inputSize());
+        assertEquals(1, model.outputSize());
+        assertEquals(2 + 6 + 3, model.parameterSize());
+
+        trainer.process(input, Vector.from(1));
+        trainer.learn();
+
+        assertNotEquals(before, net.infer(input));
+        assertEquals(before, model.infer(input));
+    }
+
+    @Test
+    void errorTransformIsNotInferable() {
+        var errorTransform = new ErrorTransform(2, new HalfErrorSquared());
+        assertThrows(IllegalArgumentException.class,
+                () -> new InferenceModel(2, List.of(new ScalingTransform(Vector.from(1, 2)), errorTransform)));
+    }
+
+    @Test
+    void concurrentInference() throws InterruptedException, ExecutionException {
+        var random = new Random(3);
+        var net = new NeuralNet(16);
+        net.addLayers(new Matrix(16, 32, () -> random.nextFloat() - 0.5f), new Vector(32, 0.1f), new Tanh());
+        net.addLayers(new Matrix(32, 8, () -> random.nextFloat() - 0.5f), new Vector(8, -0.1f), new Sigmoid());
+        InferenceModel model = net.inferenceModel();
+
+        final int samples = 50;
+        var inputs = new Vector[samples];
+        var expected = new Vector[samples];
+        for (int i = 0; i < samples; ++i) {
+            inputs[i] = new Vector(16, () -> random.nextFloat());
+            expected[i] = net.infer(inputs[i]);
+        }
+
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for (int thread = 0; thread < 32; ++thread) {
+                futures.add(executor.submit(() -> {
+                    var output = new Vector(8);
+                    for (int iteration = 0; iteration < 200; ++iteration) {
+                        int sample = iteration % samples;
+                        model.infer(inputs[sample], output);
+                        assertEquals(expected[sample], output);
+                    }
+                }));
+            }
+
+            for (var future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
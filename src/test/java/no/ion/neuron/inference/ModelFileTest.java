@@ -0,0 +1,78 @@
+package no.ion.neuron.inference;
+
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.optimizer.FixedRateOptimizer;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.trainer.Trainer;
+import no.ion.neuron.transform.ActivationTransform;
+import no.ion.neuron.transform.BiasTransform;
+import no.ion.neuron.transform.IdentityTransform;
+import no.ion.neuron.transform.ScalingTransform;
+import no.ion.neuron.transform.WeightTransform;
+import no.ion.neuron.transform.activation.ReLU;
+import no.ion.neuron.transform.activation.Tanh;
+import no.ion.neuron.transform.loss.SoftmaxCrossEntropy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelFileTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void writeAndMap() throws IOException {
+        var random = new Random(13);
+        var net = new NeuralNet(3);
+        net.addTransform(new ScalingTransform(Vector.from(1, 2, 3)));
+        net.addLayers(new Matrix(3, 5, () -> random.nextFloat() - 0.5f), new Vector(5, 0.1f), new Tanh());
+        net.addTransform(new IdentityTransform(5));
+        net.addTransform(new WeightTransform(new Matrix(5, 4, () -> random.nextFloat() - 0.5f)));
+        net.addTransform(new BiasTransform(Vector.from(-1, 0, 1, 2)));
+        net.addTransform(new ActivationTransform(4, new ReLU(0.25f)));
+        new Trainer(net, new SoftmaxCrossEntropy(), new FixedRateOptimizer(0.1f));
+
+        Path path = directory.resolve("model.bin");
+        ModelFile.write(net, path);
+
+        Vector input = Vector.from(0.5f, -1, 2);
+        Matrix inputs = new Matrix(3, 7, () -> random.nextFloat());
+        try (MappedModel mapped = ModelFile.map(path)) {
+            assertEquals(3, mapped.inputSize());
+            assertEquals(7, mapped.transforms().size());
+            assertTrue(mapped.errorFunction() instanceof SoftmaxCrossEntropy);
+
+            InferenceModel model = mapped.inferenceModel();
+            assertEquals(net.inferenceModel().parameterSize(), model.parameterSize());
+            assertEquals(net.infer(input), model.infer(input));
+            assertEquals(net.inferenceModel().inferBatch(inputs), model.inferBatch(inputs));
+
+            NeuralNet copy = mapped.toNeuralNet();
+            assertEquals(net.infer(input), copy.infer(input));
+            assertEquals(net.parameters(), copy.parameters());
+
+            WeightTransform weightTransform = (WeightTransform) mapped.transforms().get(3);
+            assertThrows(ReadOnlyBufferException.class, () -> weightTransform.weight().setElement(0, 0, 1));
+        }
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path path = directory.resolve("other.bin");
+        Files.write(path, new byte[100]);
+        assertThrows(IOException.class, () -> ModelFile.map(path));
+
+        Files.write(path, new byte[3]);
+        assertThrows(IOException.class, () -> ModelFile.map(path));
+    }
+}
@@ -0,0 +1,54 @@
+package no.ion.neuron.tensor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Verifies the selected kernels against the scalar kernels, including lengths that are not a multiple of any species. */
+class KernelsTest {
+    private final Kernels kernels = Kernels.INSTANCE;
+    private final Kernels scalar = new ScalarKernels();
+    private final Random random = new Random(3);
+
+    @Test
+    void verifyAgainstScalarKernels() {
+        for (int length : new int[] { 0, 1, 2, 7, 8, 15, 16, 17, 33, 64, 100, 1027 }) {
+            int offset = length % 3;
+            float[] a = randomArray(offset + length);
+            float[] b = randomArray(offset + length);
+            float tolerance = 1e-5f * (length + 1);
+
+            assertEquals(scalar.dot(a, offset, b, offset, length), kernels.dot(a, offset, b, offset, length), tolerance);
+            assertEquals(scalar.sumOfSquares(a, offset, length), kernels.sumOfSquares(a, offset, length), tolerance);
+
+            assertElementWise(a, b, offset, length, (k, x, y) -> k.add(x, offset, y, offset, length));
+            assertElementWise(a, b, offset, length, (k, x, y) -> k.subtract(x, offset, y, offset, length));
+            assertElementWise(a, b, offset, length, (k, x, y) -> k.multiply(x, offset, y, offset, length));
+            assertElementWise(a, b, offset, length, (k, x, y) -> k.multiplyScalar(x, offset, length, -1.5f));
+            assertElementWise(a, b, offset, length, (k, x, y) -> k.axpy(0.25f, y, offset, x, offset, length));
+        }
+    }
+
+    private interface Operation {
+        void apply(Kernels kernels, float[] a, float[] b);
+    }
+
+    private void assertElementWise(float[] a, float[] b, int offset, int length, Operation operation) {
+        float[] expected = a.clone();
+        operation.apply(scalar, expected, b);
+        float[] actual = a.clone();
+        operation.apply(kernels, actual, b);
+        assertArrayEquals(expected, actual, 1e-6f, kernels.name() + " with length " + length + " and offset " + offset);
+    }
+
+    private float[] randomArray(int length) {
+        float[] array = new float[length];
+        for (int i = 0; i < length; ++i) {
+            array[i] = random.nextFloat() * 2 - 1;
+        }
+        return array;
+    }
+}
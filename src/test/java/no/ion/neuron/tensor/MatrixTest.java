@@ -0,0 +1,180 @@
+package no.ion.neuron.tensor;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MatrixTest {
+    private final Random random = new Random(17);
+
+    @Test
+    void smallProducts() {
+        var a = Matrix.from(2,
+                1, 2, 3,
+                4, 5, 6);
+        var b = Matrix.from(3,
+                1, 0,
+                0, 1,
+                2, -1);
+
+        assertEquals(Matrix.from(2, 7, -1, 16, -1), a.multiply(b));
+        assertEquals(Matrix.from(2, 14, 32, 32, 77), a.multiplyTransposed(a));
+        assertEquals(Matrix.from(3, 17, 22, 27, 22, 29, 36, 27, 36, 45), a.transposedMultiply(a));
+        assertThrows(IllegalArgumentException.class, () -> a.multiply(a));
+    }
+
+    @Test
+    void transposedDotAndOuterProduct() {
+        var matrix = Matrix.from(2,
+                1, 2, 3,
+                4, 5, 6);
+        assertEquals(Vector.from(-7, -8, -9), matrix.transposedDot(Vector.from(1, -2)));
+        assertThrows(IllegalArgumentException.class, () -> matrix.transposedDot(Vector.from(1, 2, 3)));
+
+        matrix.addOuterProduct(Vector.from(1, -1), Vector.from(1, 0, 2));
+        assertEquals(Matrix.from(2, 2, 2, 5, 3, 5, 4), matrix);
+        assertThrows(IllegalArgumentException.class, () -> matrix.addOuterProduct(Vector.from(1, 2, 3), Vector.from(1, 2)));
+    }
+
+    @Test
+    void rowViewElementsAreBoundedByTheRow() {
+        var matrix = Matrix.from(2,
+                1, 2, 3,
+                4, 5, 6);
+        Vector row = matrix.rowView(0);
+        assertEquals(3, row.get(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> row.get(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> row.setElement(3, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> row.addToElement(-1, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> matrix.rowView(1).get(-1));
+        assertEquals(Matrix.from(2, 1, 2, 3, 4, 5, 6), matrix);
+    }
+
+    @Test
+    void verifyAgainstNaiveProduct() {
+        // Shapes that are not multiples of the register tile (4x4) or the cache blocks (MC=128, KC=256)
+        int[][] shapes = {
+                { 1, 1, 1 },
+                { 3, 5, 7 },
+                { 4, 4, 4 },
+                { 5, 9, 3 },
+                { 17, 1, 33 },
+                { 1, 130, 2 },
+                { 67, 29, 257 },
+                { 131, 7, 300 },
+                { 129, 133, 513 },
+        };
+
+        for (int[] shape : shapes) {
+            int m = shape[0];
+            int n = shape[1];
+            int k = shape[2];
+
+            for (boolean transposeLhs : new boolean[] { false, true }) {
+                for (boolean transposeRhs : new boolean[] { false, true }) {
+                    Matrix lhs = transposeLhs ? randomMatrix(k, m) : randomMatrix(m, k);
+                    Matrix rhs = transposeRhs ? randomMatrix(n, k) : randomMatrix(k, n);
+                    Matrix initial = randomMatrix(m, n);
+
+                    Matrix expected = naiveProduct(lhs, transposeLhs, rhs, transposeRhs);
+                    if (!transposeLhs && !transposeRhs) {
+                        assertClose(expected, lhs.multiply(rhs), k);
+                    } else if (!transposeLhs) {
+                        assertClose(expected, lhs.multiplyTransposed(rhs), k);
+                    } else if (!transposeRhs) {
+                        assertClose(expected, lhs.transposedMultiply(rhs), k);
+                    }
+
+                    Matrix accumulated = initial.copy();
+                    accumulated.addProduct(lhs, transposeLhs, rhs, transposeRhs);
+                    expected.add(initial);
+                    assertClose(expected, accumulated, k);
+                }
+            }
+        }
+    }
+
+    @Test
+    void addProductDoesNotAllocate() {
+        Matrix lhs = randomMatrix(32, 48);
+        Matrix rhs = randomMatrix(48, 16);
+        try (var arena = new OffHeapArena()) {
+            for (Matrix product : new Matrix[] { new Matrix(32, 16), arena.allocateMatrix(32, 16) }) {
+                // Warm up, e.g. the packed panels of the thread and JIT compilation.
+                for (int i = 0; i < 2_000; ++i) {
+                    product.addProduct(lhs, false, rhs, false);
+                }
+
+                var threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                long threadId = Thread.currentThread().getId();
+                final int calls = 1_000;
+                long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+                for (int i = 0; i < calls; ++i) {
+                    product.addProduct(lhs, false, rhs, false);
+                }
+                long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+                // At most the small wrapper of a heap array in a buffer per operand
+                assertTrue(allocated / calls < 32 * 16, "Allocated " + allocated + " bytes in " + calls + " calls");
+            }
+        }
+    }
+
+        @Test
+    void identicalToNaiveProductWithinOneBlock() {
+        Matrix lhs = randomMatrix(37, 200);
+        Matrix rhs = randomMatrix(200, 11);
+        Matrix expected = new Matrix(37, 11);
+        for (int i = 0; i < 37; ++i) {
+            for (int j = 0; j < 11; ++j) {
+                float sum = 0.0f;
+                for (int k = 0; k < 200; ++k) {
+                    sum += lhs.getElement(i, k) * rhs.getElement(k, j);
+                }
+                expected.setElement(i, j, sum);
+            }
+        }
+
+        assertEquals(expected, lhs.multiply(rhs));
+    }
+
+    private static Matrix naiveProduct(Matrix lhs, boolean transposeLhs, Matrix rhs, boolean transposeRhs) {
+        int m = transposeLhs ? lhs.columns() : lhs.rows();
+        int k = transposeLhs ? lhs.rows() : lhs.columns();
+        int n = transposeRhs ? rhs.rows() : rhs.columns();
+        Matrix result = new Matrix(m, n);
+        for (int i = 0; i < m; ++i) {
+            for (int j = 0; j < n; ++j) {
+                double sum = 0;
+                for (int p = 0; p < k; ++p) {
+                    float a = transposeLhs ? lhs.getElement(p, i) : lhs.getElement(i, p);
+                    float b = transposeRhs ? rhs.getElement(j, p) : rhs.getElement(p, j);
+                    sum += (double) a * b;
+                }
+                result.setElement(i, j, (float) sum);
+            }
+        }
+        return result;
+    }
+
+    private static void assertClose(Matrix expected, Matrix actual, int k) {
+        assertEquals(expected.rows(), actual.rows());
+        assertEquals(expected.columns(), actual.columns());
+        float tolerance = 1e-6f * k + 1e-5f;
+        for (int i = 0; i < expected.rows(); ++i) {
+            for (int j = 0; j < expected.columns(); ++j) {
+                assertEquals(expected.getElement(i, j), actual.getElement(i, j), tolerance,
+                        "element (" + i + ", " + j + ")");
+            }
+        }
+    }
+
+    private Matrix randomMatrix(int rows, int columns) {
+        return new Matrix(columns, rows, () -> random.nextFloat() * 2 - 1);
+    }
+}
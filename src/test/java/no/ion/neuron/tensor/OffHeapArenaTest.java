@@ -0,0 +1,124 @@
+package no.ion.neuron.tensor;
+
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.inference.InferenceModel;
+import no.ion.neuron.transform.BiasTransform;
+import no.ion.neuron.transform.WeightTransform;
+import no.ion.neuron.transform.activation.Tanh;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapArenaTest {
+    private final Random random = new Random(5);
+
+    @Test
+    void operationsMatchHeap() {
+        try (var arena = new OffHeapArena()) {
+            Vector a = new Vector(7, () -> random.nextFloat() - 0.5f);
+            Vector b = new Vector(7, () -> random.nextFloat() - 0.5f);
+            Vector offHeapA = arena.copyOf(a);
+            Vector offHeapB = arena.copyOf(b);
+            assertFalse(offHeapA.hasArray());
+            assertThrows(UnsupportedOperationException.class, offHeapA::array);
+            assertEquals(a, offHeapA);
+            assertEquals(a.hashCode(), offHeapA.hashCode());
+            assertEquals(a.dot(b), offHeapA.dot(offHeapB));
+            assertEquals(a.squared(), offHeapA.squared());
+
+            a.add(b);
+            offHeapA.add(offHeapB);
+            assertEquals(a, offHeapA);
+            a.subtract(offHeapB);
+            offHeapA.subtract(b);
+            assertEquals(a, offHeapA);
+            a.scale(b);
+            offHeapA.scale(offHeapB);
+            assertEquals(a, offHeapA);
+            offHeapA.view(2, 3).clear();
+            a.view(2, 3).clear();
+            assertEquals(a, offHeapA);
+
+            Matrix m = Matrix.from(6, new Vector(30, () -> random.nextFloat() - 0.5f).array());
+            Matrix offHeapM = arena.copyOf(m);
+            assertEquals(m, offHeapM);
+            Matrix x = Matrix.from(4, new Vector(20, () -> random.nextFloat() - 0.5f).array());
+            assertEquals(x.multiplyTransposed(m), x.multiplyTransposed(offHeapM));
+            assertEquals(m.multiply(x.copy().transposedMultiply(x)), offHeapM.multiply(x.copy().transposedMultiply(x)));
+            assertEquals(m.dot(a.view(0, 5)), offHeapM.dot(offHeapA.view(0, 5)));
+            assertEquals(m.transposedDot(a.view(0, 6)), offHeapM.transposedDot(a.view(0, 6)));
+
+            Matrix product = Matrix.from(6, new Vector(24, () -> random.nextFloat()).array());
+            Matrix offHeapProduct = arena.copyOf(product);
+            product.addProduct(m, false, x, true);
+            offHeapProduct.addProduct(offHeapM, false, x, true);
+            assertEquals(product, offHeapProduct);
+
+            assertEquals(7 * Float.BYTES * 2 + 30 * Float.BYTES + 24 * Float.BYTES, arena.allocatedBytes());
+        }
+    }
+
+    @Test
+    void moveToOffHeapStorage() {
+        try (var arena = new OffHeapArena()) {
+            Vector storage = arena.allocateVector(8);
+            Matrix matrix = Matrix.from(2, 1, 2, 3, 4);
+            matrix.moveTo(storage.view(4, 4));
+            assertFalse(matrix.hasArray());
+            assertEquals(3, storage.get(6));
+
+            matrix.setElement(0, 0, 5);
+            assertEquals(5, storage.get(4));
+            assertEquals(Vector.from(5, 2), matrix.row(0));
+            assertTrue(matrix.row(0).hasArray());
+        }
+    }
+
+    @Test
+    void closedArenaInvalidatesTensors() {
+        var arena = new OffHeapArena();
+        Vector vector = arena.allocateVector(3);
+        Vector view = vector.view(1, 2);
+        Matrix matrix = vector.toMatrix(1);
+        assertTrue(arena.isAlive());
+        vector.setElement(0, 2);
+
+        // E.g. a kernel on another thread, in progress when the arena is closed
+        FloatBuffer inProgress = vector.buffer();
+
+        arena.close();
+        assertEquals(2, inProgress.get(0));
+        assertFalse(arena.isAlive());
+        assertEquals(0, arena.allocatedBytes());
+        assertThrows(IllegalStateException.class, () -> vector.get(0));
+        assertThrows(IllegalStateException.class, () -> view.setElement(0, 1));
+        assertThrows(IllegalStateException.class, () -> matrix.getElement(0, 0));
+        assertThrows(IllegalStateException.class, () -> arena.allocateVector(1));
+    }
+
+    @Test
+    void offHeapInferenceModel() {
+        var net = new NeuralNet(4);
+        net.addLayers(new Matrix(4, 8, () -> random.nextFloat() - 0.5f), new Vector(8, 0.1f), new Tanh());
+        net.addTransform(new WeightTransform(new Matrix(8, 3, () -> random.nextFloat() - 0.5f)));
+        net.addTransform(new BiasTransform(Vector.from(1, 2, 3)));
+        InferenceModel heapModel = net.inferenceModel();
+        Matrix inputs = new Matrix(4, 5, () -> random.nextFloat());
+
+        try (var arena = new OffHeapArena()) {
+            InferenceModel model = net.inferenceModel(arena);
+            assertEquals(heapModel.parameterSize() * Float.BYTES, arena.allocatedBytes());
+            assertEquals(heapModel.parameterSize(), model.parameterSize());
+            for (int sample = 0; sample < inputs.rows(); ++sample) {
+                assertEquals(heapModel.infer(inputs.row(sample)), model.infer(inputs.row(sample)));
+            }
+            assertEquals(heapModel.inferBatch(inputs), model.inferBatch(inputs));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package no.ion.neuron.trainer;
+
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.optimizer.AdamOptimizer;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.activation.Tanh;
+import no.ion.neuron.transform.loss.HalfErrorSquared;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CheckpointerTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void resumeMatchesUninterruptedTraining() throws IOException {
+        Path path = directory.resolve("checkpoint");
+        var original = new Training();
+        try (var checkpointer = new Checkpointer(original.trainer, path, 1, 4)) {
+            original.trainer.addEpochListener(checkpointer);
+            for (int epoch = 0; epoch < 10; ++epoch) {
+                original.miniBatch.runEpoch();
+                checkpointer.flush();
+            }
+            assertEquals(10, checkpointer.written());
+            assertEquals(0, checkpointer.skipped());
+        }
+
+        var resumed = new Training();
+        assertEquals(10, Checkpointer.restore(resumed.trainer, path));
+        assertEquals(10, resumed.trainer.epochs());
+        assertEquals(original.net.parameters(), resumed.net.parameters());
+
+        // Includes the state of the optimizer
+        original.miniBatch.runEpochs(5);
+        resumed.miniBatch.runEpochs(5);
+        assertEquals(original.net.parameters(), resumed.net.parameters());
+    }
+
+    @Test
+    void tornCheckpointIsIgnored() throws IOException {
+        Path path = directory.resolve("checkpoint");
+        var training = new Training();
+        Vector parametersOfEpoch9 = null;
+        try (var checkpointer = new Checkpointer(training.trainer, path, 1, 4)) {
+            training.trainer.addEpochListener(checkpointer);
+            for (int epoch = 1; epoch <= 10; ++epoch) {
+                training.miniBatch.runEpoch();
+                checkpointer.flush();
+                if (epoch == 9) {
+                    parametersOfEpoch9 = training.net.parameters().copy();
+                }
+            }
+        }
+
+        try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        var resumed = new Training();
+        assertEquals(9, Checkpointer.restore(resumed.trainer, path));
+        assertEquals(parametersOfEpoch9, resumed.net.parameters());
+    }
+
+    private static class Training {
+        private final NeuralNet net;
+        private final Trainer trainer;
+        private final DirectMiniBatch miniBatch;
+
+        Training() {
+            var random = new Random(22);
+            net = new NeuralNet(2);
+            net.addLayers(new Matrix(2, 4, () -> random.nextFloat() - 0.5f), new Vector(4, 0f), new Tanh());
+            net.addLayers(new Matrix(4, 1, () -> random.nextFloat() - 0.5f), new Vector(1, 0f), new Tanh());
+            trainer = new Trainer(net, new HalfErrorSquared(), new AdamOptimizer(0.05f));
+            miniBatch = new DirectMiniBatch(trainer)
+                    .add(Vector.from(0, 0), Vector.from(0))
+                    .add(Vector.from(0, 1), Vector.from(1))
+                    .add(Vector.from(1, 0), Vector.from(1))
+                    .add(Vector.from(1, 1), Vector.from(0));
+        }
+    }
+}
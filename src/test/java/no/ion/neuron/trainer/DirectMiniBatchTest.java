@@ -0,0 +1,54 @@
+package no.ion.neuron.trainer;
+
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.optimizer.MomentumOptimizer;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.BiasTransform;
+import no.ion.neuron.transform.WeightTransform;
+import no.ion.neuron.transform.loss.HalfErrorSquared;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectMiniBatchTest {
+    @Test
+    void shuffledMiniBatchesConvergeInFewerEpochs() {
+        var fullBatch = new Regression();
+        int fullBatchEpochs = fullBatch.miniBatch.runUntilAverageErrorInEpochIsBelow(1e-5f, 10_000);
+
+        var shuffled = new Regression();
+        shuffled.miniBatch.useShuffledMiniBatches(16, new Random(25));
+        int shuffledEpochs = shuffled.miniBatch.runUntilAverageErrorInEpochIsBelow(1e-5f, 10_000);
+
+        assertTrue(fullBatchEpochs < 10_000, "Full batch did not converge");
+        assertTrue(shuffledEpochs * 4 < fullBatchEpochs, shuffledEpochs + " vs " + fullBatchEpochs + " epochs");
+
+        // 256 samples make 16 mini-batches, with one learning step each, per epoch
+        assertEquals((shuffledEpochs + 1) * 16, shuffled.trainer.epochs());
+    }
+
+    /** Fits y = 0.5 a - 0.25 b + 0.1 with a linear net. */
+    private static class Regression {
+        private final Trainer trainer;
+        private final DirectMiniBatch miniBatch;
+
+        Regression() {
+            var net = new NeuralNet(2);
+            net.addTransform(new WeightTransform(new Matrix(1, 2, 0f)));
+            net.addTransform(new BiasTransform(new Vector(1)));
+            trainer = new Trainer(net, new HalfErrorSquared(), new MomentumOptimizer(0.1f, 0f));
+            miniBatch = new DirectMiniBatch(trainer);
+
+            var random = new Random(0);
+            for (int i = 0; i < 256; ++i) {
+                float a = random.nextFloat() * 2 - 1;
+                float b = random.nextFloat() * 2 - 1;
+                miniBatch.add(Vector.from(a, b), Vector.from(0.5f * a - 0.25f * b + 0.1f));
+            }
+        }
+    }
+}
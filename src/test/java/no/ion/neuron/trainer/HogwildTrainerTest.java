@@ -0,0 +1,54 @@
+package no.ion.neuron.trainer;
+
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.BiasTransform;
+import no.ion.neuron.transform.WeightTransform;
+import no.ion.neuron.transform.loss.HalfErrorSquared;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HogwildTrainerTest {
+    @Test
+    void learnsLinearFunction() {
+        train(HogwildTrainer.UNBOUNDED);
+    }
+
+    @Test
+    void learnsLinearFunctionWithBoundedStaleness() {
+        train(2);
+    }
+
+    private static void train(long maxStaleness) {
+        var random = new Random(5);
+        final int samples = 400;
+        var inputs = new Matrix(3, samples, () -> random.nextFloat() * 2 - 1);
+        var idealOutputs = new Matrix(samples, 2);
+        for (int sample = 0; sample < samples; ++sample) {
+            Vector x = inputs.row(sample);
+            idealOutputs.setElement(sample, 0, 0.5f * x.get(0) - x.get(1) + 0.25f);
+            idealOutputs.setElement(sample, 1, 2 * x.get(2) - 0.5f);
+        }
+
+        var net = new NeuralNet(3);
+        net.addTransform(new WeightTransform(new Matrix(2, 3)));
+        net.addTransform(new BiasTransform(new Vector(2)));
+        var trainer = new HogwildTrainer(net, new HalfErrorSquared(), 0.05f, 4, maxStaleness);
+
+        HogwildTrainer.Report report = trainer.train(inputs, idealOutputs, 50);
+
+        assertEquals(50 * samples, report.samples());
+        assertTrue(report.samplesPerSecond() > 0);
+        assertTrue(report.averageError() < 1e-4f, report.toString());
+        Vector parameters = net.parameters();
+        float[] expected = { 0.5f, -1, 0, 0, 0, 2, 0.25f, -0.5f };
+        for (int k = 0; k < expected.length; ++k) {
+            assertEquals(expected[k], parameters.get(k), 1e-2f);
+        }
+    }
+}
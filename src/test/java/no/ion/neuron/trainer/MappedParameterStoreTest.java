@@ -0,0 +1,97 @@
+package no.ion.neuron.trainer;
+
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.optimizer.AdamOptimizer;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.activation.Tanh;
+import no.ion.neuron.transform.loss.HalfErrorSquared;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedParameterStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void trainAndResume() throws IOException {
+        Path path = directory.resolve("parameters.bin");
+        Vector input = Vector.from(0.5f, -0.5f);
+        Vector idealOutput = Vector.from(0.25f);
+
+        Vector trainedParameters;
+        Vector trainedOutput;
+        float[] trainedState;
+        Trainer trainer = createTrainer();
+        NeuralNet net = trainer.net();
+        Vector initialParameters = net.parameters().copy();
+        try (var store = MappedParameterStore.open(trainer, path, 2)) {
+            assertFalse(store.resumed());
+            assertFalse(net.parameters().hasArray());
+            assertEquals(initialParameters, net.parameters());
+
+            for (int epoch = 0; epoch < 4; ++epoch) {
+                trainer.process(input, idealOutput);
+                trainer.learn();
+            }
+            assertEquals(4, store.epochs());
+            assertEquals(4, store.syncedEpochs());
+
+            trainedParameters = net.parameters().copy();
+            trainedOutput = net.infer(input);
+            trainedState = trainer.optimizer().state();
+            assertNotEquals(initialParameters, trainedParameters);
+        }
+
+        // A trainer that trains without interruption, to compare with the resumed trainer
+        Trainer uninterruptedTrainer = createTrainer();
+        for (int epoch = 0; epoch < 5; ++epoch) {
+            uninterruptedTrainer.process(input, idealOutput);
+            uninterruptedTrainer.learn();
+        }
+
+        Trainer resumedTrainer = createTrainer();
+        NeuralNet resumedNet = resumedTrainer.net();
+        try (var store = MappedParameterStore.open(resumedTrainer, path, 0)) {
+            assertTrue(store.resumed());
+            assertEquals(4, store.syncedEpochs());
+            assertEquals(4, resumedTrainer.epochs());
+            assertEquals(trainedParameters, resumedNet.parameters());
+            assertEquals(trainedOutput, resumedNet.infer(input));
+            assertArrayEquals(trainedState, resumedTrainer.optimizer().state());
+
+            resumedTrainer.process(input, idealOutput);
+            resumedTrainer.learn();
+            assertEquals(5, resumedTrainer.epochs());
+            assertEquals(uninterruptedTrainer.net().parameters(), resumedNet.parameters());
+        }
+
+        var otherNet = new NeuralNet(3);
+        otherNet.addLayers(new Matrix(3, 1, () -> 0.5f), Vector.from(0), new Tanh());
+        var otherTrainer = new Trainer(otherNet, new HalfErrorSquared(), new AdamOptimizer(0.05f));
+        assertThrows(IOException.class, () -> MappedParameterStore.open(otherTrainer, path, 0));
+    }
+
+    private static Trainer createTrainer() {
+        return new Trainer(createNet(), new HalfErrorSquared(), new AdamOptimizer(0.05f));
+    }
+
+    private static NeuralNet createNet() {
+        var random = new Random(21);
+        var net = new NeuralNet(2);
+        net.addLayers(new Matrix(2, 4, () -> random.nextFloat() - 0.5f), new Vector(4, 0.1f), new Tanh());
+        net.addLayers(new Matrix(4, 1, () -> random.nextFloat() - 0.5f), new Vector(1, 0f), new Tanh());
+        return net;
+    }
+}
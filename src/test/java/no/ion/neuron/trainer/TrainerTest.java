@@ -0,0 +1,139 @@
+package no.ion.neuron.trainer;
+
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.optimizer.FixedRateOptimizer;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.IdentityTransform;
+import no.ion.neuron.transform.ScalingTransform;
+import no.ion.neuron.transform.WeightTransform;
+import no.ion.neuron.transform.activation.ReLU;
+import no.ion.neuron.transform.activation.Tanh;
+import no.ion.neuron.transform.loss.HalfErrorSquared;
+import no.ion.neuron.transform.loss.SoftmaxCrossEntropy;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TrainerTest {
+    @Test
+    void processDoesNotAllocate() {
+        var random = new Random(7);
+        var net = new NeuralNet(8);
+        net.addTransform(new ScalingTransform(new Vector(8, 0.5f)));
+        net.addLayers(new Matrix(8, 16, () -> random.nextFloat() - 0.5f), new Vector(16, 0.1f), new Tanh());
+        net.addLayers(new Matrix(16, 4, () -> random.nextFloat() - 0.5f), new Vector(4, -0.1f), new ReLU(0.1f));
+        net.addTransform(new IdentityTransform(4));
+        var trainer = new Trainer(net, new HalfErrorSquared(), new FixedRateOptimizer(0.01f));
+
+        final int samples = 64;
+        var inputs = new Vector[samples];
+        var idealOutputs = new Vector[samples];
+        for (int i = 0; i < samples; ++i) {
+            inputs[i] = new Vector(8, () -> random.nextFloat());
+            idealOutputs[i] = new Vector(4, () -> random.nextFloat());
+        }
+
+        // Warm up, e.g. lazily allocated buffers and JIT compilation.
+        for (int i = 0; i < 20_000; ++i) {
+            trainer.process(inputs[i % samples], idealOutputs[i % samples]);
+        }
+
+        var threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        final int measuredSamples = 10_000;
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < measuredSamples; ++i) {
+            trainer.process(inputs[i % samples], idealOutputs[i % samples]);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        assertEquals(0, allocated / measuredSamples, "Allocated " + allocated + " bytes in " + measuredSamples + " samples");
+    }
+
+    @Test
+    void dataParallelMatchesSequential() {
+        var random = new Random(11);
+        final int samples = 37;
+        var inputs = new Matrix(8, samples, () -> random.nextFloat());
+        var idealOutputs = new Matrix(4, samples, () -> random.nextFloat());
+
+        Vector sequentialGradient = gradientAfterOneBatch(inputs, idealOutputs, null, 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Vector parallelGradient = gradientAfterOneBatch(inputs, idealOutputs, executor, 5);
+            for (int k = 0; k < sequentialGradient.size(); ++k) {
+                assertEquals(sequentialGradient.get(k), parallelGradient.get(k), 1e-4f);
+            }
+
+            // Deterministic for a fixed number of workers
+            assertEquals(parallelGradient, gradientAfterOneBatch(inputs, idealOutputs, executor, 5));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void classLabelBatchMatchesOneHotBatch() {
+        var random = new Random(17);
+        final int samples = 23;
+        var inputs = new Matrix(8, samples, () -> random.nextFloat());
+        var classLabels = new int[samples];
+        var idealOutputs = new Matrix(samples, 4);
+        for (int sample = 0; sample < samples; ++sample) {
+            classLabels[sample] = random.nextInt(4);
+            idealOutputs.setElement(sample, classLabels[sample], 1);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int workers : new int[] { 0, 3 }) {
+                Trainer oneHot = classifier(executor, workers);
+                oneHot.processBatch(inputs, idealOutputs);
+                Trainer labeled = classifier(executor, workers);
+                labeled.processBatch(inputs, classLabels);
+
+                assertEquals(oneHot.averageError(), labeled.averageError(), 1e-6f);
+                Vector expected = oneHot.net().cumulativeGradientOfParameters();
+                Vector actual = labeled.net().cumulativeGradientOfParameters();
+                for (int k = 0; k < expected.size(); ++k) {
+                    assertEquals(expected.get(k), actual.get(k), 1e-6f);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Trainer classifier(ExecutorService executor, int workers) {
+        var random = new Random(19);
+        var net = new NeuralNet(8);
+        net.addLayers(new Matrix(8, 16, () -> random.nextFloat() - 0.5f), new Vector(16, 0.1f), new Tanh());
+        net.addTransform(new WeightTransform(new Matrix(16, 4, () -> random.nextFloat() - 0.5f)));
+
+        var optimizer = new FixedRateOptimizer(0.01f);
+        return workers == 0 ?
+                new Trainer(net, new SoftmaxCrossEntropy(), optimizer) :
+                new Trainer(net, new SoftmaxCrossEntropy(), optimizer, executor, workers);
+    }
+
+    private static Vector gradientAfterOneBatch(Matrix inputs, Matrix idealOutputs, ExecutorService executor, int workers) {
+        var random = new Random(13);
+        var net = new NeuralNet(8);
+        net.addLayers(new Matrix(8, 16, () -> random.nextFloat() - 0.5f), new Vector(16, 0.1f), new Tanh());
+        net.addLayers(new Matrix(16, 4, () -> random.nextFloat() - 0.5f), new Vector(4, -0.1f), new ReLU(0.1f));
+
+        var optimizer = new FixedRateOptimizer(0.01f);
+        var trainer = executor == null ?
+                new Trainer(net, new HalfErrorSquared(), optimizer) :
+                new Trainer(net, new HalfErrorSquared(), optimizer, executor, workers);
+        trainer.processBatch(inputs, idealOutputs);
+        return net.cumulativeGradientOfParameters().copy();
+    }
+}
@@ -0,0 +1,106 @@
+package no.ion.neuron.transform;
+
+import no.ion.neuron.ComputeContext;
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.transform.activation.ReLU;
+import no.ion.neuron.transform.loss.HalfErrorSquared;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DenseTransformTest {
+    @Test
+    void identicalToSeparateTransforms() {
+        Matrix inputs = Matrix.from(3,
+                1, -2, 0.5f,
+                0.5f, 3, -1,
+                -1, 0.25f, 2);
+        Matrix idealOutputs = Matrix.from(3,
+                1, 0,
+                0, 1,
+                0.5f, 0.5f);
+
+        NeuralNet separate = createNet(false);
+        NeuralNet dense = createNet(true);
+        for (int sample = 0; sample < inputs.rows(); ++sample) {
+            assertEquals(separate.infer(inputs.row(sample)), dense.infer(inputs.row(sample)));
+            assertEquals(separate.compute(inputs.row(sample), idealOutputs.row(sample)),
+                    dense.compute(inputs.row(sample), idealOutputs.row(sample)));
+        }
+        assertEquals(separate.parameters(), dense.parameters());
+        assertEquals(separate.cumulativeGradientOfParameters(), dense.cumulativeGradientOfParameters());
+
+        separate.clearCumulativeErrorGradientOfParameters();
+        dense.clearCumulativeErrorGradientOfParameters();
+        assertEquals(separate.computeBatch(inputs, idealOutputs), dense.computeBatch(inputs, idealOutputs));
+        assertEquals(separate.cumulativeGradientOfParameters(), dense.cumulativeGradientOfParameters());
+    }
+
+    @Test
+    void parametersAreAViewOfTheStorage() {
+        Matrix weight = Matrix.from(2, 1, 2, 3, 4);
+        var transform = new DenseTransform(weight, Vector.from(5, 6), new ReLU(0.1f));
+        Vector parameters = transform.parameters();
+        assertEquals(Vector.from(1, 2, 3, 4, 5, 6), parameters);
+        assertSame(parameters, transform.parameters());
+
+        weight.setElement(0, 0, 0);
+        assertEquals(Vector.from(0, 2, 3, 4, 5, 6), parameters);
+        weight.setElement(0, 0, 1);
+
+        transform.adjustParameters(Vector.from(1, 1, 1, 1, 1, 1));
+        assertEquals(Vector.from(2, 3, 4, 5, 6, 7), parameters);
+
+        var storage = new Vector(6);
+        transform.moveParametersTo(storage);
+        assertSame(storage, transform.parameters());
+        assertEquals(Vector.from(2, 3, 4, 5, 6, 7), storage);
+
+        var sharing = new DenseTransform(storage, 2, new ReLU(0.1f));
+        assertSame(storage, sharing.parameters());
+        assertEquals(transform.weight(), sharing.weight());
+        assertEquals(transform.bias(), sharing.bias());
+    }
+
+    @Test
+    void backwardWithoutScratch() {
+        var transform = new DenseTransform(Matrix.from(2, 1, -2, 3, 4), Vector.from(0.5f, -0.5f), new ReLU(0.1f));
+        var context = new ComputeContext(Vector.from(0, 0));
+        Vector input = Vector.from(1, 0.5f);
+        Vector output = new Vector(2);
+        Vector scratch = new Vector(transform.scratchSize());
+        transform.forward(context, input, output, scratch);
+
+        Vector errorGradientOfOutput = Vector.from(1, -1);
+        var expectedErrorGradientOfInput = new Vector(2);
+        var expectedErrorGradientOfParameters = new Vector(6);
+        transform.backward(context, input, output, scratch, errorGradientOfOutput, expectedErrorGradientOfInput,
+                expectedErrorGradientOfParameters);
+
+        var errorGradientOfInput = new Vector(2);
+        var errorGradientOfParameters = new Vector(6);
+        transform.backward(context, input, output, errorGradientOfOutput, errorGradientOfInput, errorGradientOfParameters);
+        assertEquals(expectedErrorGradientOfInput, errorGradientOfInput);
+        assertEquals(expectedErrorGradientOfParameters, errorGradientOfParameters);
+    }
+
+    private static NeuralNet createNet(boolean dense) {
+        var weight = Matrix.from(2, 1, 2, -3, 4, 0.5f, -1);
+        var bias = Vector.from(0.5f, -0.5f);
+        var activationFunction = new ReLU(0.1f);
+
+        var net = new NeuralNet(3);
+        if (dense) {
+            net.addTransform(new DenseTransform(weight, bias, activationFunction));
+        } else {
+            net.addTransform(new WeightTransform(weight));
+            net.addTransform(new BiasTransform(bias));
+            net.addTransform(new ActivationTransform(2, activationFunction));
+        }
+        net.addTransform(new ErrorTransform(2, new HalfErrorSquared()));
+        return net;
+    }
+}
@@ -0,0 +1,61 @@
+package no.ion.neuron.transform.activation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FastActivationFunctionsTest {
+    @Test
+    void maxErrors() {
+        assertMaxError(new FastTanh(), Math::tanh, FastTanh.MAX_ERROR);
+        assertMaxError(new FastSigmoid(), x -> 1 / (1 + Math.exp(-x)), FastSigmoid.MAX_ERROR);
+        assertMaxError(new FastAsinh(), x -> Math.log(x + Math.sqrt(x * x + 1)), FastAsinh.MAX_ERROR);
+
+        var fastAsinh = new FastAsinh();
+        assertEquals(0, fastAsinh.f(0));
+        assertEquals(Math.log(2e30), fastAsinh.f(1e30f), 1e-5 * Math.log(2e30));
+        assertEquals(-Math.log(2e30), fastAsinh.f(-1e30f), 1e-5 * Math.log(2e30));
+    }
+
+    @Test
+    void rangesMatchScalars() {
+        var functions = List.of(new Tanh(), new Sigmoid(), new ReLU(0.1f), new Asinh(),
+                new FastTanh(), new FastSigmoid(), new FastAsinh());
+        var random = new Random(0);
+        int length = 37;
+        float[] x = new float[length + 3];
+        float[] errorGradientOfOutput = new float[length + 1];
+        for (int i = 0; i < x.length; ++i) {
+            x[i] = random.nextFloat() * 20 - 10;
+        }
+        for (int i = 0; i < errorGradientOfOutput.length; ++i) {
+            errorGradientOfOutput[i] = random.nextFloat() * 2 - 1;
+        }
+
+        for (ActivationFunction function : functions) {
+            float[] y = new float[length + 2];
+            function.f(x, 3, y, 2, length);
+            float[] errorGradientOfInput = new float[length];
+            function.backPropagate(x, 3, y, 2, errorGradientOfOutput, 1, errorGradientOfInput, 0, length);
+
+            for (int i = 0; i < length; ++i) {
+                float expectedY = function.f(x[3 + i]);
+                assertEquals(expectedY, y[2 + i], function.toString());
+                assertEquals(function.fGradient(x[3 + i], expectedY) * errorGradientOfOutput[1 + i],
+                        errorGradientOfInput[i], function.toString());
+            }
+        }
+    }
+
+    private static void assertMaxError(ActivationFunction function, DoubleUnaryOperator exact, float maxError) {
+        for (float x = -20; x <= 20; x += 0.001f) {
+            double error = Math.abs(function.f(x) - exact.applyAsDouble(x));
+            assertTrue(error <= maxError, function + " has error " + error + " at " + x);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package no.ion.neuron.transform.loss;
+
+import no.ion.neuron.NeuralNet;
+import no.ion.neuron.optimizer.FixedRateOptimizer;
+import no.ion.neuron.tensor.Matrix;
+import no.ion.neuron.tensor.Vector;
+import no.ion.neuron.trainer.Trainer;
+import no.ion.neuron.transform.WeightTransform;
+import no.ion.neuron.transform.activation.Tanh;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SoftmaxCrossEntropyTest {
+    private final SoftmaxCrossEntropy errorFunction = new SoftmaxCrossEntropy();
+
+    @Test
+    void errorAndGradient() {
+        Vector logits = Vector.from(1, 2, 3);
+        Vector idealOutput = Vector.from(0, 0, 1);
+
+        double sum = Math.exp(1) + Math.exp(2) + Math.exp(3);
+        assertEquals(Math.log(sum) - 3, errorFunction.error(logits, idealOutput), 1e-6);
+        assertEquals(Math.log(sum) - 3, errorFunction.error(logits, 2), 1e-6);
+
+        var gradient = new Vector(3);
+        errorFunction.backPropagate(logits, idealOutput, gradient, new Vector(0));
+        assertEquals(Math.exp(1) / sum, gradient.get(0), 1e-6);
+        assertEquals(Math.exp(2) / sum, gradient.get(1), 1e-6);
+        assertEquals(Math.exp(3) / sum - 1, gradient.get(2), 1e-6);
+
+        var sparseGradient = new Vector(3);
+        errorFunction.backPropagate(logits, 2, sparseGradient, new Vector(0));
+        assertEquals(gradient, sparseGradient);
+
+        assertEquals(gradient, errorFunction.compute(logits, idealOutput).errorGradientOfOutput());
+    }
+
+    @Test
+    void errorSavesSoftmaxForBackPropagation() {
+        Vector logits = Vector.from(1, 2, 3);
+        Vector idealOutput = Vector.from(0, 0, 1);
+        var expectedGradient = new Vector(3);
+        errorFunction.backPropagate(logits, idealOutput, expectedGradient, new Vector(0));
+
+        var scratch = new Vector(errorFunction.scratchSize(3));
+        assertEquals(errorFunction.error(logits, idealOutput), errorFunction.error(logits, idealOutput, scratch), 1e-6);
+        var gradient = new Vector(3);
+        errorFunction.backPropagate(logits, idealOutput, scratch, gradient, new Vector(0));
+        assertEquals(expectedGradient, gradient);
+
+        assertEquals(errorFunction.error(logits, 2), errorFunction.error(logits, 2, scratch), 1e-6);
+        var sparseGradient = new Vector(3);
+        errorFunction.backPropagate(logits, 2, scratch, sparseGradient, new Vector(0));
+        assertEquals(expectedGradient, sparseGradient);
+    }
+
+    @Test
+    void largeLogitsAreStable() {
+        Vector logits = Vector.from(1000, 0, -1000);
+        assertEquals(0, errorFunction.error(logits, 0), 1e-6);
+        assertEquals(1000, errorFunction.error(logits, 1), 1e-3);
+        assertEquals(2000, errorFunction.error(logits, 2), 1e-3);
+
+        var gradient = new Vector(3);
+        errorFunction.backPropagate(logits, 1, gradient, new Vector(0));
+        assertEquals(Vector.from(1, -1, 0), gradient);
+    }
+
+    @Test
+    void trainsClassifierWithClassLabels() {
+        // Classify a point in the plane by the quadrant it is in.
+        var random = new Random(3);
+        var net = new NeuralNet(2);
+        net.addLayers(new Matrix(2, 8, () -> random.nextFloat() - 0.5f), new Vector(8), new Tanh());
+        net.addTransform(new WeightTransform(new Matrix(8, 4, () -> random.nextFloat() - 0.5f)));
+        var trainer = new Trainer(net, errorFunction, new FixedRateOptimizer(0.05f));
+
+        final int samples = 64;
+        var inputs = new Vector[samples];
+        var labels = new int[samples];
+        for (int i = 0; i < samples; ++i) {
+            inputs[i] = new Vector(2, () -> random.nextFloat() * 2 - 1);
+            labels[i] = (inputs[i].get(0) < 0 ? 1 : 0) + (inputs[i].get(1) < 0 ? 2 : 0);
+        }
+
+        float firstError = -1;
+        for (int epoch = 0; epoch < 500; ++epoch) {
+            for (int i = 0; i < samples; ++i) {
+                trainer.process(inputs[i], labels[i]);
+            }
+            if (epoch == 0) {
+                firstError = trainer.averageError();
+            }
+            trainer.learn();
+        }
+
+        for (int i = 0; i < samples; ++i) {
+            trainer.process(inputs[i], labels[i]);
+        }
+        float lastError = trainer.averageError();
+        assertTrue(lastError < firstError / 4, "Error went from " + firstError + " to " + lastError);
+    }
+}